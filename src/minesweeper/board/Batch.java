@@ -0,0 +1,174 @@
+package minesweeper.board;
+
+import java.util.Arrays;
+
+/**
+ * Flags, deflags, digs and chords to perform one after the other with Board.perform(Batch, ...), which locks the board once
+ * for all of them, and the responses they got. A batch is reused: clear() empties it for the next moves.
+ *
+ * A batch is not thread safe, each client has its own.
+ *
+ * Rep invariant- 	performed <= count <= operations.length
+ * 					rows, columns and responses have the length of operations
+ * @author Rishabh
+ *
+ */
+public final class Batch
+{
+	//Kinds of moves, see getMove
+	public static final int FLAG = Board.FLAG;
+	public static final int DEFLAG = Board.DEFLAG;
+	public static final int DIG = Board.DIG;
+	public static final int CHORD = Board.CHORD;
+
+	//Moves in the order they were added, as Board operation codes and squares
+	private int[] operations = new int[16];
+	private int[] rows = new int[16];
+	private int[] columns = new int[16];
+	private int count;
+
+	//Responses of the first performed moves
+	private String[] responses = new String[16];
+	private int performed;
+	//Sequence number in the command log of the last move logged, 0 if none was
+	private long logged;
+
+	/**
+	 * Adds a flag of a square
+	 * @param row of Board
+	 * @param column of Board
+	 */
+	public void flag(int row, int column)
+	{
+		this.add(Board.FLAG, row, column);
+	}
+
+	/**
+	 * Adds a deflag of a square
+	 * @param row of Board
+	 * @param column of Board
+	 */
+	public void deflag(int row, int column)
+	{
+		this.add(Board.DEFLAG, row, column);
+	}
+
+	/**
+	 * Adds a dig of a square
+	 * @param row of Board
+	 * @param column of Board
+	 */
+	public void dig(int row, int column)
+	{
+		this.add(Board.DIG, row, column);
+	}
+
+	/**
+	 * Adds a chord of a square, see Board.chord
+	 * @param row of Board
+	 * @param column of Board
+	 */
+	public void chord(int row, int column)
+	{
+		this.add(Board.CHORD, row, column);
+	}
+
+	/**
+	 * @return number of moves added since the batch was last cleared
+	 */
+	public int size()
+	{
+		return count;
+	}
+
+	/**
+	 * @return number of moves performed, the first ones added
+	 */
+	public int getPerformed()
+	{
+		return performed;
+	}
+
+	/**
+	 * @param k position of a move, 0 <= k < getPerformed()
+	 * @return response the move got
+	 */
+	public String getResponse(int k)
+	{
+		if(k < 0 || k >= performed)
+			throw new IndexOutOfBoundsException("move " + k + " of " + performed + " performed");
+		return responses[k];
+	}
+
+	/**
+	 * Removes every move and response
+	 */
+	public void clear()
+	{
+		Arrays.fill(responses, 0, performed, null);
+		count = 0;
+		performed = 0;
+		logged = 0;
+	}
+
+	/**
+	 * @return sequence number in the command log of the board of the last move performed that was logged, 0 if
+	 * 		none was, to pass to Board.whenDurable when the batch was performed without waiting for its moves to be
+	 * 		durable
+	 */
+	public long getLogged()
+	{
+		return logged;
+	}
+
+	/**
+	 * @param k position of a move, 0 <= k < size()
+	 * @return FLAG, DEFLAG, DIG or CHORD
+	 */
+	public int getMove(int k)
+	{
+		if(k < 0 || k >= count)
+			throw new IndexOutOfBoundsException("move " + k + " of " + count);
+		return operations[k];
+	}
+
+	int getOperation(int k)
+	{
+		return operations[k];
+	}
+
+	int getRow(int k)
+	{
+		return rows[k];
+	}
+
+	int getColumn(int k)
+	{
+		return columns[k];
+	}
+
+	/**
+	 * Records the response of the next move to perform
+	 */
+	void performed(String response, long logged)
+	{
+		responses[performed++] = response;
+		if(logged != 0)
+			this.logged = logged;
+	}
+
+	private void add(int operation, int row, int column)
+	{
+		if(count == operations.length)
+		{
+			operations = Arrays.copyOf(operations, 2 * count);
+			rows = Arrays.copyOf(rows, 2 * count);
+			columns = Arrays.copyOf(columns, 2 * count);
+			responses = Arrays.copyOf(responses, 2 * count);
+		}
+		operations[count] = operation;
+		rows[count] = row;
+		columns[count] = column;
+		count++;
+	}
+}
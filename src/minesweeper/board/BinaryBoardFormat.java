@@ -0,0 +1,229 @@
+package minesweeper.board;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary board files, storing every square in 1 bit for a board nobody has played yet and 3 bits otherwise,
+ * instead of the 2 bytes per square of the text format.
+ *
+ * Layout (integers are big-endian)-
+ * 		header:   int MAGIC ("MSWB"), byte VERSION, byte flags, short 0, int rows, int columns
+ * 		bombs:    one bit per square, row-major, bit (i % 8) of byte (i / 8) for square i
+ * 		dug:      same layout, only if flags has STATE
+ * 		flagged:  same layout, only if flags has STATE
+ * 		checksum: int CRC32 of every byte before it
+ * @author Rishabh
+ *
+ */
+final class BinaryBoardFormat
+{
+	static final int MAGIC = 0x4D535742;
+	static final int VERSION = 1;
+	//Flag set when the file has the dug and flagged layers
+	static final int STATE = 0x01;
+
+	private static final int HEADER_LENGTH = 16;
+	private static final int BUFFER_LENGTH = 1 << 16;
+
+	private BinaryBoardFormat()
+	{
+	}
+
+	/**
+	 * @return true if the file starts like a binary board file
+	 */
+	static boolean isBinary(File file) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try
+		{
+			return in.readInt() == MAGIC;
+		}
+		catch(EOFException e)
+		{
+			return false;
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes squares to file, replacing its contents, and forces the file to disk
+	 * @param squares to write, not modified while this runs
+	 */
+	static void write(CellStore squares, File file) throws IOException
+	{
+		if((long) squares.getRows() * squares.getColumns() > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("a board of " + squares.getRows() + "x" + squares.getColumns() + " squares is too large to save");
+		int cells = squares.getRows() * squares.getColumns();
+		boolean state = false;
+		for(int i = 0; i < cells && !state; i++)
+			state = (squares.getState(i) & (CellStore.DUG | CellStore.FLAGGED)) != 0;
+
+		CRC32 crc = new CRC32();
+		FileOutputStream stream = new FileOutputStream(file);
+		DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+				new BufferedOutputStream(stream, BUFFER_LENGTH), crc));
+		try
+		{
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			out.writeByte(state ? STATE : 0);
+			out.writeShort(0);
+			out.writeInt(squares.getRows());
+			out.writeInt(squares.getColumns());
+			writeLayer(squares, CellStore.BOMB, out);
+			if(state)
+			{
+				writeLayer(squares, CellStore.DUG, out);
+				writeLayer(squares, CellStore.FLAGGED, out);
+			}
+			out.writeInt((int) crc.getValue());
+			out.flush();
+			stream.getFD().sync();
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * Writes one bit per square, set if the square has bit in its state
+	 */
+	private static void writeLayer(CellStore squares, int bit, DataOutputStream out) throws IOException
+	{
+		int cells = squares.getRows() * squares.getColumns();
+		byte[] buffer = new byte[BUFFER_LENGTH];
+		int length = 0;
+		for(int i = 0; i < cells; i += 8)
+		{
+			int packed = 0;
+			for(int k = 0; k < 8 && i + k < cells; k++)
+			{
+				if((squares.getState(i + k) & bit) != 0)
+					packed |= 1 << k;
+			}
+			buffer[length++] = (byte) packed;
+			if(length == buffer.length)
+			{
+				out.write(buffer, 0, length);
+				length = 0;
+			}
+		}
+		out.write(buffer, 0, length);
+	}
+
+	/**
+	 * Reads a binary board file
+	 * @return squares of the board, with their counts computed
+	 * @throws IOException if the file cannot be read, is corrupted, or holds an impossible board
+	 */
+	static CellStore read(File file) throws IOException
+	{
+		CRC32 crc = new CRC32();
+		InputStream raw = new BufferedInputStream(new FileInputStream(file), BUFFER_LENGTH);
+		DataInputStream in = new DataInputStream(new CheckedInputStream(raw, crc));
+		try
+		{
+			if(in.readInt() != MAGIC)
+				throw new IOException(file + ": not a binary board file");
+			int version = in.readUnsignedByte();
+			if(version != VERSION)
+				throw new IOException(file + ": unsupported binary board version " + version);
+			int flags = in.readUnsignedByte();
+			if((flags & ~STATE) != 0 || in.readShort() != 0)
+				throw new IOException(file + ": unsupported binary board flags " + flags);
+			int rows = in.readInt();
+			int columns = in.readInt();
+			if(rows <= 0 || columns <= 0 || (long) rows * columns > Integer.MAX_VALUE)
+				throw new IOException(file + ": unsupported board size " + rows + "x" + columns);
+
+			//Check the length before allocating anything, so a damaged header cannot ask for a huge board
+			long layer = ((long) rows * columns + 7) / 8;
+			long expected = HEADER_LENGTH + layer * ((flags & STATE) != 0 ? 3 : 1) + 4;
+			if(file.length() != expected)
+				throw new IOException(file + ": file has " + file.length() + " bytes instead of " + expected
+						+ " for a board of size " + rows + "x" + columns);
+
+			CellStore squares = new CellStore(rows, columns);
+			readLayer(file, squares, CellStore.BOMB, in);
+			if((flags & STATE) != 0)
+			{
+				readLayer(file, squares, CellStore.DUG, in);
+				readLayer(file, squares, CellStore.FLAGGED, in);
+			}
+			int computed = (int) crc.getValue();
+			if(new DataInputStream(raw).readInt() != computed)
+				throw new IOException(file + ": checksum mismatch, the file is corrupted");
+			if((flags & STATE) != 0)
+				checkStates(file, squares);
+			squares.computeCounts();
+			return squares;
+		}
+		catch(EOFException e)
+		{
+			throw new IOException(file + ": file ends too early", e);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads one bit per square, adding bit to the state of the squares whose bit is set
+	 */
+	private static void readLayer(File file, CellStore squares, int bit, DataInputStream in) throws IOException
+	{
+		int cells = squares.getRows() * squares.getColumns();
+		byte[] buffer = new byte[BUFFER_LENGTH];
+		for(long start = 0; start < cells; start += 8 * buffer.length)
+		{
+			int length = (int) Math.min(buffer.length, (cells - start + 7) / 8);
+			in.readFully(buffer, 0, length);
+			for(int b = 0; b < length; b++)
+			{
+				int packed = buffer[b] & 0xFF;
+				for(long i = start + 8 * b; packed != 0; i++, packed >>>= 1)
+				{
+					if((packed & 1) != 0)
+					{
+						if(i >= cells)
+							throw new IOException(file + ": padding bits of the last byte of a layer are set");
+						squares.addState((int) i, bit);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks no square is in a state play cannot reach: dug squares have no bomb and no flag
+	 */
+	private static void checkStates(File file, CellStore squares) throws IOException
+	{
+		int columns = squares.getColumns();
+		for(int i = 0; i < squares.getRows() * columns; i++)
+		{
+			int state = squares.getState(i);
+			if((state & CellStore.DUG) != 0 && (state & (CellStore.BOMB | CellStore.FLAGGED)) != 0)
+				throw new IOException(file + ": square " + i / columns + " " + i % columns + " is dug but "
+						+ ((state & CellStore.BOMB) != 0 ? "holds a bomb" : "flagged"));
+		}
+	}
+}
@@ -1,70 +1,184 @@
 package minesweeper.board;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Rep invariant- 	size > 0
- * 					Board is always square (n x n)
+ * A Board is safe to share between threads. A serial board runs one operation at a time, like a board whose
+ * methods are all synchronized. A concurrent board lets flags, deflags and digs that only reveal a numbered
+ * square run in parallel when they are on rows of different stripes (see RegionLocks); looks, chords, and digs
+ * that hit a bomb or may flood fill, still take the whole board.
+ * 
+ * Squares are kept in one flat row-major array (see CellStore), so a board of any shape, like 100 rows of
+ * 3000 columns, costs the same per square as a square one.
+ * 
+ * Rep invariant- 	rows > 0, columns > 0
+ * 					workspaces.length == number of stripes of locks
  * @author Rishabh
  *
  */
 
 public class Board 
 {
-	//Dimension of board
-	final int size;
+	//Dimensions of board
+	final int rows;
+	final int columns;
 	
-	//2-D array of squares (length = breadth = n)
-	final Square[][] squares;
+	//Packed squares of the board (rows x columns), see CellStore for the layout
+	final CellStore squares;
+	
+	//Operation codes for perform(), also used in CommandLog records
+	static final int FLAG = 0;
+	static final int DEFLAG = 1;
+	static final int DIG = 2;
+	static final int CHORD = 5;
+	//Operation codes of the bomb moves of a safe first dig, only found in CommandLog records
+	static final int REMOVE_BOMB = 3;
+	static final int PLACE_BOMB = 4;
+	
+	//Random squares tried for a bomb moved by a safe first dig before looking through the board in order
+	private static final int FREE_SQUARE_DRAWS = 64;
+	
+	//Most squares a LOOK message shows, two bytes each: the largest message a String can hold. Larger (lazy) boards
+	//are only looked at by region, and answer their operations with DELTA messages.
+	public static final long MAX_LOOK_SQUARES = (Integer.MAX_VALUE - 8) / 2;
+	
+	//Answer to the moves on a board won once its game ends, see setEndsWhenWon
+	public static final String GAME_OVER = "game over: the game is won, create or join another game";
+	
+	//Locks for the whole board and for each stripe of rows
+	private final RegionLocks locks;
+	//Where the lock waits and holds and the flood fills of the board are recorded
+	private final BoardMetrics metrics;
+	
+	//Reusable buffers, one per stripe. Only the holder of a stripe (or of the whole board, for the first one) uses it
+	private final Workspace[] workspaces;
+	
+	//Incremented by every operation that changes at least one square
+	private final AtomicLong version = new AtomicLong();
+	
+	//True until the first dig if that dig must find no bomb on the square or around it, see setFirstDigSafe
+	private volatile boolean firstDigSafe;
+	
+	//True if moves no longer change the board once it is won, see setEndsWhenWon
+	private volatile boolean endsWhenWon;
+	
+	//Rendered LOOK message, created by the first look
+	private LookBuffer lookBuffer;
+	
+	//Log receiving every operation that changes the board, null if the board is not durable (see BoardJournal)
+	private volatile CommandLog log;
+	//Last log attached, kept once logging stops so operations logged before can still wait for their records
+	private volatile CommandLog lastLog;
+	
+	//Bombs, dug squares and flagged squares when the board was created, bombs being -1 until a lazy board counts
+	//them. The counts of now are these plus the changes tallied in the workspaces
+	private volatile long initialBombs;
+	private final long initialDug;
+	private final long initialFlagged;
+	
+	//System.nanoTime() of the first dig of an operation, and of the dig that left no square without a bomb
+	//to dig, 0 until then
+	private final AtomicLong startedAt = new AtomicLong();
+	private final AtomicLong wonAt = new AtomicLong();
+	
+	//Listeners told about the squares changed by every operation
+	private final CopyOnWriteArrayList<BoardListener> listeners = new CopyOnWriteArrayList<BoardListener>();
 	
 	/**
-	 * This constructor constructs a board using size input wit random placements of bombs
+	 * This constructor constructs a serial board using size input wit random placements of bombs, a quarter of the
+	 * squares holding one (see BoardGenerator for reproducible boards)
 	 * @param n: Size of board
 	 */
 	public Board(int n)
 	{
-		this.size = n;
-		squares = new Square[n][n];
-		this.setSquares();
-		this.checkRep();
+		this(n, false);
 	}
 	
 	/**
-	 * This constructor creates a board from an input file. File should be structured as follows-
+	 * This constructor constructs a board using size input with random placements of bombs, a quarter of the
+	 * squares holding one
+	 * @param n: Size of board
+	 * @param concurrent: true to let operations on far apart rows run in parallel
+	 */
+	public Board(int n, boolean concurrent)
+	{
+		this(n, n, concurrent);
+	}
+	
+	/**
+	 * This constructor constructs a board of rows x columns squares with random placements of bombs, a quarter of
+	 * the squares holding one
+	 * @param rows: Number of rows of board
+	 * @param columns: Number of columns of board
+	 * @param concurrent: true to let operations on far apart rows run in parallel
+	 */
+	public Board(int rows, int columns, boolean concurrent)
+	{
+		this(new BoardGenerator().place(rows, columns, BoardGenerator.mineCount(rows, columns, BoardGenerator.DEFAULT_DENSITY)), concurrent);
+	}
+	
+	/**
+	 * This constructor creates a board from an input file, either saved by save(File) or structured as follows-
 	 * FILE :== LINE+
 	 * LINE :== (VAL SPACE)* VAL NEWLINE
 	 * VAL :== 0 | 1
 	 * SPACE :== " "
 	 * NEWLINE :== "\r?\n"
+	 * where every LINE has as many VALs as the first one.
 	 * 
 	 * @param file with correct syntax of a board.
-	 * @throws IOException: In the case of file errors
+	 * @throws IOException: In the case of file errors, or if the file is not a board in one of the formats above
 	 */
 	public Board(File file) throws IOException
 	{
-		BufferedReader reader = new BufferedReader(new FileReader(file));
-		String nextLine  = reader.readLine();
-		String[] tokens = nextLine.split(" ");
-		this.size = tokens.length;
-		squares = new Square[this.size][this.size];
-		for(int j = 0; j< size; j++)
-		{
-			squares[0][j] = new Square(tokens[j].equals("1"));
-		}
-		for(int i = 1; i< size; i++)
-		{
-			nextLine = reader.readLine();
-			tokens = nextLine.split(" ");
-			for(int j= 0;j < size; j++)
-			{
-				squares[i][j] = new Square(tokens[j].equals("1"));
-			}
-		}
-		reader.close();
+		this(file, false);
+	}
+	
+	/**
+	 * This constructor creates a board from an input file, structured as for Board(File)
+	 * @param file with correct syntax of a board.
+	 * @param concurrent: true to let operations on far apart rows run in parallel
+	 * @throws IOException: In the case of file errors, or if the file is not a board in one of the formats above
+	 */
+	public Board(File file, boolean concurrent) throws IOException
+	{
+		this(BoardFileLoader.load(file), concurrent);
+	}
+	
+	/**
+	 * This constructor creates a board from squares whose bombs are placed and counts computed
+	 * @param squares of the board
+	 * @param concurrent: true to let operations on far apart rows run in parallel
+	 */
+	Board(CellStore squares, boolean concurrent)
+	{
+		this(squares, concurrent, BoardMetrics.get());
+	}
+	
+	/**
+	 * This constructor creates a board recording its measurements somewhere else than the measurements of the
+	 * process, BoardMetrics.NONE for a board no player plays
+	 * @param squares of the board
+	 * @param concurrent: true to let operations on far apart rows run in parallel
+	 * @param metrics recording the lock waits and holds and the flood fills of the board
+	 */
+	Board(CellStore squares, boolean concurrent, BoardMetrics metrics)
+	{
+		this.rows = squares.getRows();
+		this.columns = squares.getColumns();
+		this.squares = squares;
+		this.metrics = metrics;
+		locks = new RegionLocks(this.rows, concurrent, metrics);
+		workspaces = createWorkspaces(squares, locks.getStripeCount());
+		long[] census = squares.census();
+		this.initialBombs = census[0];
+		this.initialDug = census[1];
+		this.initialFlagged = census[2];
 		this.checkRep();
 	}
 	
@@ -74,54 +188,177 @@ public class Board
 	 */
 	private void checkRep()
 	{
-		assert this.size > 0;
-		assert this.squares.length == this.squares[0].length;
+		assert this.rows > 0 && this.columns > 0;
+		assert this.squares.getRows() == this.rows && this.squares.getColumns() == this.columns;
+		assert this.workspaces.length == this.locks.getStripeCount();
 	}
 	
 	/**
-	 * Assigns the squares in the board randomly as having a bomb or not
-	 * Criteria: 25% chance of having a bomb
-	 * 
+	 * Creates the reusable buffers for operations on squares
+	 * @param squares of the board
+	 * @param count number of workspaces
+	 * @return array of count workspaces
 	 */
-	private synchronized void setSquares()
+	private static Workspace[] createWorkspaces(CellStore squares, int count)
 	{
-		for(int i = 0; i < this.size; i++)
+		Workspace[] workspaces = new Workspace[count];
+		for(int i = 0; i < count; i++)
+			workspaces[i] = new Workspace(squares);
+		return workspaces;
+	}
+	
+	/**
+	 * Performs a look operation on the board
+	 * Looks between two operations that change the board return the same String without rendering it again.
+	 * @return Minesweeper Board in a String form
+	 */
+	public String look()
+	{
+		this.checkLook(null);
+		locks.lockAll();
+		try
 		{
-			for(int j = 0; j < this.size; j++)
-			{
-				Random rand = new Random();
-				if(rand.nextFloat()>0.75)
-				{
-					squares[i][j] = new Square(true);
-				}
-				else
-				{
-					squares[i][j] = new Square(false);
-				}
-			}
+			return this.snapshot();
+		}
+		finally
+		{
+			locks.unlockAll();
 		}
 	}
 	
 	/**
-	 * Performs a look operation on the board
+	 * Performs a look operation on a region of the board, rendering only the squares of the region
+	 * @param viewport region to render
+	 * @return the rows of the viewport that lie on the board, cut to the columns of the viewport that lie on the
+	 * 		board, in the form of a LOOK message. Empty if the viewport does not overlap the board.
+	 */
+	public String look(Viewport viewport)
+	{
+		this.checkLook(viewport);
+		locks.lockAll();
+		try
+		{
+			return this.render(viewport);
+		}
+		finally
+		{
+			locks.unlockAll();
+		}
+	}
+	
+	/**
+	 * Performs a look operation on the region between two opposite corners, like look(Viewport)
+	 * @param row0 row of a corner
+	 * @param column0 column of that corner
+	 * @param row1 row of the opposite corner
+	 * @param column1 column of the opposite corner
+	 * @return the squares of the region in the form of a LOOK message
+	 */
+	public String look(int row0, int column0, int row1, int column1)
+	{
+		return this.look(new Viewport(row0, column0, row1, column1));
+	}
+	
+	/**
+	 * Saves the board, including which squares are dug and flagged, in the binary format of BinaryBoardFormat.
+	 * Board(File) loads such files back.
+	 * @param file to write, replaced if it exists
+	 * @throws IOException: In the case of file errors
+	 */
+	public void save(File file) throws IOException
+	{
+		locks.lockAll();
+		try
+		{
+			BinaryBoardFormat.write(squares, file);
+		}
+		finally
+		{
+			locks.unlockAll();
+		}
+	}
+	
+	/**
+	 * @return number of rows of the board
+	 */
+	public int getRows()
+	{
+		return this.rows;
+	}
+	
+	/**
+	 * @return number of columns of the board
+	 */
+	public int getColumns()
+	{
+		return this.columns;
+	}
+	
+	/**
+	 * @return true if the squares of the board are only stored once players touch them (see
+	 * 		BoardGenerator.generateLazy), so its size says little about the memory it uses
+	 */
+	public boolean isLazy()
+	{
+		return squares.isLazy();
+	}
+	
+	/**
+	 * @return version of the board, which changes whenever an operation changes at least one square
+	 */
+	public long getVersion()
+	{
+		return this.version.get();
+	}
+	
+	/**
+	 * Look helper, requires the whole board to be locked
 	 * @return Minesweeper Board in a String form
 	 */
-	public synchronized String look()
+	private String snapshot()
 	{
-		String result = "";
-		for(int i = 0; i< this.size; i++)
+		if(lookBuffer == null)
+			lookBuffer = new LookBuffer(squares);
+		return lookBuffer.look(version.get());
+	}
+	
+	/**
+	 * Refuses LOOK messages too large to build
+	 * @param viewport region the message shows, null for the whole board
+	 * @throws IllegalArgumentException if the part of the board the message shows has over MAX_LOOK_SQUARES squares
+	 */
+	private void checkLook(Viewport viewport)
+	{
+		long rows = this.rows, columns = this.columns;
+		if(viewport != null)
 		{
-			for(int j = 0; j< this.size; j++)
-			{
-				result+=squares[i][j].getCurrentValue();
-				if(j!= this.size -1)
-				{
-					result += " ";
-				}
-			}
-			result += '\n';
+			rows = Math.max(0, (long) Math.min(viewport.getLastRow(), this.rows - 1) - Math.max(viewport.getFirstRow(), 0) + 1);
+			columns = Math.max(0, (long) Math.min(viewport.getLastColumn(), this.columns - 1) - Math.max(viewport.getFirstColumn(), 0) + 1);
 		}
-		return result;
+		if(rows * columns > MAX_LOOK_SQUARES)
+			throw new IllegalArgumentException("cannot look at " + rows + "x" + columns + " squares at once, at most "
+					+ MAX_LOOK_SQUARES + ": look at a smaller region, or use mode delta");
+	}
+	
+	/**
+	 * Render helper for a region, requires the whole board to be locked
+	 * @return the squares of the viewport that lie on the board, in the form of a LOOK message
+	 */
+	private String render(Viewport viewport)
+	{
+		int firstRow = Math.max(viewport.getFirstRow(), 0), lastRow = Math.min(viewport.getLastRow(), this.rows - 1);
+		int firstColumn = Math.max(viewport.getFirstColumn(), 0), lastColumn = Math.min(viewport.getLastColumn(), this.columns - 1);
+		if(firstRow > lastRow || firstColumn > lastColumn)
+			return "";
+		int width = lastColumn - firstColumn + 1;
+		StringBuilder result = new StringBuilder(2 * width * (lastRow - firstRow + 1));
+		for(int row = firstRow; row <= lastRow; row++)
+		{
+			long base = (long) row * this.columns;
+			for(int column = firstColumn; column <= lastColumn; column++)
+				result.append(squares.getCurrentValue(base + column)).append(column == lastColumn ? '\n' : ' ');
+		}
+		return result.toString();
 	}
 	
 	/**
@@ -130,11 +367,44 @@ public class Board
 	 * @param column of board
 	 * @return String representation of Board irrespective of condition on indices
 	 */
-	public synchronized String flag(int row, int column)
+	public String flag(int row, int column)
 	{
-		if(this.isValid(row, column) && squares[row][column].getCurrentValue() == '-')
-			squares[row][column].setCurrentValue('F');
-		return this.look();
+		return this.perform(FLAG, row, column, false, null);
+	}
+	
+	/**
+	 * Flags the location on the board like flag(), but only renders a region of the board
+	 * @param row of board
+	 * @param column of board
+	 * @param viewport region to render
+	 * @return the region in the form of a LOOK message, see look(Viewport)
+	 */
+	public String flag(int row, int column, Viewport viewport)
+	{
+		return this.perform(FLAG, row, column, false, viewport);
+	}
+	
+	/**
+	 * Flags the location on the board like flag(), but only reports the squares that changed
+	 * @param row of board
+	 * @param column of board
+	 * @return DELTA message with the changed squares (none if the indices are invalid or the square is not untouched)
+	 */
+	public String flagDelta(int row, int column)
+	{
+		return this.perform(FLAG, row, column, true, null);
+	}
+	
+	/**
+	 * Flags the location on the board like flagDelta(), but only reports the changed squares inside a region
+	 * @param row of board
+	 * @param column of board
+	 * @param viewport region whose changes are reported
+	 * @return DELTA message with the changed squares of the viewport
+	 */
+	public String flagDelta(int row, int column, Viewport viewport)
+	{
+		return this.perform(FLAG, row, column, true, viewport);
 	}
 	
 	/**
@@ -143,11 +413,44 @@ public class Board
 	 * @param column of board
 	 * @return String representation of Board
 	 */
-	public synchronized String deflag(int row, int column)
+	public String deflag(int row, int column)
+	{
+		return this.perform(DEFLAG, row, column, false, null);
+	}
+	
+	/**
+	 * Deflags the location on the board like deflag(), but only renders a region of the board
+	 * @param row of board
+	 * @param column of board
+	 * @param viewport region to render
+	 * @return the region in the form of a LOOK message, see look(Viewport)
+	 */
+	public String deflag(int row, int column, Viewport viewport)
+	{
+		return this.perform(DEFLAG, row, column, false, viewport);
+	}
+	
+	/**
+	 * Deflags the location on the board like deflag(), but only reports the squares that changed
+	 * @param row of board
+	 * @param column of board
+	 * @return DELTA message with the changed squares (none if the indices are invalid or the square is not flagged)
+	 */
+	public String deflagDelta(int row, int column)
 	{
-		if(this.isValid(row, column) && squares[row][column].getCurrentValue() == 'F')
-			squares[row][column].setCurrentValue('-');
-		return this.look();
+		return this.perform(DEFLAG, row, column, true, null);
+	}
+	
+	/**
+	 * Deflags the location on the board like deflagDelta(), but only reports the changed squares inside a region
+	 * @param row of board
+	 * @param column of board
+	 * @param viewport region whose changes are reported
+	 * @return DELTA message with the changed squares of the viewport
+	 */
+	public String deflagDelta(int row, int column, Viewport viewport)
+	{
+		return this.perform(DEFLAG, row, column, true, viewport);
 	}
 	
 	/**
@@ -160,78 +463,538 @@ public class Board
 	 * @param column of Board
 	 * @return String with either 'BOOM!' message or a LOOK message
 	 */
-	public synchronized String dig(int row, int column)
+	public String dig(int row, int column)
+	{
+		return this.perform(DIG, row, column, false, null);
+	}
+	
+	/**
+	 * Digs the square like dig(), but only renders a region of the board
+	 * @param row of Board
+	 * @param column of Board
+	 * @param viewport region to render
+	 * @return String with either 'BOOM!' message or the region in the form of a LOOK message
+	 */
+	public String dig(int row, int column, Viewport viewport)
+	{
+		return this.perform(DIG, row, column, false, viewport);
+	}
+	
+	/**
+	 * Digs the square whose indices are provided like dig(), but only reports the squares that changed.
+	 * A bomb being dug is still reported with a BOOM message, followed by the squares that changed.
+	 * @param row of Board
+	 * @param column of Board
+	 * @return DELTA message, preceded by a 'BOOM!' line if a bomb was dug
+	 */
+	public String digDelta(int row, int column)
+	{
+		return this.perform(DIG, row, column, true, null);
+	}
+	
+	/**
+	 * Digs the square like digDelta(), but only reports the changed squares inside a region
+	 * @param row of Board
+	 * @param column of Board
+	 * @param viewport region whose changes are reported
+	 * @return DELTA message with the changed squares of the viewport, preceded by a 'BOOM!' line if a bomb was dug
+	 */
+	public String digDelta(int row, int column, Viewport viewport)
+	{
+		return this.perform(DIG, row, column, true, viewport);
+	}
+	
+	/**
+	 * Chords a square: if it is dug and shows as many flags around it as its number, digs every neighbour that is
+	 * neither flagged nor dug, like dig() on each of them but with the board locked once. A wrong flag makes one of
+	 * those digs hit a bomb. Nothing happens on any other square.
+	 * @param row of Board
+	 * @param column of Board
+	 * @return String with either 'BOOM!' message if any of the digs hit a bomb, or a LOOK message
+	 */
+	public String chord(int row, int column)
+	{
+		return this.perform(CHORD, row, column, false, null);
+	}
+	
+	/**
+	 * Chords the square like chord(), but only renders a region of the board
+	 * @param row of Board
+	 * @param column of Board
+	 * @param viewport region to render
+	 * @return String with either 'BOOM!' message or the region in the form of a LOOK message
+	 */
+	public String chord(int row, int column, Viewport viewport)
+	{
+		return this.perform(CHORD, row, column, false, viewport);
+	}
+	
+	/**
+	 * Chords the square like chord(), but only reports the squares that changed, those of every dig together
+	 * @param row of Board
+	 * @param column of Board
+	 * @return DELTA message, preceded by a 'BOOM!' line if any of the digs hit a bomb
+	 */
+	public String chordDelta(int row, int column)
+	{
+		return this.perform(CHORD, row, column, true, null);
+	}
+	
+	/**
+	 * Chords the square like chordDelta(), but only reports the changed squares inside a region
+	 * @param row of Board
+	 * @param column of Board
+	 * @param viewport region whose changes are reported
+	 * @return DELTA message with the changed squares of the viewport, preceded by a 'BOOM!' line if a bomb was dug
+	 */
+	public String chordDelta(int row, int column, Viewport viewport)
+	{
+		return this.perform(CHORD, row, column, true, viewport);
+	}
+	
+	/**
+	 * Runs an operation under the locks it needs. The row of the square is locked first; a dig that may flood fill
+	 * or hits a bomb releases it and is run again from scratch with the whole board locked.
+	 * @param operation FLAG, DEFLAG, DIG or CHORD
+	 * @param row of Board
+	 * @param column of Board
+	 * @param delta true to answer with the changed squares, false to answer with a LOOK message
+	 * @param viewport region the answer is restricted to, null for the whole board
+	 * @return response to the operation
+	 */
+	private String perform(int operation, int row, int column, boolean delta, Viewport viewport)
+	{
+		//Refused before anything is applied, an operation must not happen without its answer
+		if(!delta)
+			this.checkLook(viewport);
+		//Operations outside the board change nothing, any row will do to lock them
+		int lockedRow = Math.min(Math.max(row, 0), this.rows - 1);
+		String result = null;
+		boolean wholeBoard = false;
+		long logged = 0;
+		int stripe = locks.lockRow(lockedRow);
+		try
+		{
+			if(locks.isStriped() && this.needsWholeBoard(operation, row, column))
+				wholeBoard = true;
+			else
+			{
+				result = this.apply(operation, row, column, workspaces[stripe], delta, viewport, !locks.isStriped());
+				logged = workspaces[stripe].logged;
+			}
+		}
+		finally
+		{
+			locks.unlockRow(lockedRow);
+		}
+		if(wholeBoard)
+		{
+			locks.lockAll();
+			try
+			{
+				result = this.apply(operation, row, column, workspaces[0], delta, viewport, true);
+				logged = workspaces[0].logged;
+			}
+			finally
+			{
+				locks.unlockAll();
+			}
+		}
+		//Answer only once the operation is durable, waiting outside the locks so other operations join the same fsync
+		this.awaitDurable(logged);
+		if(result != null)
+			return result;
+		return viewport != null ? this.look(viewport) : this.look();
+	}
+	
+	/**
+	 * Performs the moves of a batch in order with the whole board locked once, instead of once per move, and
+	 * records their responses in the batch. Each move gets the response it would get performed on its own right
+	 * after the move before it, and no other operation runs between them.
+	 * @param batch moves to perform, none of them performed yet
+	 * @param delta true to answer with the changed squares, false to answer with LOOK messages
+	 * @param viewport region the answers are restricted to, null for the whole board
+	 * @param stopAtBomb true to leave the moves after the first one that digs a bomb unperformed
+	 * @return number of moves performed
+	 */
+	public int perform(Batch batch, boolean delta, Viewport viewport, boolean stopAtBomb)
+	{
+		return this.perform(batch, delta, viewport, stopAtBomb, true);
+	}
+	
+	/**
+	 * Performs the moves of a batch like perform(batch, delta, viewport, stopAtBomb), optionally without waiting for
+	 * them to be durable. Their responses must then not be sent before they are (see Batch.getLogged, whenDurable).
+	 * @param awaitDurable true to return only once the moves are durable, false to return as soon as they are applied
+	 * @return number of moves performed
+	 */
+	public int perform(Batch batch, boolean delta, Viewport viewport, boolean stopAtBomb, boolean awaitDurable)
+	{
+		if(batch.getPerformed() != 0)
+			throw new IllegalArgumentException("batch already performed");
+		if(!delta)
+			this.checkLook(viewport);
+		locks.lockAll();
+		try
+		{
+			for(int k = 0; k < batch.size(); k++)
+			{
+				String response = this.apply(batch.getOperation(k), batch.getRow(k), batch.getColumn(k), workspaces[0], delta, viewport, true);
+				batch.performed(response, workspaces[0].logged);
+				if(stopAtBomb && response.startsWith("BOOM!"))
+					break;
+			}
+		}
+		finally
+		{
+			locks.unlockAll();
+		}
+		//The log is in order, so the last record of the batch being durable makes all of them durable
+		if(awaitDurable)
+			this.awaitDurable(batch.getLogged());
+		return batch.getPerformed();
+	}
+	
+	/**
+	 * Arranges for callback to run once the record with the given sequence number is in the command log on disk,
+	 * without waiting for it. The callback runs on the thread flushing the log, so it should only hand the work
+	 * left over to another thread. awaitDurable then returns at once, or throws if the log failed.
+	 * @param logged sequence number of the record, see Batch.getLogged
+	 * @param callback to run once the record is durable, or the log failed
+	 * @return true, without arranging anything, if the record is durable already (or nothing was logged) or the log
+	 * 		failed; false if callback will be run
+	 */
+	public boolean whenDurable(long logged, Runnable callback)
+	{
+		CommandLog log = this.lastLog;
+		return logged == 0 || log == null || log.whenDurable(logged, callback);
+	}
+	
+	/**
+	 * Waits, without holding any lock, until the record with the given sequence number is in the command log on disk
+	 * @param logged sequence number of the record, 0 if nothing was logged
+	 * @throws IllegalStateException if the log failed before the record was durable
+	 */
+	public void awaitDurable(long logged)
+	{
+		CommandLog log = this.lastLog;
+		if(logged == 0 || log == null)
+			return;
+		try
+		{
+			log.awaitDurable(logged);
+		}
+		catch(IOException e)
+		{
+			throw new IllegalStateException("operation could not be made durable", e);
+		}
+	}
+	
+	/**
+	 * Tells whether an operation may touch squares beyond the one it is applied to, requires the row to be locked
+	 * @return true for digs of untouched squares that hold a bomb or have no bombs around, and for chords of dug
+	 * 		squares, whose neighbours may be on rows of other stripes
+	 */
+	private boolean needsWholeBoard(int operation, int row, int column)
+	{
+		if(operation == CHORD)
+			return this.isValid(row, column) && squares.isDug(row, column);
+		return operation == DIG && this.isValid(row, column) && squares.isUntouched(row, column)
+				&& (firstDigSafe || squares.isBomb(row, column) || this.getCurrentValueSquareAfterDig(row, column) == 0);
+	}
+	
+	/**
+	 * Applies an operation and renders its response, requires the locks the operation needs to be held
+	 * @param operation FLAG, DEFLAG, DIG or CHORD
+	 * @param row of Board
+	 * @param column of Board
+	 * @param workspace buffers for the operation
+	 * @param delta true to answer with the changed squares
+	 * @param viewport region the answer is restricted to, null for the whole board
+	 * @param wholeBoard true if the whole board is locked, so a LOOK message can be rendered
+	 * @return response to the operation, or null if a LOOK message is needed but the whole board is not locked
+	 */
+	private String apply(int operation, int row, int column, Workspace workspace, boolean delta, Viewport viewport, boolean wholeBoard)
+	{
+		boolean boom = false;
+		workspace.changes.clear();
+		//The game is over, moves leave its board as it was won
+		if(endsWhenWon && this.isWon())
+		{
+			workspace.logged = 0;
+			return GAME_OVER;
+		}
+		if(operation == FLAG)
+			this.flagSquare(row, column, workspace);
+		else if(operation == DEFLAG)
+			this.deflagSquare(row, column, workspace);
+		else if(operation == CHORD)
+			boom = this.chordSquare(row, column, workspace);
+		else
+			boom = this.digSquare(row, column, workspace);
+		this.changesApplied(workspace);
+		if(workspace.changes.dug > 0)
+			this.dugApplied();
+		CommandLog log = this.log;
+		workspace.logged = log != null && workspace.changes.size() > 0 ? log.append(operation, row, column) : 0;
+		//Listeners learn about the operation only once it is logged, so they can wait for it to be durable
+		if(workspace.changes.size() > 0)
+		{
+			workspace.event.logged = workspace.logged;
+			for(BoardListener listener : listeners)
+				listener.squaresChanged(this, workspace.event);
+		}
+		
+		if(delta)
+			return boom ? "BOOM!" + '\n' + this.changes(workspace.changes, viewport) : this.changes(workspace.changes, viewport);
+		if(boom)
+			return "BOOM!" + '\n';
+		if(!wholeBoard)
+			return null;
+		return viewport != null ? this.render(viewport) : this.snapshot();
+	}
+	
+	/**
+	 * Flag helper which flags the square if valid and untouched, recording the change
+	 * @param row of board
+	 * @param column of board
+	 * @param workspace buffers for the operation
+	 */
+	private void flagSquare(int row, int column, Workspace workspace)
 	{
-		//Return look
-		if(row < 0 || column < 0 || row >= this.size || column >=this.size || squares[row][column].getCurrentValue() != '-')
-			return this.look();
+		if(this.isValid(row, column) && squares.isUntouched(row, column))
+			squares.setFlagged(row, column, true, workspace.changes);
+	}
+	
+	/**
+	 * Deflag helper which unflags the square if valid and flagged, recording the change
+	 * @param row of board
+	 * @param column of board
+	 * @param workspace buffers for the operation
+	 */
+	private void deflagSquare(int row, int column, Workspace workspace)
+	{
+		if(this.isValid(row, column) && squares.isFlagged(row, column))
+			squares.setFlagged(row, column, false, workspace.changes);
+	}
+	
+	/**
+	 * Dig helper which digs the square if valid and untouched, recording every square that changes
+	 * @param row of Board
+	 * @param column of Board
+	 * @param workspace buffers for the operation
+	 * @return true if a bomb was dug
+	 */
+	private boolean digSquare(int row, int column, Workspace workspace)
+	{
+		if(!this.isValid(row, column) || !squares.isUntouched(row, column))
+			return false;
+		
+		if(firstDigSafe)
+		{
+			firstDigSafe = false;
+			this.clearAround(row, column, workspace);
+		}
 		
 		//Case that you dig a bomb
-		if(squares[row][column].isBomb())
+		if(squares.isBomb(row, column))
 		{
-			squares[row][column].bombWasDug();
-			modifyDugNeighbourSquaresAfterBomb(row, column);
-			char c = this.getCurrentValueSquareAfterDig(row, column) > 0 ? Character.forDigit(this.getCurrentValueSquareAfterDig(row, column), 10) : ' ';
-			squares[row][column].setCurrentValue(c);
-			return "BOOM!" + '\n';
+			squares.removeBomb(row, column, workspace.changes);
+			modifyDugNeighbourSquaresAfterBomb(row, column, workspace);
+			squares.setDug(row, column, workspace.changes);
+			return true;
 		}
 		
 		//Case that you don't dig a bomb
 		int neighboursWithBombs = this.getCurrentValueSquareAfterDig(row, column);
 		
+		squares.setDug(row, column, workspace.changes);
+		
 		//Bombs around = 0
 		if(neighboursWithBombs == 0)
 		{
-			squares[row][column].setCurrentValue(' ');
-			this.expandOutwards(row, column);
+			this.expandOutwards(row, column, workspace);
 		}
-		
-		//Bombs around > 0
-		else
+		return false;
+	}
+	
+	/**
+	 * Chord helper which digs the neighbours of a square that are neither flagged nor dug, if the square is dug and
+	 * has as many flags around it as its number
+	 * @param row of Board
+	 * @param column of Board
+	 * @param workspace buffers for the operation, the whole board being locked if anything is dug
+	 * @return true if any of the digs hit a bomb
+	 */
+	private boolean chordSquare(int row, int column, Workspace workspace)
+	{
+		if(!this.isChordable(row, column))
+			return false;
+		boolean boom = false;
+		for(int r = Math.max(row - 1, 0); r <= Math.min(row + 1, this.rows - 1); r++)
 		{
-			squares[row][column].setCurrentValue(Character.forDigit(neighboursWithBombs, 10));
+			for(int c = Math.max(column - 1, 0); c <= Math.min(column + 1, this.columns - 1); c++)
+			{
+				if(squares.isUntouched(r, c))
+					boom |= this.digSquare(r, c, workspace);
+			}
 		}
-		return this.look();
+		return boom;
 	}
 	
 	/**
-	 * Dig helper method which expands a square outwards in the case that there are no bombs surrounding a given square
-	 * Consequently, the surrounding squares are dug
-	 * @param row of square with no surrounding bombs
-	 * @param column of square with no surrounding bombs
+	 * @return true if a square is dug, has a neighbour that is neither flagged nor dug, and has as many flagged
+	 * 		neighbours as bombs around it
 	 */
-	private synchronized void expandOutwards(int row, int column)
+	private boolean isChordable(int row, int column)
 	{
-		for(int i = -1; i <2; i++)
+		if(!this.isValid(row, column) || !squares.isDug(row, column))
+			return false;
+		int flags = 0;
+		boolean untouched = false;
+		for(int r = Math.max(row - 1, 0); r <= Math.min(row + 1, this.rows - 1); r++)
 		{
-			for(int j = -1; j < 2 ; j++)
+			for(int c = Math.max(column - 1, 0); c <= Math.min(column + 1, this.columns - 1); c++)
 			{
-				//if valid square and untouched 
-				if(this.isValid(row + i, column+j) && this.squares[row+i][column + j].getCurrentValue() == '-')
-				{
-					int currentValue = this.getCurrentValueSquareAfterDig((row+i), (column +j));
-					//recursively call expandOutwards if another square with 0 surrounding bombs is found
-					if(currentValue == 0)
-					{
-						this.squares[row+i][column + j].setCurrentValue(' ');
-						this.expandOutwards(row+ i, column + j);
-					}
-					
-					
-					else
-						this.squares[row+i][column + j].setCurrentValue(Character.forDigit(currentValue, 10));
-				}
+				if(squares.isFlagged(r, c))
+					flags++;
+				else if(squares.isUntouched(r, c))
+					untouched = true;
 			}
 		}
+		return untouched && flags == squares.getCount(row, column);
+	}
+	
+	/**
+	 * Moves the bombs on a square and around it to random squares further away that are not dug, so digging the
+	 * square reveals a 0. A bomb moved only changes the counts around its old and new squares, so the cost does not
+	 * depend on the size of the board. The moves are logged before the dig, so replaying the log moves the same
+	 * bombs. Bombs stay where they are if there is no room left for them.
+	 * @param row of square to clear
+	 * @param column of square to clear
+	 * @param workspace buffers for the operation, the whole board being locked
+	 */
+	private void clearAround(int row, int column, Workspace workspace)
+	{
+		Random random = ThreadLocalRandom.current();
+		for(int r = Math.max(row - 1, 0); r <= Math.min(row + 1, this.rows - 1); r++)
+		{
+			for(int c = Math.max(column - 1, 0); c <= Math.min(column + 1, this.columns - 1); c++)
+			{
+				if(!squares.isBomb(r, c))
+					continue;
+				long target = this.freeSquare(row, column, random);
+				if(target < 0)
+					return;
+				this.moveBomb(REMOVE_BOMB, r, c, workspace);
+				this.moveBomb(PLACE_BOMB, (int) (target / this.columns), (int) (target % this.columns), workspace);
+			}
+		}
+	}
+	
+	/**
+	 * Finds a square for a bomb moved away from a square and its neighbours: a few random squares are tried, then
+	 * the board is looked through in order from a random square, which only happens on boards almost full of bombs
+	 * @return row-major index of a square without a bomb, not dug and not around (row, column), or -1 if there is none
+	 */
+	private long freeSquare(int row, int column, Random random)
+	{
+		long cells = (long) this.rows * this.columns;
+		long start = (long) (random.nextDouble() * cells);
+		for(long k = 0; k < FREE_SQUARE_DRAWS + cells; k++)
+		{
+			long i = k < FREE_SQUARE_DRAWS ? (long) (random.nextDouble() * cells) : (start + k) % cells;
+			int r = (int) (i / this.columns), c = (int) (i % this.columns);
+			if((Math.abs(r - row) > 1 || Math.abs(c - column) > 1) && !squares.isBomb(r, c) && !squares.isDug(r, c))
+				return i;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Removes or places a bomb, updating the counts around it, and logs the move
+	 * @param operation REMOVE_BOMB or PLACE_BOMB
+	 */
+	private void moveBomb(int operation, int row, int column, Workspace workspace)
+	{
+		if(operation == REMOVE_BOMB)
+			squares.removeBomb(row, column, workspace.changes);
+		else
+			squares.placeBomb(row, column, workspace.changes);
+		CommandLog log = this.log;
+		if(log != null)
+			log.append(operation, row, column);
+	}
+	
+	/**
+	 * Tallies the squares an operation dug and flagged and the bombs it removed, then bumps the version and
+	 * updates the rendered LOOK message if it changed any square
+	 * @param workspace holding the changes of the operation
+	 */
+	private void changesApplied(Workspace workspace)
+	{
+		Changes changes = workspace.changes;
+		if(changes.dug != 0)
+			workspace.dug += changes.dug;
+		if(changes.flagged != 0)
+			workspace.flagged += changes.flagged;
+		if(changes.bombs != 0)
+			workspace.bombs += changes.bombs;
+		if(changes.size() == 0)
+			return;
+		version.incrementAndGet();
+		if(lookBuffer != null)
+			lookBuffer.applyChanges(changes);
+	}
+	
+	/**
+	 * Renders the squares changed by an operation as a DELTA message-
+	 * DELTA :== "DELTA" SPACE N NEWLINE (ROW SPACE COLUMN SPACE VAL NEWLINE){N}
+	 * where VAL is the character the square shows in a LOOK message
+	 * @param changes squares changed by the operation
+	 * @param viewport region whose squares are reported, null for the whole board
+	 * @return DELTA message
+	 */
+	private String changes(Changes changes, Viewport viewport)
+	{
+		int count = changes.size();
+		StringBuilder lines = new StringBuilder(16 * count);
+		int reported = 0;
+		for(int k = 0; k < count; k++)
+		{
+			long index = changes.get(k);
+			int row = (int) (index / this.columns), column = (int) (index % this.columns);
+			if(viewport != null && !viewport.contains(row, column))
+				continue;
+			lines.append(row).append(' ').append(column).append(' ').append(squares.getCurrentValue(row, column)).append('\n');
+			reported++;
+		}
+		return "DELTA " + reported + '\n' + lines;
+	}
+	
+	/**
+	 * Dig helper method which expands a square outwards in the case that there are no bombs surrounding a given square
+	 * Consequently, the surrounding squares are dug, and so on for every newly dug square with no surrounding bombs.
+	 * The expansion is iterative (see FloodFill), so large empty regions cannot overflow the stack.
+	 * @param row of square with no surrounding bombs
+	 * @param column of square with no surrounding bombs
+	 * @param workspace buffers for the operation
+	 */
+	private void expandOutwards(int row, int column, Workspace workspace)
+	{
+		metrics.floodFilled(workspace.floodFill.expandFrom(row, column, workspace.changes));
 		this.checkRep();
 	}
 	
 	/**
-	 * This is a private method which modifies the 8 squares around the bomb after the bomb blows up.
+	 * This is a private method which updates the 8 squares around the bomb after the bomb blows up.
+	 * Their counts have already been decremented by removeBomb, so any dug neighbour left with no surrounding
+	 * bombs is expanded outwards.
 	 * @param row
 	 * @param column
+	 * @param workspace buffers for the operation
 	 */
-	private synchronized void modifyDugNeighbourSquaresAfterBomb(int row, int column)
+	private void modifyDugNeighbourSquaresAfterBomb(int row, int column, Workspace workspace)
 	{
 		for(int i = -1; i<2; i++)
 		{
@@ -239,17 +1002,8 @@ public class Board
 			{
 				if(i==0 && j==0)
 					continue;
-				if(this.isValid(row + i, column+j) && this.squares[row+i][column + j].isDug())
-				{
-					int currentValue = Character.getNumericValue(this.squares[row+i][column+j].getCurrentValue()) - 1;
-					if(currentValue == 0)
-					{
-						this.squares[row+i][column+j].setCurrentValue(' ');
-						this.expandOutwards(row+i, column+j);
-					}
-					else
-						this.squares[row+i][column+j].setCurrentValue(Character.forDigit(currentValue,10));
-				}
+				if(this.isValid(row + i, column+j) && this.squares.isDug(row+i, column + j) && this.squares.getCount(row+i, column+j) == 0)
+					this.expandOutwards(row+i, column+j, workspace);
 			}
 		}
 	}
@@ -260,52 +1014,316 @@ public class Board
 	 * @param column
 	 * @return
 	 */
-	private synchronized boolean isValid(int row, int column)
+	private boolean isValid(int row, int column)
 	{
-		if(row < 0 || column < 0 || row >= this.size ||  column >= this.size)
+		if(row < 0 || column < 0 || row >= this.rows ||  column >= this.columns)
 			return false;
 		return true;
 	}
 	
 	/**
-	 * Find the number of bombs surrounding current square
+	 * Find the number of bombs surrounding current square. Counts are precomputed, so this is a single read.
 	 * @param row of current square
-	 * @param column of currenr square
+	 * @param column of current square
 	 * @return Integer number of bombs surrounding the square
 	 */
-	private synchronized int getCurrentValueSquareAfterDig(int row, int column)
+	private int getCurrentValueSquareAfterDig(int row, int column)
 	{
-		int count = 0;
-		for(int i = -1; i< 2; i++)
+		return squares.getCount(row, column);
+	}
+	
+	/**
+	 * Applies an operation read back from a command log, like the public method of the same operation
+	 * @param operation FLAG, DEFLAG, DIG, CHORD, or REMOVE_BOMB or PLACE_BOMB for the bombs moved by a safe first dig
+	 */
+	void replay(int operation, int row, int column)
+	{
+		if(operation != REMOVE_BOMB && operation != PLACE_BOMB)
 		{
-			for(int j= -1; j< 2; j++)
+			this.perform(operation, row, column, true, null);
+			return;
+		}
+		locks.lockAll();
+		try
+		{
+			if(!this.isValid(row, column) || squares.isBomb(row, column) != (operation == REMOVE_BOMB))
+				return;
+			workspaces[0].changes.clear();
+			this.moveBomb(operation, row, column, workspaces[0]);
+			this.changesApplied(workspaces[0]);
+		}
+		finally
+		{
+			locks.unlockAll();
+		}
+	}
+	
+	/**
+	 * Records the time of the first dig, and of the dig that leaves no square without a bomb to dig. Requires the
+	 * locks of an operation that dug squares, whose counts are tallied.
+	 */
+	private void dugApplied()
+	{
+		if(startedAt.get() == 0)
+			startedAt.compareAndSet(0, System.nanoTime());
+		//A lazy board counts its bombs when asked, nobody digs all its squares before
+		if(initialBombs >= 0 && wonAt.get() == 0 && this.getHidden() == 0)
+			wonAt.compareAndSet(0, System.nanoTime());
+	}
+	
+	/**
+	 * @return number of bombs on the board, those dug being removed. Counting the bombs of a lazy board looks at
+	 * 		every square the first time, every other call takes a time that does not depend on the size of the board.
+	 */
+	public long getBombs()
+	{
+		long bombs = this.initialBombs;
+		if(bombs < 0)
+			bombs = this.countBombs();
+		for(Workspace workspace : workspaces)
+			bombs += workspace.bombs;
+		return bombs;
+	}
+	
+	/**
+	 * Counts the bombs of a lazy board, once
+	 * @return number of bombs when the board was created
+	 */
+	private long countBombs()
+	{
+		locks.lockAll();
+		try
+		{
+			if(initialBombs < 0)
 			{
-				if(i ==0 && j==0)
-					continue;
-				if(this.isValid(row+i, column+j))
-					count += findBombInLocation(row+i, column+j);
+				long bombs = squares.countBombs();
+				for(Workspace workspace : workspaces)
+					bombs -= workspace.bombs;
+				initialBombs = bombs;
 			}
-		}		
-		return count;
+			return initialBombs;
+		}
+		finally
+		{
+			locks.unlockAll();
+		}
+	}
+	
+	/**
+	 * @return number of dug squares
+	 */
+	public long getDug()
+	{
+		long dug = this.initialDug;
+		for(Workspace workspace : workspaces)
+			dug += workspace.dug;
+		return dug;
+	}
+	
+	/**
+	 * @return number of flagged squares
+	 */
+	public long getFlagged()
+	{
+		long flagged = this.initialFlagged;
+		for(Workspace workspace : workspaces)
+			flagged += workspace.flagged;
+		return flagged;
+	}
+	
+	/**
+	 * @return number of squares without a bomb left to dig, the game being won once it is 0
+	 */
+	public long getHidden()
+	{
+		return (long) this.rows * this.columns - this.getBombs() - this.getDug();
+	}
+	
+	/**
+	 * @return true if every square without a bomb is dug. The bombs of a lazy board are not counted for this, so
+	 * 		it is only won once they have been (see getBombs).
+	 */
+	public boolean isWon()
+	{
+		return wonAt.get() != 0 || (initialBombs >= 0 && this.getHidden() == 0);
 	}
 	
 	/**
-	 * Finds number of surrounding bombs
-	 * @param r Row on Board
-	 * @param c Column on Board
-	 * @return No of surrounding bombs
+	 * @return nanoseconds from the first dig to the dig that won the game, -1 if no dig has won it
 	 */
-	private synchronized int findBombInLocation(int r, int c)
+	public long getCompletionNanos()
 	{
-		if(!this.isValid(r, c))
+		long won = wonAt.get();
+		return won == 0 ? -1 : won - startedAt.get();
+	}
+	
+	/**
+	 * Tells how the game on the board stands from the counts kept by the operations, the first call on a lazy
+	 * board counting its bombs (see getBombs)-
+	 * STATUS :== "status" SPACE ("playing" | "won") SPACE "hidden=" N SPACE "bombs=" N SPACE "flags=" N SPACE "dug=" N
+	 * where hidden is the number of squares without a bomb left to dig
+	 * @return STATUS message
+	 */
+	public String status()
+	{
+		long bombs = this.getBombs(), dug = this.getDug();
+		long hidden = (long) this.rows * this.columns - bombs - dug;
+		return "status " + (hidden == 0 ? "won" : "playing") + " hidden=" + hidden + " bombs=" + bombs + " flags="
+				+ this.getFlagged() + " dug=" + dug;
+	}
+	
+	/**
+	 * Makes the first dig of the board safe: the bombs on the square dug and around it are moved to random squares
+	 * further away, so it reveals a 0 and opens an area to play from. Only changes the dig made while no square of
+	 * the board is dug.
+	 * @param safe true to make the first dig safe, false to leave the bombs where they are
+	 */
+	public void setFirstDigSafe(boolean safe)
+	{
+		locks.lockAll();
+		try
 		{
-			return 0;
+			firstDigSafe = safe && this.getDug() == 0;
 		}
-		else
+		finally
 		{
-			if(squares[r][c].isBomb())
-				return 1;
+			locks.unlockAll();
 		}
-		return 0;
-	}	
+	}
+	
+	/**
+	 * Ends the game once the board is won: later digs, flags, deflags and chords change nothing and are answered
+	 * with GAME_OVER, whether they are performed on their own or in the same batch as the move that won it, so the
+	 * board stays as it was won.
+	 * @param ends true to end the game once won, false to keep playing on a won board
+	 */
+	public void setEndsWhenWon(boolean ends)
+	{
+		endsWhenWon = ends;
+	}
+	
+	/**
+	 * @return true if the next dig will move the bombs around the square dug, see setFirstDigSafe
+	 */
+	public boolean isFirstDigSafe()
+	{
+		return firstDigSafe;
+	}
+	
+	/**
+	 * Starts logging every operation that changes the board and copies the squares at the same instant, so the copy
+	 * plus the log always describe the board. Logged operations only return once they are durable.
+	 * @param log receiving the operations
+	 * @return copy of the squares
+	 */
+	CellStore startLog(CommandLog log)
+	{
+		locks.lockAll();
+		try
+		{
+			this.log = log;
+			this.lastLog = log;
+			return squares.copy();
+		}
+		finally
+		{
+			locks.unlockAll();
+		}
+	}
+	
+	/**
+	 * Stops logging operations
+	 */
+	void stopLog()
+	{
+		locks.lockAll();
+		try
+		{
+			this.log = null;
+		}
+		finally
+		{
+			locks.unlockAll();
+		}
+	}
+	
+	/**
+	 * Copies the squares and, at the same instant, starts a new segment of the log, so the copy plus the new segment
+	 * always describe the board. Requires a log to be attached.
+	 * @param segment file of the new log segment
+	 * @return copy of the squares
+	 */
+	CellStore checkpoint(File segment) throws IOException
+	{
+		locks.lockAll();
+		try
+		{
+			log.rotate(segment);
+			return squares.copy();
+		}
+		finally
+		{
+			locks.unlockAll();
+		}
+	}
+	
+	/**
+	 * Starts telling a listener about the squares changed by every operation
+	 * @param listener to add
+	 */
+	public void addListener(BoardListener listener)
+	{
+		listeners.add(listener);
+	}
+	
+	/**
+	 * Stops telling a listener about changes. It may still receive the event of an operation being applied.
+	 * @param listener to remove
+	 */
+	public void removeListener(BoardListener listener)
+	{
+		listeners.remove(listener);
+	}
+	
+	/**
+	 * Tells whether a square currently holds a bomb. Used by tests to inspect the hidden layout.
+	 * @param row of Board
+	 * @param column of Board
+	 * @return true if the square has a bomb
+	 */
+	boolean isBomb(int row, int column)
+	{
+		locks.lockAll();
+		try
+		{
+			return squares.isBomb(row, column);
+		}
+		finally
+		{
+			locks.unlockAll();
+		}
+	}
+	
+	/**
+	 * Buffers reused by the operations holding one stripe of the board (or the whole board)
+	 */
+	private static final class Workspace
+	{
+		final Changes changes = new Changes();
+		final ChangeEvent event;
+		final FloodFill floodFill;
+		//Sequence number in the command log of the last operation applied, 0 if it was not logged
+		long logged;
+		//Squares dug, flags placed minus flags removed, and bombs placed minus bombs removed by the operations
+		//that used this workspace, written only by the holder of its locks and read by anyone
+		volatile long dug;
+		volatile long flagged;
+		volatile long bombs;
+		
+		Workspace(CellStore squares)
+		{
+			this.floodFill = new FloodFill(squares);
+			this.event = new ChangeEvent(squares, changes);
+		}
+	}
 }
@@ -0,0 +1,229 @@
+package minesweeper.board;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Loads board files straight into a CellStore. The file is memory-mapped a window at a time and parsed
+ * byte by byte, so loading allocates nothing per line or per square and works on files far larger than
+ * the heap would allow as Strings. Files must follow the grammar
+ *
+ * 		FILE :== LINE+
+ * 		LINE :== (VAL SPACE)* VAL NEWLINE
+ * 		VAL :== 0 | 1
+ * 		SPACE :== " "
+ * 		NEWLINE :== "\r?\n"
+ *
+ * where every LINE has as many VALs as the first LINE, except that the NEWLINE of the last LINE may be missing.
+ * The board has a row per LINE and a column per VAL of a LINE, so it may be as wide or as narrow as needed.
+ * Any other file is rejected with an IOException giving the line and column of the first problem.
+ * Files in the binary format of BinaryBoardFormat are recognised by their header and loaded by it instead.
+ * @author Rishabh
+ *
+ */
+final class BoardFileLoader
+{
+	//Bytes mapped at a time, well below the 2 GB limit of a single mapping
+	private static final long WINDOW = 1L << 26;
+
+	//Parser states
+	private static final int EXPECT_VALUE = 0;
+	private static final int AFTER_VALUE = 1;
+	private static final int AFTER_CARRIAGE_RETURN = 2;
+
+	private final File file;
+	private final CellStore squares;
+	private final int rows;
+	private final int columns;
+
+	private int state = EXPECT_VALUE;
+	private int row;
+	private int column;
+	//1-based position in the file of the byte being parsed, for error messages
+	private int line = 1;
+	private long character;
+
+	private BoardFileLoader(File file, CellStore squares)
+	{
+		this.file = file;
+		this.squares = squares;
+		this.rows = squares.getRows();
+		this.columns = squares.getColumns();
+	}
+
+	/**
+	 * Loads a board file
+	 * @param file following the grammar above, or a binary board file
+	 * @return squares of the board, with their counts computed
+	 * @throws IOException if the file cannot be read or is not a board
+	 */
+	static CellStore load(File file) throws IOException
+	{
+		if(BinaryBoardFormat.isBinary(file))
+			return BinaryBoardFormat.read(file);
+		RandomAccessFile input = new RandomAccessFile(file, "r");
+		try
+		{
+			FileChannel channel = input.getChannel();
+			long length = channel.size();
+			int columns = countFirstRow(file, channel, length);
+			long rows = countRows(channel, length);
+			CellStore squares;
+			try
+			{
+				if(rows > Integer.MAX_VALUE)
+					throw new IllegalArgumentException();
+				squares = new CellStore((int) rows, columns);
+			}
+			catch(IllegalArgumentException e)
+			{
+				throw new IOException(file + ": board of " + rows + " rows of " + columns + " columns is too large", e);
+			}
+			BoardFileLoader loader = new BoardFileLoader(file, squares);
+			for(long position = 0; position < length; position += WINDOW)
+				loader.parse(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW, length - position)));
+			loader.finish();
+			squares.computeCounts();
+			return squares;
+		}
+		finally
+		{
+			input.close();
+		}
+	}
+
+	/**
+	 * @return number of values on the first line of the file, assuming it is well formed
+	 */
+	private static int countFirstRow(File file, FileChannel channel, long length) throws IOException
+	{
+		if(length == 0)
+			throw new IOException(file + ": file is empty");
+		long values = 1;
+		for(long position = 0; position < length; position += WINDOW)
+		{
+			MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW, length - position));
+			while(window.hasRemaining())
+			{
+				byte b = window.get();
+				if(b == '\n' || b == '\r')
+					return (int) values;
+				if(b == ' ' && ++values > Integer.MAX_VALUE)
+					throw new IOException(file + ": first row is too long");
+			}
+		}
+		return (int) values;
+	}
+
+	/**
+	 * @return number of lines of the file, counting a last line without a newline, assuming it is well formed
+	 */
+	private static long countRows(FileChannel channel, long length) throws IOException
+	{
+		long newlines = 0;
+		byte last = 0;
+		for(long position = 0; position < length; position += WINDOW)
+		{
+			MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW, length - position));
+			while(window.hasRemaining())
+			{
+				last = window.get();
+				if(last == '\n')
+					newlines++;
+			}
+		}
+		return last == '\n' ? newlines : newlines + 1;
+	}
+
+	/**
+	 * Parses the next window of the file
+	 */
+	private void parse(MappedByteBuffer window) throws IOException
+	{
+		while(window.hasRemaining())
+		{
+			byte b = window.get();
+			character++;
+			switch(state)
+			{
+			case EXPECT_VALUE:
+				if(b != '0' && b != '1')
+					throw malformed("expected 0 or 1 but found " + describe(b));
+				if(row == rows)
+					throw malformed("more than " + rows + " rows");
+				if(column == columns)
+					throw malformed("row has more than " + columns + " values");
+				if(b == '1')
+					squares.setBomb(row, column, true);
+				column++;
+				state = AFTER_VALUE;
+				break;
+			case AFTER_VALUE:
+				if(b == ' ')
+					state = EXPECT_VALUE;
+				else if(b == '\r')
+					state = AFTER_CARRIAGE_RETURN;
+				else if(b == '\n')
+					endRow();
+				else
+					throw malformed("expected a space or a newline but found " + describe(b));
+				break;
+			default:
+				if(b != '\n')
+					throw malformed("expected a newline after a carriage return but found " + describe(b));
+				endRow();
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Ends the row being parsed after its newline
+	 */
+	private void endRow() throws IOException
+	{
+		if(column != columns)
+			throw malformed("row has " + column + " values instead of " + columns);
+		row++;
+		column = 0;
+		line++;
+		character = 0;
+		state = EXPECT_VALUE;
+	}
+
+	/**
+	 * Checks the file ended at the end of a row
+	 */
+	private void finish() throws IOException
+	{
+		//The newline of the last row is optional
+		if(state == AFTER_VALUE)
+			endRow();
+		else if(state != EXPECT_VALUE || column != 0)
+		{
+			character++;
+			throw malformed("file ends in the middle of a row");
+		}
+		if(row != rows)
+			throw new IOException(file + ": board has " + row + " rows of " + columns + " values instead of " + rows);
+	}
+
+	private IOException malformed(String message)
+	{
+		return new IOException(file + ":" + line + ":" + character + ": " + message);
+	}
+
+	private static String describe(byte b)
+	{
+		if(b == '\n' || b == '\r')
+			return "end of line";
+		if(b == ' ')
+			return "a space";
+		if(b >= 0x21 && b < 0x7F)
+			return "'" + (char) b + "'";
+		return String.format("byte 0x%02X", b & 0xFF);
+	}
+}
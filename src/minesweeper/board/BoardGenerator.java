@@ -0,0 +1,377 @@
+package minesweeper.board;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds random boards with an exact number of bombs. Boards generated from the same seed, dimensions and number
+ * of bombs are identical, whatever the number of threads generating them.
+ *
+ * The squares are split in chunks of CHUNK squares, each drawn by its own SplitMix64 stream derived from the seed,
+ * so chunks are generated in parallel on every core. Every square of a chunk holds a bomb with probability
+ * mines / squares, then a last stream removes surplus bombs or adds missing ones at uniformly random squares until
+ * there are exactly mines bombs. Each step treats every square alike, so every placement of mines bombs is
+ * equally likely.
+ *
+ * Lazy boards (see generateLazy) are not drawn up front: every square holds a bomb with probability density,
+ * decided by hashing the seed with the position of the square when it is first needed.
+ *
+ * Rep invariant- 	threads > 0
+ * @author Rishabh
+ *
+ */
+public final class BoardGenerator
+{
+	//Share of squares holding a bomb on the boards created without a number of bombs
+	public static final double DEFAULT_DENSITY = 0.25;
+
+	//Squares drawn by one stream, fixed so boards do not depend on the number of threads
+	static final int CHUNK = 1 << 20;
+
+	//Increment of SplitMix64 (the odd integer closest to 2^64 / golden ratio)
+	static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+	private final long seed;
+	private final int threads;
+
+	/**
+	 * Creates a generator with a random seed
+	 */
+	public BoardGenerator()
+	{
+		this(new Random().nextLong());
+	}
+
+	/**
+	 * Creates a generator using every core
+	 * @param seed of the boards generated
+	 */
+	public BoardGenerator(long seed)
+	{
+		this(seed, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param seed of the boards generated
+	 * @param threads most threads generating a board at once, > 0
+	 */
+	BoardGenerator(long seed, int threads)
+	{
+		this.seed = seed;
+		this.threads = threads;
+		this.checkRep();
+	}
+
+	private void checkRep()
+	{
+		assert this.threads > 0;
+	}
+
+	/**
+	 * @return seed of the boards generated
+	 */
+	public long getSeed()
+	{
+		return this.seed;
+	}
+
+	/**
+	 * @param size of a board
+	 * @param density share of its squares holding a bomb, between 0 and 1
+	 * @return number of bombs on a board of that size and density, rounded to the closest integer
+	 */
+	public static long mineCount(int size, double density)
+	{
+		return mineCount(size, size, density);
+	}
+
+	/**
+	 * @param rows of a board
+	 * @param columns of a board
+	 * @param density share of its squares holding a bomb, between 0 and 1
+	 * @return number of bombs on a board of those dimensions and density, rounded to the closest integer
+	 */
+	public static long mineCount(int rows, int columns, double density)
+	{
+		if(!(density >= 0 && density <= 1))
+			throw new IllegalArgumentException("density " + density + " is not between 0 and 1");
+		return Math.round(density * rows * columns);
+	}
+
+	/**
+	 * Generates a serial board
+	 * @param size of board
+	 * @param mines number of bombs, between 0 and size * size
+	 * @return a size x size board with exactly mines bombs, determined by the seed, size and mines
+	 */
+	public Board generate(int size, long mines)
+	{
+		return generate(size, mines, false);
+	}
+
+	/**
+	 * Generates a board
+	 * @param size of board
+	 * @param mines number of bombs, between 0 and size * size
+	 * @param concurrent: true to let operations on far apart rows run in parallel
+	 * @return a size x size board with exactly mines bombs, determined by the seed, size and mines
+	 */
+	public Board generate(int size, long mines, boolean concurrent)
+	{
+		return generate(size, size, mines, concurrent);
+	}
+
+	/**
+	 * Generates a board of any shape
+	 * @param rows of board
+	 * @param columns of board
+	 * @param mines number of bombs, between 0 and rows * columns
+	 * @param concurrent: true to let operations on far apart rows run in parallel
+	 * @return a rows x columns board with exactly mines bombs, determined by the seed, dimensions and mines
+	 */
+	public Board generate(int rows, int columns, long mines, boolean concurrent)
+	{
+		return new Board(place(rows, columns, mines), concurrent);
+	}
+
+	/**
+	 * Generates a board whose squares are only stored once players touch them (see CellStore), for boards too
+	 * large to allocate. Its bombs are not counted up front, so their number is only about density * size * size.
+	 * @param size of board
+	 * @param density probability of every square holding a bomb, between 0 and 1
+	 * @param concurrent: true to let operations on far apart rows run in parallel
+	 * @return a size x size board, determined by the seed, size and density
+	 */
+	public Board generateLazy(int size, double density, boolean concurrent)
+	{
+		return generateLazy(size, size, density, concurrent);
+	}
+
+	/**
+	 * Generates a lazy board of any shape, like generateLazy(size, density, concurrent)
+	 * @param rows of board
+	 * @param columns of board
+	 * @param density probability of every square holding a bomb, between 0 and 1
+	 * @param concurrent: true to let operations on far apart rows run in parallel
+	 * @return a rows x columns board, determined by the seed, dimensions and density
+	 */
+	public Board generateLazy(int rows, int columns, double density, boolean concurrent)
+	{
+		if(!(density >= 0 && density <= 1))
+			throw new IllegalArgumentException("density " + density + " is not between 0 and 1");
+		return new Board(new CellStore(rows, columns, mix(seed), density), concurrent);
+	}
+
+	/**
+	 * Places the bombs of a square board and computes its counts
+	 * @param size of board
+	 * @param mines number of bombs, between 0 and size * size
+	 * @return squares of the board
+	 */
+	CellStore place(int size, long mines)
+	{
+		return place(size, size, mines);
+	}
+
+	/**
+	 * Places the bombs of a board and computes its counts
+	 * @param rows of board
+	 * @param columns of board
+	 * @param mines number of bombs, between 0 and rows * columns
+	 * @return squares of the board
+	 */
+	CellStore place(int rows, final int columns, long mines)
+	{
+		final CellStore squares = new CellStore(rows, columns);
+		final int cells = rows * columns;
+		if(mines < 0 || mines > cells)
+			throw new IllegalArgumentException(mines + " bombs do not fit on a board of size " + rows + "x" + columns);
+
+		//Bernoulli draw of every square, bomb if the top 53 bits of its random number are below threshold
+		final long threshold = (long) ((double) mines / cells * (1L << 53));
+		final int chunks = (cells + CHUNK - 1) / CHUNK;
+		final long[] placed = new long[chunks];
+		forEach(chunks, new Task()
+		{
+			void run(int chunk)
+			{
+				long state = stream(chunk);
+				int end = (int) Math.min((long) (chunk + 1) * CHUNK, cells);
+				long count = 0;
+				for(int i = chunk * CHUNK; i < end; i++)
+				{
+					state += GOLDEN_GAMMA;
+					if(mix(state) >>> 11 < threshold)
+					{
+						squares.addState(i, CellStore.BOMB);
+						count++;
+					}
+				}
+				placed[chunk] = count;
+			}
+		});
+
+		long total = 0;
+		for(long count : placed)
+			total += count;
+		//About sqrt(cells) squares to fix, each found after a few draws at most unless the board is nearly full or empty
+		long state = stream(chunks);
+		while(total != mines)
+		{
+			state += GOLDEN_GAMMA;
+			int i = (int) ((mix(state) >>> 33) * cells >>> 31);
+			boolean bomb = (squares.getState(i) & CellStore.BOMB) != 0;
+			if(bomb == total > mines)
+			{
+				squares.setBomb(i / columns, i % columns, !bomb);
+				total += bomb ? -1 : 1;
+			}
+		}
+
+		//Counts in bands of about CHUNK squares
+		final int bandHeight = Math.max(1, CHUNK / columns);
+		final int bands = (rows + bandHeight - 1) / bandHeight;
+		forEach(bands, new Task()
+		{
+			void run(int band)
+			{
+				squares.computeCounts(band * bandHeight, Math.min((band + 1) * bandHeight, squares.getRows()));
+			}
+		});
+		return squares;
+	}
+
+	/**
+	 * Places the bombs of a board like place(rows, columns, mines), then moves those on a square and its
+	 * neighbours to random squares further away, so digging that square first reveals a 0
+	 * @param rows of board
+	 * @param columns of board
+	 * @param mines number of bombs, between 0 and rows * columns minus the square and its neighbours
+	 * @param row of the square left clear
+	 * @param column of the square left clear
+	 * @return squares of the board
+	 */
+	CellStore placeClear(int rows, int columns, long mines, int row, int column)
+	{
+		int cells = rows * columns;
+		int clear = (Math.min(row + 1, rows - 1) - Math.max(row - 1, 0) + 1) * (Math.min(column + 1, columns - 1) - Math.max(column - 1, 0) + 1);
+		if(mines < 0 || mines > cells - clear)
+			throw new IllegalArgumentException(mines + " bombs do not fit on a board of size " + rows + "x" + columns + " with a clear square");
+		CellStore squares = place(rows, columns, mines);
+		long state = stream(cells / CHUNK + 2);
+		boolean moved = false;
+		for(int r = Math.max(row - 1, 0); r <= Math.min(row + 1, rows - 1); r++)
+		{
+			for(int c = Math.max(column - 1, 0); c <= Math.min(column + 1, columns - 1); c++)
+			{
+				if(!squares.isBomb(r, c))
+					continue;
+				squares.setBomb(r, c, false);
+				while(true)
+				{
+					state += GOLDEN_GAMMA;
+					int i = (int) ((mix(state) >>> 33) * cells >>> 31);
+					int toRow = i / columns, toColumn = i % columns;
+					if(!squares.isBomb(toRow, toColumn) && (Math.abs(toRow - row) > 1 || Math.abs(toColumn - column) > 1))
+					{
+						squares.setBomb(toRow, toColumn, true);
+						break;
+					}
+				}
+				moved = true;
+			}
+		}
+		if(moved)
+			squares.computeCounts();
+		return squares;
+	}
+
+	/**
+	 * @return starting state of the stream drawing a chunk
+	 */
+	private long stream(int chunk)
+	{
+		return mix(seed + (chunk + 1) * GOLDEN_GAMMA);
+	}
+
+	/**
+	 * Finalizer of SplitMix64, turning consecutive states into independent looking 64-bit numbers
+	 */
+	static long mix(long z)
+	{
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Work done for every index of a range, by whichever thread takes the index
+	 */
+	private abstract static class Task
+	{
+		abstract void run(int index);
+	}
+
+	/**
+	 * Runs task for every index from 0 to count - 1, on up to threads threads, and returns once they are all done
+	 */
+	private void forEach(final int count, final Task task)
+	{
+		int workers = Math.min(threads, count);
+		if(workers <= 1)
+		{
+			for(int i = 0; i < count; i++)
+				task.run(i);
+			return;
+		}
+		final AtomicInteger next = new AtomicInteger();
+		final RuntimeException[] failure = new RuntimeException[1];
+		Runnable worker = new Runnable()
+		{
+			public void run()
+			{
+				try
+				{
+					for(int i = next.getAndIncrement(); i < count; i = next.getAndIncrement())
+						task.run(i);
+				}
+				catch(RuntimeException e)
+				{
+					synchronized(failure)
+					{
+						failure[0] = e;
+					}
+				}
+			}
+		};
+		Thread[] started = new Thread[workers - 1];
+		for(int t = 0; t < started.length; t++)
+		{
+			started[t] = new Thread(worker, "minesweeper-generator");
+			started[t].start();
+		}
+		worker.run();
+		boolean interrupted = false;
+		for(Thread thread : started)
+		{
+			while(thread.isAlive())
+			{
+				try
+				{
+					thread.join();
+				}
+				catch(InterruptedException e)
+				{
+					interrupted = true;
+				}
+			}
+		}
+		if(interrupted)
+			Thread.currentThread().interrupt();
+		synchronized(failure)
+		{
+			if(failure[0] != null)
+				throw failure[0];
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package minesweeper.board;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class BoardGeneratorTest
+{
+	/**
+	 * Tests have been written for
+	 * 1) The exact number of bombs, including empty and full boards
+	 * 2) Boards generated from the same seed, with different numbers of threads
+	 * 3) Counts of generated boards, spanning several chunks and bands
+	 * 4) Lazy boards, which must answer like a dense board with the same bombs while storing only touched tiles
+	 * 5) Boards that are not square, very wide and very tall ones included
+	 */
+	@Test
+	public void exactCountTest()
+	{
+		BoardGenerator generator = new BoardGenerator(3);
+		int[] sizes = {1, 2, 7, 50};
+		for(int size : sizes)
+		{
+			long cells = (long) size * size;
+			long[] counts = {0, 1, cells / 3, cells - 1, cells};
+			for(long mines : counts)
+				assertEquals(mines, bombs(generator.place(size, mines)));
+		}
+		assertEquals(25, bombs(generator.place(10, BoardGenerator.mineCount(10, BoardGenerator.DEFAULT_DENSITY))));
+		assertEquals(75, bombs(generator.place(3, 100, BoardGenerator.mineCount(3, 100, BoardGenerator.DEFAULT_DENSITY))));
+		assertEquals(7, bombs(generator.place(1, 9, 7)));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void tooManyBombsTest()
+	{
+		new BoardGenerator(3).generate(4, 17);
+	}
+
+	//Same seed, same board, however many threads draw it; a chunk and a band boundary fall inside the board
+	@Test
+	public void reproducibleTest()
+	{
+		int size = 1100;
+		long mines = BoardGenerator.mineCount(size, 0.2);
+		CellStore serial = new BoardGenerator(42, 1).place(size, mines);
+		CellStore parallel = new BoardGenerator(42, 4).place(size, mines);
+		assertEquals(mines, bombs(serial));
+		int same = 0;
+		for(int i = 0; i < size * size; i++)
+		{
+			if(serial.getState(i) == parallel.getState(i) && serial.getCount(i) == parallel.getCount(i))
+				same++;
+		}
+		assertEquals(size * size, same);
+
+		CellStore other = new BoardGenerator(43, 4).place(size, mines);
+		boolean differs = false;
+		for(int i = 0; i < size * size && !differs; i++)
+			differs = serial.getState(i) != other.getState(i);
+		assertEquals(true, differs);
+	}
+
+	//Counts computed in parallel bands agree with counting the neighbours of every square, whatever the shape
+	@Test
+	public void countsTest()
+	{
+		int[][] shapes = {{1100, 1100}, {3, 400000}, {400000, 3}};
+		for(int[] shape : shapes)
+		{
+			int rows = shape[0], columns = shape[1];
+			CellStore squares = new BoardGenerator(7, 4).place(rows, columns, BoardGenerator.mineCount(rows, columns, 0.3));
+			int wrong = 0;
+			for(int row = 0; row < rows; row++)
+			{
+				for(int column = 0; column < columns; column++)
+				{
+					int count = 0;
+					for(int r = Math.max(row - 1, 0); r <= Math.min(row + 1, rows - 1); r++)
+					{
+						for(int c = Math.max(column - 1, 0); c <= Math.min(column + 1, columns - 1); c++)
+						{
+							if((r != row || c != column) && squares.isBomb(r, c))
+								count++;
+						}
+					}
+					if(squares.getCount(row, column) != count)
+						wrong++;
+				}
+			}
+			assertEquals(0, wrong);
+		}
+	}
+
+	//Random operations, including flood fills across tiles and dug bombs, on a lazy board and a dense copy of its bombs
+	@Test
+	public void lazyMatchesDenseTest()
+	{
+		int[][] shapes = {{150, 150}, {3, 1000}, {300, 70}, {150, 150}, {65, 129}};
+		for(int seed = 0; seed < shapes.length; seed++)
+		{
+			int rows = shapes[seed][0], columns = shapes[seed][1];
+			Board lazy = new BoardGenerator(seed).generateLazy(rows, columns, 0.08 + 0.05 * seed, seed % 2 == 0);
+			CellStore squares = new CellStore(rows, columns);
+			for(int row = 0; row < rows; row++)
+			{
+				for(int column = 0; column < columns; column++)
+					squares.setBomb(row, column, lazy.isBomb(row, column));
+			}
+			squares.computeCounts();
+			Board dense = new Board(squares, false);
+			assertEquals(dense.look(), lazy.look());
+
+			Random rand = new Random(seed);
+			int mismatches = 0;
+			for(int k = 0; k < 400; k++)
+			{
+				int row = rand.nextInt(rows + 2) - 1, column = rand.nextInt(columns + 2) - 1;
+				int operation = rand.nextInt(6);
+				String expected = operation == 0 ? dense.flagDelta(row, column) : operation == 1 ? dense.deflagDelta(row, column)
+						: dense.digDelta(row, column);
+				String actual = operation == 0 ? lazy.flagDelta(row, column) : operation == 1 ? lazy.deflagDelta(row, column)
+						: lazy.digDelta(row, column);
+				if(!expected.equals(actual))
+					mismatches++;
+			}
+			assertEquals(0, mismatches);
+			assertEquals(dense.look(), lazy.look());
+		}
+	}
+
+	//Memory follows what players touched: a few digs on a huge lazy board create a few tiles (a LOOK message of it would not fit in a String)
+	@Test
+	public void lazyTilesTest()
+	{
+		Board board = new BoardGenerator(5).generateLazy(40000, 0.3, true);
+		assertEquals(0, board.squares.getMaterializedTiles());
+		board.flagDelta(0, 0);
+		board.digDelta(20000, 20000);
+		board.digDelta(39999, 39999);
+		int tiles = board.squares.getMaterializedTiles();
+		assertEquals(true, tiles >= 3 && tiles <= 12);
+
+		BoardGenerator generator = new BoardGenerator(9);
+		Board first = generator.generateLazy(1000, 0.2, false);
+		Board second = generator.generateLazy(1000, 0.2, false);
+		int different = 0;
+		for(int row = 0; row < 1000; row++)
+		{
+			for(int column = 0; column < 1000; column++)
+			{
+				if(first.isBomb(row, column) != second.isBomb(row, column))
+					different++;
+			}
+		}
+		assertEquals(0, different);
+	}
+
+	private static long bombs(CellStore squares)
+	{
+		long bombs = 0;
+		for(int i = 0; i < squares.getRows() * squares.getColumns(); i++)
+		{
+			if((squares.getState(i) & CellStore.BOMB) != 0)
+				bombs++;
+		}
+		return bombs;
+	}
+}
@@ -0,0 +1,267 @@
+package minesweeper.board;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Makes a Board survive a crash of its process. A journal keeps a directory of snapshots, each a binary board
+ * file (see BinaryBoardFormat), and command log segments (see CommandLog) holding every operation applied since
+ * the snapshot of the same generation:
+ *
+ * 		snapshot-G.bin   state of the board when generation G started
+ * 		log-G.log        operations applied during generation G
+ *
+ * A snapshot copies the board and starts a new log segment at the same instant, writes the copy next to the
+ * files of the previous generation and only then deletes them, so at any moment the newest readable snapshot
+ * plus the segments from its generation on describe every operation that was answered.
+ *
+ * Recovery loads that snapshot, replays the segments in order (ignoring a record torn at the very end), and
+ * immediately takes a new snapshot so the replayed segments can be deleted.
+ * @author Rishabh
+ *
+ */
+public final class BoardJournal
+{
+	private static final String SNAPSHOT_PREFIX = "snapshot-";
+	private static final String SNAPSHOT_SUFFIX = ".bin";
+	private static final String LOG_PREFIX = "log-";
+	private static final String LOG_SUFFIX = ".log";
+
+	private final File directory;
+	private final Board board;
+	private final CommandLog log;
+	//Generation of the newest snapshot, whose log segment receives the operations
+	private long generation;
+	//Operations replayed when the journal was recovered
+	private long recovered;
+
+	private BoardJournal(File directory, Board board, long generation) throws IOException
+	{
+		this.directory = directory;
+		this.board = board;
+		this.generation = generation;
+		this.log = new CommandLog(file(LOG_PREFIX, generation, LOG_SUFFIX));
+	}
+
+	/**
+	 * @param directory of a journal
+	 * @return true if directory holds a journal to recover
+	 */
+	public static boolean exists(File directory)
+	{
+		return generations(directory, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX).length > 0;
+	}
+
+	/**
+	 * Starts journaling a board in a directory that holds no journal yet
+	 * @param directory of the journal, created if needed
+	 * @param board to journal, from now on every operation changing it returns only once it is durable
+	 * @return the journal
+	 * @throws IOException if the directory cannot be written or already holds a journal
+	 */
+	public static BoardJournal create(File directory, Board board) throws IOException
+	{
+		if(exists(directory))
+			throw new IOException(directory + " already holds a journal");
+		if(!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("cannot create " + directory);
+		//Left by a create that did not get to write its snapshot, none of its operations were answered
+		file(directory, LOG_PREFIX, 0, LOG_SUFFIX).delete();
+		BoardJournal journal = new BoardJournal(directory, board, 0);
+		writeSnapshot(directory, 0, board.startLog(journal.log));
+		return journal;
+	}
+
+	/**
+	 * Rebuilds the board of a journal as it was when its process stopped, and keeps journaling it
+	 * @param directory holding a journal
+	 * @param concurrent true to let operations on far apart rows of the recovered board run in parallel
+	 * @return the journal, whose board is getBoard()
+	 * @throws IOException if no snapshot can be read, or a log segment before the last one is missing or damaged
+	 */
+	public static BoardJournal recover(File directory, boolean concurrent) throws IOException
+	{
+		long[] snapshots = generations(directory, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+		long[] segments = generations(directory, LOG_PREFIX, LOG_SUFFIX);
+		Board board = null;
+		long start = -1;
+		IOException failure = null;
+		for(int i = snapshots.length - 1; i >= 0 && board == null; i--)
+		{
+			try
+			{
+				board = new Board(file(directory, SNAPSHOT_PREFIX, snapshots[i], SNAPSHOT_SUFFIX), concurrent);
+				start = snapshots[i];
+			}
+			catch(IOException e)
+			{
+				failure = e;
+			}
+		}
+		if(board == null)
+			throw new IOException("no readable snapshot in " + directory, failure);
+
+		//The segment of a generation is created before its snapshot, so every segment from the snapshot's on must be there
+		long records = 0;
+		long expected = start;
+		long last = start;
+		for(int i = 0; i < segments.length; i++)
+		{
+			if(segments[i] < start)
+				continue;
+			if(segments[i] != expected)
+				throw new IOException(directory + ": log segment " + expected + " is missing");
+			expected = segments[i] + 1;
+			last = segments[i];
+			records += CommandLog.replay(file(directory, LOG_PREFIX, segments[i], LOG_SUFFIX), board, i == segments.length - 1);
+		}
+
+		long next = Math.max(last, snapshots[snapshots.length - 1]) + 1;
+		BoardJournal journal = new BoardJournal(directory, board, next);
+		writeSnapshot(directory, next, board.startLog(journal.log));
+		journal.deleteBefore(next);
+		journal.recovered = records;
+		return journal;
+	}
+
+	/**
+	 * @return the journaled board
+	 */
+	public Board getBoard()
+	{
+		return board;
+	}
+
+	/**
+	 * @return number of operations replayed by recover(), 0 for a journal from create()
+	 */
+	public long getRecoveredOperations()
+	{
+		return recovered;
+	}
+
+	/**
+	 * Writes a snapshot of the board and deletes the files it makes useless, so recovery replays no operation
+	 * applied before it. Operations carry on meanwhile, except while the board is being copied.
+	 */
+	public synchronized void snapshot() throws IOException
+	{
+		long next = generation + 1;
+		CellStore copy = board.checkpoint(file(LOG_PREFIX, next, LOG_SUFFIX));
+		generation = next;
+		writeSnapshot(directory, next, copy);
+		deleteBefore(next);
+	}
+
+	/**
+	 * Takes a snapshot if the log segment since the last one has grown larger than a snapshot, which keeps
+	 * recovery within about twice the time it takes to load a snapshot
+	 * @return true if a snapshot was taken
+	 */
+	public synchronized boolean snapshotIfNeeded() throws IOException
+	{
+		long snapshotLength = file(SNAPSHOT_PREFIX, generation, SNAPSHOT_SUFFIX).length();
+		if(file(LOG_PREFIX, generation, LOG_SUFFIX).length() < snapshotLength)
+			return false;
+		snapshot();
+		return true;
+	}
+
+	/**
+	 * Stops journaling, once every operation applied so far is durable
+	 */
+	public synchronized void close() throws IOException
+	{
+		board.stopLog();
+		log.close();
+	}
+
+	/**
+	 * Writes a snapshot under a temporary name, forces it to disk and renames it, so a snapshot file is always complete
+	 */
+	private static void writeSnapshot(File directory, long generation, CellStore squares) throws IOException
+	{
+		File snapshot = file(directory, SNAPSHOT_PREFIX, generation, SNAPSHOT_SUFFIX);
+		File temporary = new File(directory, snapshot.getName() + ".tmp");
+		BinaryBoardFormat.write(squares, temporary);
+		Files.move(temporary.toPath(), snapshot.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		//Make the rename durable too, where the platform lets directories be forced
+		try
+		{
+			FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ);
+			try
+			{
+				channel.force(true);
+			}
+			finally
+			{
+				channel.close();
+			}
+		}
+		catch(IOException e)
+		{
+			//Not supported on this platform
+		}
+	}
+
+	/**
+	 * Deletes the snapshots and log segments of generations before generation
+	 */
+	private void deleteBefore(long generation)
+	{
+		for(long old : generations(directory, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX))
+		{
+			if(old < generation)
+				file(SNAPSHOT_PREFIX, old, SNAPSHOT_SUFFIX).delete();
+		}
+		for(long old : generations(directory, LOG_PREFIX, LOG_SUFFIX))
+		{
+			if(old < generation)
+				file(LOG_PREFIX, old, LOG_SUFFIX).delete();
+		}
+	}
+
+	private File file(String prefix, long generation, String suffix)
+	{
+		return file(directory, prefix, generation, suffix);
+	}
+
+	private static File file(File directory, String prefix, long generation, String suffix)
+	{
+		return new File(directory, prefix + generation + suffix);
+	}
+
+	/**
+	 * @return sorted generations of the files named prefix + generation + suffix in directory
+	 */
+	private static long[] generations(File directory, String prefix, String suffix)
+	{
+		String[] names = directory.list();
+		if(names == null)
+			return new long[0];
+		long[] found = new long[names.length];
+		int count = 0;
+		for(String name : names)
+		{
+			if(!name.startsWith(prefix) || !name.endsWith(suffix) || name.length() == prefix.length() + suffix.length())
+				continue;
+			try
+			{
+				found[count] = Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+				count++;
+			}
+			catch(NumberFormatException e)
+			{
+				//Not a file of the journal
+			}
+		}
+		long[] sorted = Arrays.copyOf(found, count);
+		Arrays.sort(sorted);
+		return sorted;
+	}
+}
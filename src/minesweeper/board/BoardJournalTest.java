@@ -0,0 +1,210 @@
+package minesweeper.board;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class BoardJournalTest
+{
+	/**
+	 * A journal left open stands for a process that crashed: every operation it answered is durable, and recovering
+	 * its directory must give back the same board.
+	 */
+	private static final int SIZE = 60;
+
+	//Operations before and after snapshots all survive a crash
+	@Test
+	public void recoverTest()throws IOException
+	{
+		File directory = createDirectory();
+		try
+		{
+			Board board = new Board(SIZE);
+			BoardJournal journal = BoardJournal.create(directory, board);
+			Random rand = new Random(1);
+			apply(board, rand, 300);
+			journal.snapshot();
+			apply(board, rand, 300);
+			journal.snapshot();
+			apply(board, rand, 300);
+
+			BoardJournal recovered = BoardJournal.recover(directory, false);
+			assertSameBoard(board, recovered.getBoard());
+			journal.close();
+
+			//The recovered journal keeps logging, and its files alone describe the board
+			apply(recovered.getBoard(), rand, 300);
+			assertEquals(2, directory.list().length);
+			assertSameBoard(recovered.getBoard(), BoardJournal.recover(directory, true).getBoard());
+		}
+		finally
+		{
+			delete(directory);
+		}
+	}
+
+	//The bombs moved by a safe first dig are moved again when the journal is replayed
+	@Test
+	public void firstDigSafeTest()throws IOException
+	{
+		File directory = createDirectory();
+		try
+		{
+			Board board = new BoardGenerator(4).generate(SIZE, SIZE * SIZE / 2);
+			BoardJournal journal = BoardJournal.create(directory, board);
+			board.setFirstDigSafe(true);
+			board.dig(SIZE / 2, SIZE / 2);
+			apply(board, new Random(3), 200);
+			assertSameBoard(board, BoardJournal.recover(directory, false).getBoard());
+			journal.close();
+		}
+		finally
+		{
+			delete(directory);
+		}
+	}
+
+	//Moves performed without waiting are durable once the log calls back, and survive a crash
+	@Test
+	public void whenDurableTest()throws IOException, InterruptedException
+	{
+		File directory = createDirectory();
+		try
+		{
+			Board board = new Board(SIZE);
+			BoardJournal journal = BoardJournal.create(directory, board);
+			Batch batch = new Batch();
+			batch.flag(1, 2);
+			batch.dig(SIZE - 1, SIZE - 1);
+			board.perform(batch, true, null, false, false);
+			assertTrue(batch.getLogged() > 0);
+			final CountDownLatch durable = new CountDownLatch(1);
+			Runnable callback = new Runnable()
+			{
+				public void run()
+				{
+					durable.countDown();
+				}
+			};
+			if(board.whenDurable(batch.getLogged(), callback))
+				callback.run();
+			assertTrue(durable.await(10, TimeUnit.SECONDS));
+			board.awaitDurable(batch.getLogged());
+			assertSameBoard(board, BoardJournal.recover(directory, false).getBoard());
+			//Nothing logged is durable already
+			assertTrue(board.whenDurable(0, callback));
+			journal.close();
+		}
+		finally
+		{
+			delete(directory);
+		}
+	}
+
+	//A record torn by the crash is ignored, the records before it are replayed
+	@Test
+	public void tornRecordTest()throws IOException
+	{
+		File directory = createDirectory();
+		try
+		{
+			Board board = new Board(SIZE);
+			BoardJournal journal = BoardJournal.create(directory, board);
+			apply(board, new Random(2), 200);
+			journal.close();
+
+			FileOutputStream log = new FileOutputStream(new File(directory, "log-0.log"), true);
+			log.write(new byte[] {Board.DIG, 0, 0, 0});
+			log.close();
+			assertSameBoard(board, BoardJournal.recover(directory, false).getBoard());
+		}
+		finally
+		{
+			delete(directory);
+		}
+	}
+
+	//Operations of parallel threads on a concurrent board are logged in an order that replays to the same board
+	@Test
+	public void concurrentTest()throws Exception
+	{
+		File directory = createDirectory();
+		try
+		{
+			final Board board = new Board(4 * SIZE, true);
+			BoardJournal journal = BoardJournal.create(directory, board);
+			Thread[] threads = new Thread[4];
+			for(int t = 0; t < threads.length; t++)
+			{
+				final Random rand = new Random(10 + t);
+				threads[t] = new Thread(new Runnable()
+				{
+					public void run()
+					{
+						apply(board, rand, 500);
+					}
+				});
+				threads[t].start();
+			}
+			for(int k = 0; k < 3; k++)
+			{
+				Thread.sleep(20);
+				journal.snapshot();
+			}
+			for(Thread thread : threads)
+				thread.join();
+			assertSameBoard(board, BoardJournal.recover(directory, false).getBoard());
+		}
+		finally
+		{
+			delete(directory);
+		}
+	}
+
+	private static void apply(Board board, Random rand, int operations)
+	{
+		for(int k = 0; k < operations; k++)
+		{
+			int operation = rand.nextInt(10), row = rand.nextInt(board.getRows()), column = rand.nextInt(board.getColumns());
+			if(operation < 2)
+				board.digDelta(row, column);
+			else if(operation < 7)
+				board.flagDelta(row, column);
+			else
+				board.deflagDelta(row, column);
+		}
+	}
+
+	private static void assertSameBoard(Board expected, Board actual)
+	{
+		assertEquals(expected.look(), actual.look());
+		for(int i = 0; i < expected.getRows(); i++)
+		{
+			for(int j = 0; j < expected.getColumns(); j++)
+				assertEquals(expected.isBomb(i, j), actual.isBomb(i, j));
+		}
+	}
+
+	private static File createDirectory()throws IOException
+	{
+		File directory = File.createTempFile("journal", "");
+		directory.delete();
+		directory.mkdir();
+		return directory;
+	}
+
+	private static void delete(File directory)
+	{
+		for(File file : directory.listFiles())
+			file.delete();
+		directory.delete();
+	}
+}
@@ -0,0 +1,20 @@
+package minesweeper.board;
+
+/**
+ * Receives the squares changed by every operation applied to a Board it was added to (see Board.addListener).
+ * @author Rishabh
+ *
+ */
+public interface BoardListener
+{
+	/**
+	 * Called by the thread applying an operation that changed at least one square, while it still holds the locks
+	 * of the operation, so the events of operations touching the same square arrive in the order they were applied.
+	 * On a journaled board the operation is appended to the command log first, but may not be durable yet:
+	 * listeners telling players about it should wait for it (see ChangeEvent.getLogged and Board.whenDurable).
+	 * Implementations must return quickly, must not throw and must not call the board back, except whenDurable.
+	 * @param board that changed
+	 * @param event squares changed by the operation, only valid during the call
+	 */
+	void squaresChanged(Board board, ChangeEvent event);
+}
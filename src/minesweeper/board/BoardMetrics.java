@@ -0,0 +1,88 @@
+package minesweeper.board;
+
+/**
+ * Measurements of every Board of the process, recorded as operations run: how long operations wait for the
+ * board's locks and hold them (see RegionLocks), in nanoseconds, and how many squares each flood fill digs.
+ * Recording costs two System.nanoTime calls and two Histogram records per lock taken, so it is always on.
+ *
+ * Boards played by the process itself rather than by players, like those a BoardPool solves to check them, record
+ * into NONE instead, which discards what it is given, so they do not skew the measurements of the server.
+ * @author Rishabh
+ *
+ */
+public final class BoardMetrics
+{
+	private static final BoardMetrics INSTANCE = new BoardMetrics(true);
+
+	//Measurements of boards that are not played by players, which are not recorded
+	static final BoardMetrics NONE = new BoardMetrics(false);
+
+	private final Histogram lockWait = new Histogram();
+	private final Histogram lockHold = new Histogram();
+	private final Histogram floodFill = new Histogram();
+	private final boolean recording;
+
+	private BoardMetrics(boolean recording)
+	{
+		this.recording = recording;
+	}
+
+	/**
+	 * @return the measurements of the boards of this process
+	 */
+	public static BoardMetrics get()
+	{
+		return INSTANCE;
+	}
+
+	/**
+	 * Records how long an operation waited to lock the whole board or a stripe of it
+	 */
+	void lockWaited(long nanos)
+	{
+		if(recording)
+			lockWait.record(nanos);
+	}
+
+	/**
+	 * Records how long an operation held the whole board or a stripe of it
+	 */
+	void lockHeld(long nanos)
+	{
+		if(recording)
+			lockHold.record(nanos);
+	}
+
+	/**
+	 * Records the squares a flood fill dug
+	 */
+	void floodFilled(long squares)
+	{
+		if(recording)
+			floodFill.record(squares);
+	}
+
+	/**
+	 * @return nanoseconds operations waited to lock the whole board or a stripe of it
+	 */
+	public Histogram.Snapshot getLockWait()
+	{
+		return lockWait.snapshot();
+	}
+
+	/**
+	 * @return nanoseconds operations held the whole board or a stripe of it
+	 */
+	public Histogram.Snapshot getLockHold()
+	{
+		return lockHold.snapshot();
+	}
+
+	/**
+	 * @return squares dug by each flood fill, not counting the square dug first
+	 */
+	public Histogram.Snapshot getFloodFill()
+	{
+		return floodFill.snapshot();
+	}
+}
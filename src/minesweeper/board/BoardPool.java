@@ -0,0 +1,205 @@
+package minesweeper.board;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Random boards of one shape that can be solved without guessing, generated ahead of time by a thread per core.
+ *
+ * Each thread draws candidate boards whose first square (see getRow, getColumn) and its neighbours hold no bomb,
+ * so digging it first reveals a 0, and lets a Solver play a copy of each from that square without guessing. The
+ * boards the solver clears are kept, untouched, until up to capacity of them wait in the pool; the threads then
+ * wait until boards are taken. Candidates are drawn from their own seeds (mixed from the pool's seed and their
+ * number), so each board of the pool is reproducible, but which of them are taken first depends on the threads.
+ *
+ * Far fewer boards can be solved without guessing at high densities: about a fifth of 100x100 boards with 15%
+ * of bombs and a tenth of 16x30 boards with 99 bombs are, but hardly any 100x100 board with 20% and none with the
+ * usual 25%. A core checks about 200 candidates of 100x100 squares a second.
+ *
+ * Rep invariant- 	ready.size() <= capacity
+ * 					accepted <= candidates
+ * @author Rishabh
+ *
+ */
+public final class BoardPool
+{
+	private final int rows;
+	private final int columns;
+	private final long mines;
+	private final int row;
+	private final int column;
+	private final long seed;
+	private final boolean concurrent;
+	private final BlockingQueue<Board> ready;
+	private final Thread[] threads;
+	private final Solver solver = new Solver();
+	//Number of the next candidate, and candidates solved without guessing
+	private final AtomicLong candidates = new AtomicLong();
+	private final AtomicLong accepted = new AtomicLong();
+	private volatile boolean closed;
+
+	/**
+	 * Starts generating boards on every core
+	 * @param rows of the boards
+	 * @param columns of the boards
+	 * @param mines number of bombs of each board, leaving room for the first square and its neighbours
+	 * @param capacity most boards waiting in the pool, > 0
+	 * @param seed of the boards
+	 * @param concurrent true to let operations on far apart rows of the boards run in parallel
+	 */
+	public BoardPool(int rows, int columns, long mines, int capacity, long seed, boolean concurrent)
+	{
+		this(rows, columns, mines, capacity, seed, concurrent, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param threads number of threads generating boards, > 0
+	 */
+	BoardPool(int rows, int columns, long mines, int capacity, long seed, boolean concurrent, int threads)
+	{
+		this.rows = rows;
+		this.columns = columns;
+		this.mines = mines;
+		this.row = rows / 2;
+		this.column = columns / 2;
+		this.seed = seed;
+		this.concurrent = concurrent;
+		this.ready = new ArrayBlockingQueue<Board>(capacity);
+		//Fails now rather than in the threads if the bombs do not fit
+		int clear = (Math.min(row + 1, rows - 1) - Math.max(row - 1, 0) + 1) * (Math.min(column + 1, columns - 1) - Math.max(column - 1, 0) + 1);
+		if(mines < 0 || mines > (long) rows * columns - clear)
+			throw new IllegalArgumentException(mines + " bombs do not fit on a board of size " + rows + "x" + columns + " with a clear square");
+		this.threads = new Thread[threads];
+		Runnable worker = new Runnable()
+		{
+			public void run()
+			{
+				try
+				{
+					while(!closed)
+					{
+						Board board = next();
+						if(board != null)
+							ready.put(board);
+					}
+				}
+				catch(InterruptedException e)
+				{
+					//closed
+				}
+			}
+		};
+		for(int t = 0; t < threads; t++)
+		{
+			this.threads[t] = new Thread(worker, "minesweeper-pool");
+			this.threads[t].setDaemon(true);
+			this.threads[t].setPriority(Thread.MIN_PRIORITY);
+			this.threads[t].start();
+		}
+	}
+
+	/**
+	 * Draws a candidate and solves a copy of it
+	 * @return the candidate, untouched, if the solver cleared it without guessing, otherwise null
+	 */
+	private Board next()
+	{
+		long number = candidates.getAndIncrement();
+		CellStore squares = new BoardGenerator(BoardGenerator.mix(seed + (number + 1) * BoardGenerator.GOLDEN_GAMMA), 1)
+				.placeClear(rows, columns, mines, row, column);
+		Solver.Result result = solver.solve(new Board(squares.copy(), false, BoardMetrics.NONE), row, column, false);
+		if(!result.isSolved())
+			return null;
+		accepted.incrementAndGet();
+		return new Board(squares, concurrent);
+	}
+
+	/**
+	 * Takes a board out of the pool, waiting for one if it is empty
+	 * @return a board that can be solved without guessing by digging (getRow(), getColumn()) first
+	 * @throws InterruptedException if interrupted while waiting
+	 * @throws IllegalStateException if the pool is closed
+	 */
+	public Board take() throws InterruptedException
+	{
+		if(closed)
+			throw new IllegalStateException("pool is closed");
+		return ready.take();
+	}
+
+	/**
+	 * Takes a board out of the pool if there is one
+	 * @return a board that can be solved without guessing by digging (getRow(), getColumn()) first, or null
+	 */
+	public Board poll()
+	{
+		return ready.poll();
+	}
+
+	/**
+	 * @return number of boards waiting in the pool
+	 */
+	public int size()
+	{
+		return ready.size();
+	}
+
+	/**
+	 * @return rows of the boards
+	 */
+	public int getRows()
+	{
+		return rows;
+	}
+
+	/**
+	 * @return columns of the boards
+	 */
+	public int getColumns()
+	{
+		return columns;
+	}
+
+	/**
+	 * @return row of the square to dig first on the boards
+	 */
+	public int getRow()
+	{
+		return row;
+	}
+
+	/**
+	 * @return column of the square to dig first on the boards
+	 */
+	public int getColumn()
+	{
+		return column;
+	}
+
+	/**
+	 * @return number of candidate boards drawn so far
+	 */
+	public long getCandidates()
+	{
+		return candidates.get();
+	}
+
+	/**
+	 * @return number of candidate boards solved without guessing so far
+	 */
+	public long getAccepted()
+	{
+		return accepted.get();
+	}
+
+	/**
+	 * Stops generating boards. Boards still waiting in the pool can be polled.
+	 */
+	public void close()
+	{
+		closed = true;
+		for(Thread thread : threads)
+			thread.interrupt();
+	}
+}
@@ -0,0 +1,88 @@
+package minesweeper.board;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class BoardPoolTest
+{
+	/**
+	 * Tests have been written for
+	 * 1) Boards taken from a pool, which must be solved from the first square without guessing
+	 * 2) The square dug first and its neighbours, which must hold no bomb
+	 * 3) Too many bombs for the clear squares
+	 * 4) Boards solved to check them, which must not be measured with the boards of the players
+	 */
+	@Test
+	public void noGuessTest() throws InterruptedException
+	{
+		BoardPool pool = new BoardPool(20, 30, 90, 4, 7, false, 2);
+		try
+		{
+			for(int k = 0; k < 10; k++)
+			{
+				Board board = pool.take();
+				int bombs = 0;
+				for(int row = 0; row < board.getRows(); row++)
+				{
+					for(int column = 0; column < board.getColumns(); column++)
+					{
+						if(board.isBomb(row, column))
+							bombs++;
+					}
+				}
+				assertEquals(90, bombs);
+				assertEquals("DELTA", board.digDelta(pool.getRow(), pool.getColumn()).substring(0, 5));
+				Solver.Result result = new Solver().solve(board, pool.getRow(), pool.getColumn(), false);
+				assertTrue(result.toString(), result.isSolved());
+				assertEquals(0, result.getGuesses());
+			}
+			assertTrue(pool.getAccepted() >= 10 && pool.getCandidates() >= pool.getAccepted());
+		}
+		finally
+		{
+			pool.close();
+		}
+	}
+
+	@Test
+	public void clearTest()
+	{
+		for(int seed = 0; seed < 50; seed++)
+		{
+			CellStore squares = new BoardGenerator(seed).placeClear(5, 6, 21, 4, 0);
+			int bombs = 0;
+			for(int row = 0; row < 5; row++)
+			{
+				for(int column = 0; column < 6; column++)
+				{
+					if(squares.isBomb(row, column))
+					{
+						bombs++;
+						assertTrue(row < 3 || column > 1);
+					}
+				}
+			}
+			assertEquals(21, bombs);
+			assertEquals(0, squares.getCount(4, 0));
+		}
+	}
+
+	@Test
+	public void metricsTest()
+	{
+		CellStore squares = new BoardGenerator(4, 1).placeClear(30, 30, 100, 15, 15);
+		long holds = BoardMetrics.get().getLockHold().getCount();
+		long fills = BoardMetrics.get().getFloodFill().getCount();
+		new Solver().solve(new Board(squares, false, BoardMetrics.NONE), 15, 15, true);
+		assertEquals(holds, BoardMetrics.get().getLockHold().getCount());
+		assertEquals(fills, BoardMetrics.get().getFloodFill().getCount());
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void tooManyBombsTest()
+	{
+		new BoardPool(3, 3, 1, 1, 7, false, 1);
+	}
+}
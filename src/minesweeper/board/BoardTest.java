@@ -1,9 +1,12 @@
 package minesweeper.board;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 
 import org.junit.Test;
 
@@ -35,7 +38,7 @@ public class BoardTest
 		{
 			for(int j = 0; j < 5; j++)
 			{
-				if(b.squares[i][j].isBomb())
+				if(b.isBomb(i, j))
 					System.out.print(1 + " ");
 				else
 					System.out.print(0 + " ");
@@ -70,11 +73,11 @@ public class BoardTest
 	{
 		Board b = new Board(new File("src\\autograder\\resources\\board_file_5"));
 		String test = "";
-		for(int i = 0; i < b.size; i++)
+		for(int i = 0; i < b.rows; i++)
 		{
-			for(int j = 0; j < b.size; j++)
+			for(int j = 0; j < b.columns; j++)
 			{
-				if(b.squares[i][j].isBomb())
+				if(b.isBomb(i, j))
 					test += "1 ";
 				else
 					test += "0 ";
@@ -120,11 +123,11 @@ public class BoardTest
 	{
 		Board b = new Board(new File("src\\autograder\\resources\\board_test.txt"));
 		String test = "";
-		for(int i = 0; i < b.size; i++)
+		for(int i = 0; i < b.rows; i++)
 		{
-			for(int j = 0; j < b.size; j++)
+			for(int j = 0; j < b.columns; j++)
 			{
-				if(b.squares[i][j].isBomb())
+				if(b.isBomb(i, j))
 					test += "1 ";
 				else
 					test +="0 ";
@@ -151,4 +154,483 @@ public class BoardTest
 		assertEquals(true, test.equals(b.deflag(0, 0)));
 	}
 	
+	//Digging a bomb next to a dug square with a single surrounding bomb expands that square outwards.
+	//Squares revealed by that expansion already have the right count and must not be decremented again.
+	/*
+	 * 0 0 0 0
+	 * 1 0 0 0
+	 * 0 0 1 0
+	 * 0 0 0 0
+	 */
+	@Test
+	public void boomNeighbourCountsTest()throws IOException
+	{
+		Board b = new Board(new File("src/autograder/resources/board_boom_neighbours"));
+		String test = "";
+		test +="1 - - -" + '\n';
+		test +="- - - -" + '\n';
+		test +="- - - -" + '\n';
+		test +="- - - -" + '\n';
+		assertEquals(test, b.dig(0, 0));
+		assertEquals("BOOM!" + '\n', b.dig(1, 0));
+		
+		test = "";
+		test +="       " + '\n';
+		test +="  1 1 1" + '\n';
+		test +="  1 - -" + '\n';
+		test +="  1 - -" + '\n';
+		assertEquals(test, b.look());
+		assertEquals(true, b.isBomb(2, 2));
+	}
+	
+	//A dig into a large empty region used to recurse once per square and overflow the stack.
+	//The flood fill has to dig every square of a 2000 x 2000 board without bombs.
+	@Test
+	public void largeEmptyFloodFillTest()
+	{
+		CellStore squares = new CellStore(2000);
+		squares.computeCounts();
+		Changes changes = new Changes();
+		squares.setDug(0, 0, changes);
+		assertEquals(2000 * 2000 - 1, new FloodFill(squares).expandFrom(0, 0, changes));
+		assertEquals(2000 * 2000, changes.size());
+		assertEquals(' ', squares.getCurrentValue(1999, 1999));
+	}
+	
+	//DELTA responses only list the squares changed by each operation, as ROW COLUMN VAL lines
+	//Uses the same file as FileTest
+	@Test
+	public void deltaTest()throws IOException
+	{
+		Board b = new Board(new File("src/autograder/resources/board_test.txt"));
+		assertEquals("DELTA 1" + '\n' + "0 0 F" + '\n', b.flagDelta(0, 0));
+		//Flagging a flagged square changes nothing
+		assertEquals("DELTA 0" + '\n', b.flagDelta(0, 0));
+		
+		String test = "DELTA 6" + '\n';
+		test += "0 3  " + '\n';
+		test += "0 2 1" + '\n';
+		test += "1 2 1" + '\n';
+		test += "1 3  " + '\n';
+		test += "2 2 2" + '\n';
+		test += "2 3 1" + '\n';
+		assertEquals(test, b.digDelta(0, 3));
+		
+		//Digging the bomb decrements the dug neighbours, expands the ones left with no bombs around and digs the square
+		test = "BOOM!" + '\n' + "DELTA 6" + '\n';
+		test += "0 2  " + '\n';
+		test += "1 2  " + '\n';
+		test += "2 2 1" + '\n';
+		test += "0 1 1" + '\n';
+		test += "1 1 1" + '\n';
+		test += "2 1 1" + '\n';
+		assertEquals(test, b.digDelta(1, 1));
+		
+		assertEquals("DELTA 1" + '\n' + "0 0 -" + '\n', b.deflagDelta(0, 0));
+		assertEquals("DELTA 0" + '\n', b.digDelta(-1, 2));
+	}
+	
+	//Looks between operations share one rendered snapshot, operations that change nothing keep the version
+	@Test
+	public void lookSnapshotTest()throws IOException
+	{
+		Board b = new Board(new File("src/autograder/resources/board_test.txt"));
+		String first = b.look();
+		assertSame(first, b.look());
+		
+		long version = b.getVersion();
+		b.deflag(0, 0);
+		assertEquals(version, b.getVersion());
+		assertSame(first, b.look());
+		
+		b.flag(0, 0);
+		assertEquals(version + 1, b.getVersion());
+		assertEquals("F - - -" + '\n' + "- - - -" + '\n' + "- - - -" + '\n' + "- - - -" + '\n', b.look());
+		assertSame(b.look(), b.look());
+	}
+	
+	//Carriage returns and a missing last newline load the same board as the plain format
+	@Test
+	public void fileFormatTest()throws IOException
+	{
+		String expected = new Board(new File("src/autograder/resources/board_test.txt")).look();
+		assertEquals(expected, load("1 0 0 0\r\n0 1 0 0\r\n0 0 0 0\r\n1 0 0 1\r\n").look());
+		assertEquals(expected, load("1 0 0 0\n0 1 0 0\n0 0 0 0\n1 0 0 1\n").look());
+		assertEquals("-" + '\n', load("1").look());
+	}
+	
+	//Malformed files fail with the position of the problem instead of a NullPointerException or ArrayIndexOutOfBoundsException
+	@Test
+	public void malformedFileTest()throws IOException
+	{
+		String[][] files = {
+				{"", "file is empty"},
+				{"0 0 0\n0 0\n0 0 0\n0 0 0\n", ":2:4: row has 2 values instead of 3"},
+				{"0 0\n0 0 0\n", ":2:5: row has more than 2 values"},
+				{"0 0\n0 01\n", ":2:4: expected a space or a newline but found '1'"},
+				{"0 0\n0 2\n", ":2:3: expected 0 or 1 but found '2'"},
+				{"0 0\n0  0\n", ":2:3: expected 0 or 1 but found a space"},
+				{"0 0\n0 0 \n", ":2:5: expected 0 or 1 but found end of line"},
+				{"0 0\n\n0 0\n", ":2:1: expected 0 or 1 but found end of line"},
+				{"0 0\r0 0\n", ":1:5: expected a newline after a carriage return"},
+				{"0 0\n0 0 ", ":2:5: file ends in the middle of a row"},
+				{"0 0\n0 0\n\n", ":3:1: expected 0 or 1"},
+				{"0 0 0\n0 0 0\n0 0\n", ":3:4: row has 2 values instead of 3"},
+		};
+		for(String[] file : files)
+		{
+			try
+			{
+				load(file[0]);
+				throw new AssertionError("loaded " + file[0]);
+			}
+			catch(IOException e)
+			{
+				assertEquals(e.getMessage(), true, e.getMessage().contains(file[1]));
+			}
+		}
+	}
+	
+	//Saved boards load back with their bombs, dug and flagged squares, in a sixteenth of the text format's space
+	@Test
+	public void binaryRoundTripTest()throws IOException
+	{
+		File text = new File("src/autograder/resources/board_file_5");
+		File binary = File.createTempFile("brd", ".bin");
+		try
+		{
+			Board b = new Board(text);
+			b.save(binary);
+			assertEquals(16 + 7 + 4, binary.length());
+			assertEquals(b.look(), new Board(binary).look());
+			
+			b.dig(0, 6);
+			b.flag(6, 0);
+			b.dig(1, 4);
+			b.save(binary);
+			assertEquals(16 + 3 * 7 + 4, binary.length());
+			Board loaded = new Board(binary, true);
+			assertEquals(b.look(), loaded.look());
+			for(int i = 0; i < 7; i++)
+			{
+				for(int j = 0; j < 7; j++)
+					assertEquals(b.isBomb(i, j), loaded.isBomb(i, j));
+			}
+			assertEquals(b.dig(6, 6), loaded.dig(6, 6));
+			
+			Board large = new Board(500);
+			large.save(binary);
+			assertEquals(16 + 500 * 500 / 8 + 4, binary.length());
+			assertEquals(large.look(), new Board(binary).look());
+		}
+		finally
+		{
+			binary.delete();
+		}
+	}
+	
+	//Boards need not be square: a row per line and a column per value, kept by the binary format and the generator
+	@Test
+	public void rectangularTest()throws IOException
+	{
+		Board wide = load("0 0 0\n1 0 0");
+		assertEquals(2, wide.getRows());
+		assertEquals(3, wide.getColumns());
+		assertEquals("- - -\n- - -\n", wide.look());
+		assertEquals("- 1  \n- 1  \n", wide.dig(0, 2));
+		assertEquals("1  \n", wide.look(1, 1, 5, 2));
+		assertEquals("DELTA 1\n1 0 F\n", wide.flagDelta(1, 0));
+		assertEquals("DELTA 0\n", wide.digDelta(0, 3));
+		
+		Board tall = load("0\n0\n0\n1\n");
+		assertEquals(4, tall.getRows());
+		assertEquals(1, tall.getColumns());
+		assertEquals(" \n \n1\n-\n", tall.dig(0, 0));
+		
+		File binary = File.createTempFile("brd", ".bin");
+		try
+		{
+			Board generated = new BoardGenerator(2).generate(3, 1000, 700, true);
+			generated.dig(1, 500);
+			generated.flag(2, 999);
+			generated.save(binary);
+			Board loaded = new Board(binary);
+			assertEquals(3, loaded.getRows());
+			assertEquals(1000, loaded.getColumns());
+			assertEquals(generated.look(), loaded.look());
+			int bombs = 0;
+			for(int j = 0; j < 1000; j++)
+			{
+				for(int i = 0; i < 3; i++)
+				{
+					assertEquals(generated.isBomb(i, j), loaded.isBomb(i, j));
+					bombs += loaded.isBomb(i, j) ? 1 : 0;
+				}
+			}
+			assertEquals(true, bombs == 700 || bombs == 699);
+		}
+		finally
+		{
+			binary.delete();
+		}
+	}
+	
+	//A safe first dig reveals a 0 wherever it is, keeps every bomb, and only happens before anything is dug
+	@Test
+	public void firstDigSafeTest()
+	{
+		BoardGenerator generator = new BoardGenerator(11);
+		for(int k = 0; k < 20; k++)
+		{
+			Board board = generator.generate(9, 12, 70, k % 2 == 0);
+			board.setFirstDigSafe(true);
+			int row = k % 9, column = (k * 5) % 12;
+			assertEquals("DELTA", board.digDelta(row, column).substring(0, 5));
+			assertEquals(false, board.isFirstDigSafe());
+			String look = board.look();
+			assertEquals(' ', look.charAt(2 * (row * 12 + column)));
+			int bombs = 0;
+			for(int r = 0; r < 9; r++)
+			{
+				for(int c = 0; c < 12; c++)
+				{
+					if(board.isBomb(r, c))
+						bombs++;
+					char value = look.charAt(2 * (r * 12 + c));
+					if(value != '-' && value != 'F')
+						assertEquals(value == ' ' ? 0 : value - '0', bombsAround(board, r, c));
+				}
+			}
+			assertEquals(70, bombs);
+			board.setFirstDigSafe(true);
+			assertEquals(false, board.isFirstDigSafe());
+		}
+	}
+	
+	private static int bombsAround(Board board, int row, int column)
+	{
+		int bombs = 0;
+		for(int r = Math.max(row - 1, 0); r <= Math.min(row + 1, board.getRows() - 1); r++)
+		{
+			for(int c = Math.max(column - 1, 0); c <= Math.min(column + 1, board.getColumns() - 1); c++)
+			{
+				if((r != row || c != column) && board.isBomb(r, c))
+					bombs++;
+			}
+		}
+		return bombs;
+	}
+	
+	//A chord digs the neighbours of a number once its flags are all placed, and hits a bomb if a flag is wrong
+	@Test
+	public void chordTest()throws IOException
+	{
+		Board board = load("1 0 0\n0 0 0\n0 0 1\n");
+		board.dig(1, 1);
+		assertEquals("DELTA 0\n", board.chordDelta(1, 1));
+		board.flag(0, 0);
+		assertEquals("DELTA 0\n", board.chordDelta(1, 1));
+		assertEquals("DELTA 0\n", board.chordDelta(0, 1));
+		board.flag(2, 2);
+		assertEquals("F 1  \n1 2 1\n  1 F\n", board.chord(1, 1));
+		assertEquals("DELTA 0\n", board.chordDelta(1, 1));
+		
+		Board wrong = load("1 0 0\n0 0 0\n0 0 1\n");
+		wrong.dig(1, 1);
+		wrong.flag(0, 1);
+		wrong.flag(1, 0);
+		Batch batch = new Batch();
+		batch.chord(1, 1);
+		wrong.perform(batch, true, null, false);
+		assertEquals(Batch.CHORD, batch.getMove(0));
+		assertEquals(true, batch.getResponse(0).startsWith("BOOM!\nDELTA "));
+		//Both bombs were left unflagged, so both were dug
+		assertEquals(false, wrong.isBomb(0, 0) || wrong.isBomb(2, 2));
+		assertEquals("  F  \nF    \n     \n", wrong.look());
+	}
+	
+	//The counts follow digs, flags, deflags, dug bombs and the flood fill, and the board is won once the last
+	//square without a bomb is dug
+	@Test
+	public void statusTest()throws IOException
+	{
+		Board board = load("1 0 0\n0 0 0\n0 0 1\n");
+		assertEquals("status playing hidden=7 bombs=2 flags=0 dug=0", board.status());
+		board.flag(0, 0);
+		board.flag(0, 1);
+		board.deflag(0, 1);
+		assertEquals(1, board.getFlagged());
+		board.dig(1, 1);
+		assertEquals("status playing hidden=6 bombs=2 flags=1 dug=1", board.status());
+		board.dig(2, 2);
+		assertEquals("status playing hidden=6 bombs=1 flags=1 dug=2", board.status());
+		assertEquals(false, board.isWon());
+		assertEquals(-1, board.getCompletionNanos());
+		//Digging the flagged bomb's neighbours by chord wins
+		board.chord(1, 1);
+		assertEquals("status won hidden=0 bombs=1 flags=1 dug=8", board.status());
+		assertEquals(true, board.isWon());
+		assertEquals(true, board.getCompletionNanos() >= 0);
+		//A won game can be ended, its bomb can then neither be dug nor deflagged
+		board.setEndsWhenWon(true);
+		assertEquals(Board.GAME_OVER, board.digDelta(2, 2));
+		assertEquals(Board.GAME_OVER, board.deflag(0, 0));
+		assertEquals("status won hidden=0 bombs=1 flags=1 dug=8", board.status());
+		
+		Board lazy = new BoardGenerator(3).generateLazy(40, 0.2, true);
+		long bombs = 0;
+		for(int row = 0; row < 40; row++)
+		{
+			for(int column = 0; column < 40; column++)
+			{
+				if(lazy.isBomb(row, column))
+					bombs++;
+			}
+		}
+		lazy.flag(5, 5);
+		assertEquals(bombs, lazy.getBombs());
+		assertEquals(1, lazy.getFlagged());
+		assertEquals(1600 - bombs, lazy.getHidden());
+	}
+	
+	//A damaged binary file is rejected instead of loading a different board
+	@Test
+	public void corruptedBinaryTest()throws IOException
+	{
+		File binary = File.createTempFile("brd", ".bin");
+		try
+		{
+			new Board(new File("src/autograder/resources/board_file_5")).save(binary);
+			RandomAccessFile file = new RandomAccessFile(binary, "rw");
+			file.seek(18);
+			file.write(0x40);
+			file.close();
+			new Board(binary);
+			throw new AssertionError("loaded a corrupted board");
+		}
+		catch(IOException e)
+		{
+			assertEquals(e.getMessage(), true, e.getMessage().endsWith("checksum mismatch, the file is corrupted"));
+		}
+		finally
+		{
+			binary.delete();
+		}
+	}
+	
+	//Region looks render only the rectangle, cut to the board, and viewport DELTAs only list its squares
+	@Test
+	public void viewportTest()throws IOException
+	{
+		Board b = load("0 0 0 1\n0 0 0 0\n0 0 0 0\n1 0 0 0\n");
+		assertEquals("- - -\n- - -\n", b.look(1, 1, 2, 3));
+		assertEquals("- - -\n- - -\n", b.look(new Viewport(2, 3, 1, 1)));
+		assertEquals("", b.look(5, 5, 9, 9));
+		assertEquals("-\n", b.look(-1, -1, 0, 0));
+
+		assertEquals("DELTA 2\n0 0  \n0 1  \n", b.digDelta(0, 0, new Viewport(0, 0, 0, 1)));
+		assertEquals("   \n   \n", b.look(3, 3, 2, 2));
+		assertEquals("F 1\n", b.flag(3, 0, new Viewport(3, 0, 3, 1)));
+		assertEquals("DELTA 0\n", b.deflagDelta(3, 0, new Viewport(0, 0, 1, 1)));
+		assertEquals("- 1\n", b.look(3, 0, 3, 1));
+		assertEquals("BOOM!\n", b.dig(0, 3, new Viewport(0, 0, 0, 0)));
+	}
+
+	//A lazy board of over 2^31 squares is played by region and by delta, but not looked at whole
+	@Test
+	public void hugeLazyTest()
+	{
+		Board huge = new BoardGenerator(4).generateLazy(50000, 50000, 0.3, true);
+		int column = 49999;
+		while(huge.isBomb(49999, column))
+			column--;
+		String delta = huge.digDelta(49999, column);
+		assertEquals(true, delta.contains("\n49999 " + column + " "));
+		assertEquals(true, huge.look(49999, column, 49999, column).matches("[ 1-8]\n"));
+		try
+		{
+			huge.look();
+			throw new AssertionError("rendered a board of 2.5e9 squares");
+		}
+		catch(IllegalArgumentException e)
+		{
+			assertEquals(true, e.getMessage().startsWith("cannot look at 50000x50000 squares at once"));
+		}
+		try
+		{
+			huge.flag(0, 0);
+			throw new AssertionError("answered a move with the whole board");
+		}
+		catch(IllegalArgumentException e)
+		{
+			assertEquals(false, huge.look(0, 0, 0, 0).equals("F\n"));
+		}
+	}
+
+	//A batch answers each move as if it ran on its own, and stops at a bomb if asked to
+	@Test
+	public void batchTest()throws IOException
+	{
+		String contents = "0 0 0 1\n0 0 0 0\n0 0 0 0\n1 0 0 0\n";
+		Board single = load(contents);
+		Board batched = load(contents);
+		Batch batch = new Batch();
+		batch.flag(3, 0);
+		batch.dig(3, 0);
+		batch.dig(0, 0);
+		batch.deflag(3, 0);
+		batch.dig(3, 0);
+		batch.flag(1, 1);
+		assertEquals(5, batched.perform(batch, false, null, true));
+		assertEquals(6, batch.size());
+		assertEquals(single.flag(3, 0), batch.getResponse(0));
+		assertEquals(single.dig(3, 0), batch.getResponse(1));
+		assertEquals(single.dig(0, 0), batch.getResponse(2));
+		assertEquals(single.deflag(3, 0), batch.getResponse(3));
+		assertEquals("BOOM!\n", batch.getResponse(4));
+		single.dig(3, 0);
+		assertEquals(single.look(), batched.look());
+
+		batch.clear();
+		batch.flag(0, 3);
+		batch.deflag(0, 3);
+		batch.dig(0, 3);
+		batch.flag(2, 2);
+		assertEquals(4, batched.perform(batch, true, new Viewport(0, 3, 0, 3), false));
+		assertEquals("DELTA 1\n0 3 F\n", batch.getResponse(0));
+		assertEquals("DELTA 1\n0 3 -\n", batch.getResponse(1));
+		assertEquals("BOOM!\nDELTA 1\n0 3  \n", batch.getResponse(2));
+		assertEquals("DELTA 0\n", batch.getResponse(3));
+
+		//Once a move of the batch ends the game, the moves after it are answered like moves sent later
+		Board ending = load("0 0\n0 1\n");
+		ending.setEndsWhenWon(true);
+		batch.clear();
+		batch.dig(0, 0);
+		batch.dig(0, 1);
+		batch.dig(1, 0);
+		batch.flag(1, 1);
+		batch.dig(1, 1);
+		assertEquals(5, ending.perform(batch, false, null, true));
+		assertEquals("1 1\n1 -\n", batch.getResponse(2));
+		assertEquals(Board.GAME_OVER, batch.getResponse(3));
+		assertEquals(Board.GAME_OVER, batch.getResponse(4));
+		assertEquals("1 1\n1 -\n", ending.look());
+	}
+
+	private static Board load(String contents)throws IOException
+	{
+		File file = File.createTempFile("brd", ".txt");
+		try
+		{
+			FileOutputStream out = new FileOutputStream(file);
+			out.write(contents.getBytes("US-ASCII"));
+			out.close();
+			return new Board(file);
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
 }
@@ -0,0 +1,706 @@
+package minesweeper.board;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Compact storage for the squares of a Board. Every square is packed into a single byte of one flat
+ * row-major array instead of being a Square object of its own.
+ *
+ * Layout of a cell byte-
+ * 		bits 0-3: number of neighbouring bombs, kept up to date for every square
+ * 		bit 4:    square has a bomb
+ * 		bit 5:    square is flagged
+ * 		bit 6:    square has been dug
+ *
+ * Memory footprint compared to the old Square[][] layout (64-bit JVM, compressed oops)-
+ * 		Square[][]: 16 bytes per Square object (12 byte header + char + boolean, padded)
+ * 		            + 4 bytes per reference in the row array + 16 bytes per row array header
+ * 		            = ~20 bytes per square, i.e. ~2 GB and 100M objects for a 10k x 10k board
+ * 		CellStore:  1 byte per square + one array header
+ * 		            = ~100 MB and a single object for a 10k x 10k board
+ *
+ * A lazy store keeps no array for the whole board. Whether a square holds a bomb is derived from a seed until
+ * the square is written, and squares are stored in TILE x TILE tiles created the first time one of their squares
+ * is written (flagged, dug, or counting a dug bomb), with bombs from the seed and counts computed from the
+ * bombs around. Counts of squares of missing tiles are computed when read. Memory is then proportional to the
+ * part of the board players touched, like:
+ * 		10k x 10k board, 1000 scattered digs: ~1000 tiles of 4 KB (~4 MB) plus 100 KB of tile references
+ * A dense store holds at most Integer.MAX_VALUE squares. A lazy store is only bounded by its table of tile
+ * references, of at most MAX_TILES tiles: about 8.8e12 squares, for instance 2.9 million x 2.9 million, whose
+ * table alone takes 4 bytes per 4096 squares (8 GB at that size, with compressed references). Squares are then
+ * identified by long row-major indices.
+ * Only the bombs of a lazy store are fixed at creation: setBomb, addState and computeCounts are for dense stores.
+ *
+ * Every visible change to a square (flagging, unflagging, digging, or a change in the count of a dug square)
+ * is recorded in the Changes journal passed to the mutator, so callers can report only what changed.
+ *
+ * Rep invariant- 	rows > 0, columns > 0
+ * 					exactly one of cells and tiles is null
+ * 					cells.length == rows * columns for a dense store
+ * 					tiles.length() == tileRows * tilesPerRow for a lazy store
+ * 					a square is never both flagged and dug
+ * 					the count of every square equals the number of bombs among its (up to 8) neighbours
+ * 					once computeCounts() has been called
+ * @author Rishabh
+ *
+ */
+final class CellStore
+{
+	static final int COUNT_MASK = 0x0F;
+	static final int BOMB = 0x10;
+	static final int FLAGGED = 0x20;
+	static final int DUG = 0x40;
+
+	//Dimensions of the stored board
+	private final int rows;
+	private final int columns;
+
+	//Squares of a tile of a lazy store are TILE x TILE, row-major within the tile
+	static final int TILE_SHIFT = 6;
+	static final int TILE = 1 << TILE_SHIFT;
+	private static final int TILE_MASK = TILE - 1;
+	//Most tiles of a lazy store, the largest array the JVM allocates
+	static final int MAX_TILES = Integer.MAX_VALUE - 8;
+
+	//Dense store: one byte per square, row-major. Null for a lazy store
+	private final byte[] cells;
+
+	//Lazy store: tiles in row-major order, null until written. Null for a dense store
+	private final AtomicReferenceArray<byte[]> tiles;
+	private final int tileRows;
+	private final int tilesPerRow;
+	//Lazy store: square i holds a bomb until written if the top 53 bits of mix(seed + (i + 1) * GOLDEN_GAMMA) are below threshold
+	private final long seed;
+	private final long threshold;
+
+	/**
+	 * Creates dense storage for a size x size board with every square untouched and without a bomb
+	 * @param size of board
+	 */
+	CellStore(int size)
+	{
+		this(size, size);
+	}
+
+	/**
+	 * Creates dense storage for a rows x columns board with every square untouched and without a bomb
+	 * @param rows of board
+	 * @param columns of board
+	 */
+	CellStore(int rows, int columns)
+	{
+		if(rows <= 0 || columns <= 0 || (long) rows * columns > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("unsupported board size " + rows + "x" + columns);
+		this.rows = rows;
+		this.columns = columns;
+		this.cells = new byte[rows * columns];
+		this.tiles = null;
+		this.tileRows = 0;
+		this.tilesPerRow = 0;
+		this.seed = 0;
+		this.threshold = 0;
+	}
+
+	/**
+	 * Creates lazy storage for a rows x columns board with every square untouched, each holding a bomb with
+	 * probability density, decided by the seed
+	 * @param rows of board
+	 * @param columns of board
+	 * @param seed deciding which squares hold a bomb
+	 * @param density probability of a square holding a bomb, between 0 and 1
+	 */
+	CellStore(int rows, int columns, long seed, double density)
+	{
+		if(rows <= 0 || columns <= 0 || (long) ((rows + TILE - 1) >> TILE_SHIFT) * ((columns + TILE - 1) >> TILE_SHIFT) > MAX_TILES)
+			throw new IllegalArgumentException("unsupported board size " + rows + "x" + columns);
+		this.rows = rows;
+		this.columns = columns;
+		this.cells = null;
+		this.tileRows = (rows + TILE - 1) >> TILE_SHIFT;
+		this.tilesPerRow = (columns + TILE - 1) >> TILE_SHIFT;
+		this.tiles = new AtomicReferenceArray<byte[]>(tileRows * tilesPerRow);
+		this.seed = seed;
+		this.threshold = (long) (density * (1L << 53));
+	}
+
+	private CellStore(CellStore original)
+	{
+		this.rows = original.rows;
+		this.columns = original.columns;
+		this.cells = original.cells == null ? null : original.cells.clone();
+		this.tileRows = original.tileRows;
+		this.tilesPerRow = original.tilesPerRow;
+		this.seed = original.seed;
+		this.threshold = original.threshold;
+		if(original.tiles == null)
+			this.tiles = null;
+		else
+		{
+			this.tiles = new AtomicReferenceArray<byte[]>(original.tiles.length());
+			for(int t = 0; t < tiles.length(); t++)
+			{
+				byte[] tile = original.tiles.get(t);
+				if(tile != null)
+					tiles.set(t, tile.clone());
+			}
+		}
+	}
+
+	/**
+	 * @return independent copy of every square, lazy if this store is
+	 */
+	CellStore copy()
+	{
+		return new CellStore(this);
+	}
+
+	/**
+	 * @return number of tiles created so far by a lazy store, 0 for a dense store
+	 */
+	int getMaterializedTiles()
+	{
+		int count = 0;
+		for(int t = 0; tiles != null && t < tiles.length(); t++)
+		{
+			if(tiles.get(t) != null)
+				count++;
+		}
+		return count;
+	}
+
+	/**
+	 * @return number of rows of the stored board
+	 */
+	int getRows()
+	{
+		return this.rows;
+	}
+
+	/**
+	 * @return number of columns of the stored board
+	 */
+	int getColumns()
+	{
+		return this.columns;
+	}
+
+	/**
+	 * @return true if squares are only stored once touched, false if they are all allocated up front
+	 */
+	boolean isLazy()
+	{
+		return tiles != null;
+	}
+
+	/**
+	 * @param row of board
+	 * @param column of board
+	 * @return true if the square holds a bomb
+	 */
+	boolean isBomb(int row, int column)
+	{
+		return (state(row, column) & BOMB) != 0;
+	}
+
+	/**
+	 * Places or removes a bomb on a square while the board is being built. Counts are not updated,
+	 * computeCounts() has to be called once all bombs are placed.
+	 * @param row of board
+	 * @param column of board
+	 * @param bomb true to place a bomb, false to remove it
+	 */
+	void setBomb(int row, int column, boolean bomb)
+	{
+		checkDense();
+		int i = row * columns + column;
+		cells[i] = (byte) (bomb ? cells[i] | BOMB : cells[i] & ~BOMB);
+	}
+
+	/**
+	 * @param index row-major index of the square (row * columns + column), of a store of at most
+	 * 		Integer.MAX_VALUE squares
+	 * @return BOMB, FLAGGED and DUG bits of the square
+	 */
+	int getState(int index)
+	{
+		if(tiles != null)
+			return state(index / columns, index % columns) & (BOMB | FLAGGED | DUG);
+		return cells[index] & (BOMB | FLAGGED | DUG);
+	}
+
+	/**
+	 * Sets BOMB, FLAGGED or DUG bits of a square while the board is being built. Counts are not updated,
+	 * computeCounts() has to be called once all bombs are placed.
+	 * @param index row-major index of the square (row * columns + column)
+	 * @param state bits to set
+	 */
+	void addState(int index, int state)
+	{
+		checkDense();
+		cells[index] = (byte) (cells[index] | state);
+	}
+
+	/**
+	 * Builds the neighbouring bomb count of every square in a single streaming pass over the rows. The count of a
+	 * square is the sum of the horizontal 3-square bomb sums of its row and the rows around it, minus its own bomb,
+	 * so only three rows of sums are kept and there are no branches per square.
+	 */
+	void computeCounts()
+	{
+		computeCounts(0, rows);
+	}
+
+	/**
+	 * Builds the neighbouring bomb count of the squares of rows firstRow to endRow - 1, like computeCounts().
+	 * Bands of rows may be computed by different threads at once: a band reads the bombs of the rows just
+	 * outside it while their counts are written, but no bomb is placed or removed meanwhile and a byte is
+	 * always read whole, so it reads the right bombs.
+	 * @param firstRow first row of the band
+	 * @param endRow row after the last row of the band
+	 */
+	void computeCounts(int firstRow, int endRow)
+	{
+		checkDense();
+		int[] above = new int[columns];
+		int[] current = new int[columns];
+		int[] below = new int[columns];
+		if(firstRow > 0)
+			horizontalSums(firstRow - 1, above);
+		horizontalSums(firstRow, current);
+		for(int row = firstRow; row < endRow; row++)
+		{
+			if(row + 1 < rows)
+				horizontalSums(row + 1, below);
+			else
+				Arrays.fill(below, 0);
+			int base = row * columns;
+			for(int column = 0; column < columns; column++)
+			{
+				int cell = cells[base + column];
+				int count = above[column] + current[column] + below[column] - ((cell & BOMB) >> 4);
+				cells[base + column] = (byte) ((cell & ~COUNT_MASK) | count);
+			}
+			int[] recycled = above;
+			above = current;
+			current = below;
+			below = recycled;
+		}
+	}
+
+	/**
+	 * Stores in sums the number of bombs among each square of row and its left and right neighbours
+	 */
+	private void horizontalSums(int row, int[] sums)
+	{
+		int base = row * columns;
+		int left = 0;
+		int middle = (cells[base] & BOMB) >> 4;
+		for(int column = 0; column < columns; column++)
+		{
+			int right = column + 1 < columns ? (cells[base + column + 1] & BOMB) >> 4 : 0;
+			sums[column] = left + middle + right;
+			left = middle;
+			middle = right;
+		}
+	}
+
+	/**
+	 * Removes the bomb on a square and decrements the counts of its neighbours. Only the 8 surrounding
+	 * squares are touched.
+	 * @param row of board
+	 * @param column of board, square must hold a bomb
+	 * @param changes journal receiving the dug neighbours whose count changed
+	 */
+	void removeBomb(int row, int column, Changes changes)
+	{
+		//Create the tiles around first, their counts must still include the bomb
+		if(tiles != null)
+		{
+			for(int r = Math.max(row - 1, 0); r <= Math.min(row + 1, rows - 1); r++)
+			{
+				for(int c = Math.max(column - 1, 0); c <= Math.min(column + 1, columns - 1); c++)
+					cellsOf(r, c);
+			}
+		}
+		byte[] holder = cellsOf(row, column);
+		int i = offsetOf(row, column);
+		holder[i] = (byte) (holder[i] & ~BOMB);
+		changes.bombs--;
+		addToNeighbourCounts(row, column, -1, changes);
+	}
+
+	/**
+	 * Places a bomb on a square and increments the counts of its neighbours, like removeBomb in reverse
+	 * @param row of board
+	 * @param column of board, square must not hold a bomb
+	 * @param changes journal receiving the dug neighbours whose count changed
+	 */
+	void placeBomb(int row, int column, Changes changes)
+	{
+		//Create the tiles around first, their counts must not include the bomb yet
+		if(tiles != null)
+		{
+			for(int r = Math.max(row - 1, 0); r <= Math.min(row + 1, rows - 1); r++)
+			{
+				for(int c = Math.max(column - 1, 0); c <= Math.min(column + 1, columns - 1); c++)
+					cellsOf(r, c);
+			}
+		}
+		byte[] holder = cellsOf(row, column);
+		int i = offsetOf(row, column);
+		holder[i] = (byte) (holder[i] | BOMB);
+		changes.bombs++;
+		addToNeighbourCounts(row, column, 1, changes);
+	}
+
+	/**
+	 * Adds delta to the count of every square around (row, column) that lies on the board,
+	 * recording dug squares in changes unless it is null
+	 */
+	private void addToNeighbourCounts(int row, int column, int delta, Changes changes)
+	{
+		int rowStart = Math.max(row - 1, 0), rowEnd = Math.min(row + 1, rows - 1);
+		int columnStart = Math.max(column - 1, 0), columnEnd = Math.min(column + 1, columns - 1);
+		for(int r = rowStart; r <= rowEnd; r++)
+		{
+			for(int c = columnStart; c <= columnEnd; c++)
+			{
+				if(r != row || c != column)
+				{
+					byte[] holder = cellsOf(r, c);
+					int i = offsetOf(r, c);
+					holder[i] += delta;
+					if(changes != null && (holder[i] & DUG) != 0)
+						changes.add((long) r * columns + c);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param row of board
+	 * @param column of board
+	 * @return true if the square is neither flagged nor dug
+	 */
+	boolean isUntouched(int row, int column)
+	{
+		return (state(row, column) & (FLAGGED | DUG)) == 0;
+	}
+
+	/**
+	 * @param index row-major index of the square (row * columns + column)
+	 * @return true if the square is neither flagged nor dug
+	 */
+	boolean isUntouched(long index)
+	{
+		if(tiles != null)
+			return isUntouched((int) (index / columns), (int) (index % columns));
+		return (cells[(int) index] & (FLAGGED | DUG)) == 0;
+	}
+
+	/**
+	 * @param row of board
+	 * @param column of board
+	 * @return true if the square is flagged
+	 */
+	boolean isFlagged(int row, int column)
+	{
+		return (state(row, column) & FLAGGED) != 0;
+	}
+
+	/**
+	 * @param row of board
+	 * @param column of board
+	 * @return true if the square has been dug
+	 */
+	boolean isDug(int row, int column)
+	{
+		return (state(row, column) & DUG) != 0;
+	}
+
+	/**
+	 * Flags or unflags a square. Requires the square not to be dug.
+	 * @param row of board
+	 * @param column of board
+	 * @param flagged new flag state
+	 * @param changes journal receiving the square if its state changes
+	 */
+	void setFlagged(int row, int column, boolean flagged, Changes changes)
+	{
+		byte[] holder = cellsOf(row, column);
+		int i = offsetOf(row, column);
+		if(((holder[i] & FLAGGED) != 0) != flagged)
+		{
+			changes.add((long) row * columns + column);
+			changes.flagged += flagged ? 1 : -1;
+		}
+		holder[i] = (byte) (flagged ? holder[i] | FLAGGED : holder[i] & ~FLAGGED);
+	}
+
+	/**
+	 * @param row of board
+	 * @param column of board
+	 * @return number of bombs around the square
+	 */
+	int getCount(int row, int column)
+	{
+		if(tiles == null)
+			return cells[row * columns + column] & COUNT_MASK;
+		byte[] tile = tiles.get(tileOf(row, column));
+		if(tile != null)
+			return tile[offsetOf(row, column)] & COUNT_MASK;
+		int count = 0;
+		for(int r = Math.max(row - 1, 0); r <= Math.min(row + 1, rows - 1); r++)
+		{
+			for(int c = Math.max(column - 1, 0); c <= Math.min(column + 1, columns - 1); c++)
+			{
+				if((r != row || c != column) && isBomb(r, c))
+					count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @param index row-major index of the square (row * columns + column)
+	 * @return number of bombs around the square
+	 */
+	int getCount(long index)
+	{
+		if(tiles != null)
+			return getCount((int) (index / columns), (int) (index % columns));
+		return cells[(int) index] & COUNT_MASK;
+	}
+
+	/**
+	 * Marks a square as dug
+	 * @param row of board
+	 * @param column of board
+	 * @param changes journal receiving the square if it was not dug yet
+	 */
+	void setDug(int row, int column, Changes changes)
+	{
+		byte[] holder = cellsOf(row, column);
+		int i = offsetOf(row, column);
+		if((holder[i] & DUG) == 0)
+			this.dug(holder[i], (long) row * columns + column, changes);
+		holder[i] = (byte) ((holder[i] & ~FLAGGED) | DUG);
+	}
+
+	/**
+	 * Marks a square as dug
+	 * @param index row-major index of the square (row * columns + column)
+	 * @param changes journal receiving the square if it was not dug yet
+	 */
+	void setDug(long index, Changes changes)
+	{
+		if(tiles != null)
+		{
+			setDug((int) (index / columns), (int) (index % columns), changes);
+			return;
+		}
+		int i = (int) index;
+		if((cells[i] & DUG) == 0)
+			this.dug(cells[i], index, changes);
+		cells[i] = (byte) ((cells[i] & ~FLAGGED) | DUG);
+	}
+
+	/**
+	 * Records a square about to be dug, and its flag about to be removed
+	 */
+	private void dug(byte square, long index, Changes changes)
+	{
+		changes.add(index);
+		changes.dug++;
+		if((square & FLAGGED) != 0)
+			changes.flagged--;
+	}
+
+	/**
+	 * Counts the bombs, dug squares and flagged squares, looking at every square of a dense store. A lazy store
+	 * only looks at its created tiles, so its bombs are not counted (see countBombs).
+	 * @return {bombs or -1 for a lazy store, dug squares, flagged squares}
+	 */
+	long[] census()
+	{
+		long[] census = new long[3];
+		if(tiles == null)
+			census(cells, census);
+		else
+		{
+			for(int t = 0; t < tiles.length(); t++)
+			{
+				byte[] tile = tiles.get(t);
+				if(tile != null)
+					census(tile, census);
+			}
+			census[0] = -1;
+		}
+		return census;
+	}
+
+	private static void census(byte[] squares, long[] census)
+	{
+		for(byte square : squares)
+		{
+			census[0] += (square & BOMB) >> 4;
+			census[1] += (square & DUG) >> 6;
+			census[2] += (square & FLAGGED) >> 5;
+		}
+	}
+
+	/**
+	 * @return number of bombs, looking at every square without creating any tile
+	 */
+	long countBombs()
+	{
+		long bombs = 0;
+		for(int row = 0; row < rows; row++)
+		{
+			for(int column = 0; column < columns; column++)
+			{
+				if((state(row, column) & BOMB) != 0)
+					bombs++;
+			}
+		}
+		return bombs;
+	}
+
+	/**
+	 * Returns the character a LOOK message shows for a square
+	 * @param row of board
+	 * @param column of board
+	 * @return '-' if untouched, 'F' if flagged, ' ' if dug with no bombs around, else the digit of surrounding bombs
+	 */
+	char getCurrentValue(int row, int column)
+	{
+		if(tiles == null)
+			return getCurrentValue(row * columns + column);
+		int cell = state(row, column);
+		if((cell & DUG) != 0)
+		{
+			int count = cell & COUNT_MASK;
+			return count == 0 ? ' ' : (char) ('0' + count);
+		}
+		return (cell & FLAGGED) != 0 ? 'F' : '-';
+	}
+
+	/**
+	 * Returns the character a LOOK message shows for a square
+	 * @param index row-major index of the square (row * columns + column)
+	 * @return '-' if untouched, 'F' if flagged, ' ' if dug with no bombs around, else the digit of surrounding bombs
+	 */
+	char getCurrentValue(long index)
+	{
+		if(tiles != null)
+			return getCurrentValue((int) (index / columns), (int) (index % columns));
+		int cell = cells[(int) index];
+		if((cell & DUG) != 0)
+		{
+			int count = cell & COUNT_MASK;
+			return count == 0 ? ' ' : (char) ('0' + count);
+		}
+		return (cell & FLAGGED) != 0 ? 'F' : '-';
+	}
+
+	/**
+	 * @return byte of a square, whose count is only meaningful in a dense store or a created tile
+	 */
+	private int state(int row, int column)
+	{
+		if(tiles == null)
+			return cells[row * columns + column];
+		byte[] tile = tiles.get(tileOf(row, column));
+		if(tile != null)
+			return tile[offsetOf(row, column)];
+		return seededBomb(row, column) ? BOMB : 0;
+	}
+
+	/**
+	 * @return array holding the byte of a square, creating its tile in a lazy store, see offsetOf for its position
+	 */
+	private byte[] cellsOf(int row, int column)
+	{
+		if(tiles == null)
+			return cells;
+		int t = tileOf(row, column);
+		byte[] tile = tiles.get(t);
+		if(tile != null)
+			return tile;
+		//Squares are only written with the row locked, so threads racing here hold different rows: both build
+		//the same tile from bombs nobody changes meanwhile, and the first one published wins
+		tile = createTile(row >> TILE_SHIFT, column >> TILE_SHIFT);
+		if(!tiles.compareAndSet(t, null, tile))
+			tile = tiles.get(t);
+		return tile;
+	}
+
+	/**
+	 * @return position of the byte of a square in the array returned by cellsOf
+	 */
+	private int offsetOf(int row, int column)
+	{
+		if(tiles == null)
+			return row * columns + column;
+		return ((row & TILE_MASK) << TILE_SHIFT) | (column & TILE_MASK);
+	}
+
+	private int tileOf(int row, int column)
+	{
+		return (row >> TILE_SHIFT) * tilesPerRow + (column >> TILE_SHIFT);
+	}
+
+	/**
+	 * Builds a tile of untouched squares, with their bombs from the seed and their counts from the bombs around
+	 */
+	private byte[] createTile(int tileRow, int tileColumn)
+	{
+		byte[] tile = new byte[TILE * TILE];
+		int firstRow = tileRow << TILE_SHIFT, firstColumn = tileColumn << TILE_SHIFT;
+		int endRow = Math.min(firstRow + TILE, rows), endColumn = Math.min(firstColumn + TILE, columns);
+		for(int row = firstRow; row < endRow; row++)
+		{
+			for(int column = firstColumn; column < endColumn; column++)
+			{
+				if(seededBomb(row, column))
+					tile[offsetOf(row, column)] = BOMB;
+			}
+		}
+		for(int row = firstRow; row < endRow; row++)
+		{
+			for(int column = firstColumn; column < endColumn; column++)
+			{
+				int count = 0;
+				for(int r = Math.max(row - 1, 0); r <= Math.min(row + 1, rows - 1); r++)
+				{
+					for(int c = Math.max(column - 1, 0); c <= Math.min(column + 1, columns - 1); c++)
+					{
+						if(r == row && c == column)
+							continue;
+						boolean inside = r >= firstRow && r < endRow && c >= firstColumn && c < endColumn;
+						if(inside ? (tile[offsetOf(r, c)] & BOMB) != 0 : isBomb(r, c))
+							count++;
+					}
+				}
+				tile[offsetOf(row, column)] |= count;
+			}
+		}
+		return tile;
+	}
+
+	/**
+	 * @return true if a square of a lazy store holds a bomb according to the seed
+	 */
+	private boolean seededBomb(int row, int column)
+	{
+		long index = (long) row * columns + column;
+		return BoardGenerator.mix(seed + (index + 1) * BoardGenerator.GOLDEN_GAMMA) >>> 11 < threshold;
+	}
+
+	private void checkDense()
+	{
+		if(tiles != null)
+			throw new IllegalStateException("the bombs of a lazy store come from its seed");
+	}
+}
@@ -0,0 +1,65 @@
+package minesweeper.board;
+
+/**
+ * Squares changed by one operation on a Board, passed to its BoardListeners. An event is reused from one operation
+ * to the next, so it is only valid during the call it was passed to.
+ * @author Rishabh
+ *
+ */
+public final class ChangeEvent
+{
+	private final CellStore squares;
+	private final Changes changes;
+	//Sequence number of the operation in the command log of the board, 0 if it was not logged
+	long logged;
+
+	ChangeEvent(CellStore squares, Changes changes)
+	{
+		this.squares = squares;
+		this.changes = changes;
+	}
+
+	/**
+	 * @return sequence number of the operation in the command log of the board, to pass to Board.whenDurable
+	 * 		before telling anyone about the changes, 0 if the board is not journaled
+	 */
+	public long getLogged()
+	{
+		return logged;
+	}
+
+	/**
+	 * @return number of squares changed
+	 */
+	public int size()
+	{
+		return changes.size();
+	}
+
+	/**
+	 * @param k position of a changed square, 0 <= k < size()
+	 * @return row of the square
+	 */
+	public int getRow(int k)
+	{
+		return (int) (changes.get(k) / squares.getColumns());
+	}
+
+	/**
+	 * @param k position of a changed square, 0 <= k < size()
+	 * @return column of the square
+	 */
+	public int getColumn(int k)
+	{
+		return (int) (changes.get(k) % squares.getColumns());
+	}
+
+	/**
+	 * @param k position of a changed square, 0 <= k < size()
+	 * @return character a LOOK message now shows for the square
+	 */
+	public char getValue(int k)
+	{
+		return squares.getCurrentValue(changes.get(k));
+	}
+}
@@ -0,0 +1,65 @@
+package minesweeper.board;
+
+/**
+ * Journal of the squares changed by a single Board operation, as row-major indices, and of how the operation
+ * changed the number of dug squares, flagged squares and bombs.
+ * A journal is reused from one operation to the next and only grows when an operation changes more
+ * squares than any operation before it.
+ *
+ * Rep invariant- 	0 <= count <= indices.length
+ * @author Rishabh
+ *
+ */
+final class Changes
+{
+	private long[] indices = new long[16];
+	private int count;
+
+	//Squares dug, flags placed minus flags removed, and bombs placed minus bombs removed since the last clear()
+	int dug;
+	int flagged;
+	int bombs;
+
+	/**
+	 * Empties the journal
+	 */
+	void clear()
+	{
+		count = 0;
+		dug = 0;
+		flagged = 0;
+		bombs = 0;
+	}
+
+	/**
+	 * Appends a square to the journal, doubling it when full
+	 * @param index row-major index of the changed square
+	 */
+	void add(long index)
+	{
+		if(count == indices.length)
+		{
+			long[] grown = new long[indices.length * 2];
+			System.arraycopy(indices, 0, grown, 0, count);
+			indices = grown;
+		}
+		indices[count++] = index;
+	}
+
+	/**
+	 * @return number of squares changed since the last clear()
+	 */
+	int size()
+	{
+		return count;
+	}
+
+	/**
+	 * @param k position in the journal, 0 <= k < size()
+	 * @return row-major index of the k-th changed square
+	 */
+	long get(int k)
+	{
+		return indices[k];
+	}
+}
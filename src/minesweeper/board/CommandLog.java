@@ -0,0 +1,348 @@
+package minesweeper.board;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the operations applied to a Board, one segment file per snapshot generation (see BoardJournal).
+ *
+ * Every record is 13 bytes: the operation (FLAG, DEFLAG, DIG, CHORD, or REMOVE_BOMB and PLACE_BOMB for the bombs moved
+ * by a safe first dig), the row and the column as big-endian ints, and a CRC32 of those 9 bytes, so a record torn by a
+ * crash is recognised on replay.
+ *
+ * Records are appended to a memory buffer by the threads applying operations and written by a single flusher thread,
+ * which writes everything appended so far and forces it to disk in one go (group commit). A thread waiting for its
+ * record to be durable therefore shares one fsync with every thread that appended while the previous fsync ran.
+ * Threads that must not block, like the selector threads of the server, ask the flusher to call them back once
+ * their record is durable instead (see whenDurable).
+ *
+ * Rep invariant- 	durable <= appended
+ * 					pendingLength == RECORD_LENGTH * (appended - records taken by the flusher)
+ * @author Rishabh
+ *
+ */
+final class CommandLog
+{
+	static final int RECORD_LENGTH = 13;
+
+	//Segment the flusher writes to
+	private FileChannel channel;
+	private RandomAccessFile file;
+
+	//Records appended and not taken by the flusher yet, and the buffer the flusher writes from
+	private byte[] pending = new byte[64 * RECORD_LENGTH];
+	private int pendingLength;
+	private byte[] spare = new byte[64 * RECORD_LENGTH];
+
+	//Sequence numbers of the last record appended and of the last record forced to disk
+	private long appended;
+	private long durable;
+
+	private final CRC32 crc = new CRC32();
+	//Callbacks waiting for records to be durable, in no particular order
+	private final List<Waiter> waiters = new ArrayList<Waiter>();
+
+	private IOException failure;
+	private boolean closed;
+	private final Thread flusher;
+
+	/**
+	 * Opens a segment, appending after the records it already holds, and starts the flusher thread
+	 * @param segment file of the segment, created if it does not exist
+	 */
+	CommandLog(File segment) throws IOException
+	{
+		open(segment);
+		flusher = new Thread(new Runnable()
+		{
+			public void run()
+			{
+				flushLoop();
+			}
+		}, "minesweeper-log-flusher");
+		flusher.setDaemon(true);
+		flusher.start();
+	}
+
+	private void open(File segment) throws IOException
+	{
+		file = new RandomAccessFile(segment, "rw");
+		channel = file.getChannel();
+		channel.position(channel.size());
+	}
+
+	/**
+	 * Appends a record, requires the caller to hold the Board locks the operation ran under, so records of
+	 * operations that do not commute are appended in the order they were applied
+	 * @return sequence number of the record, to pass to awaitDurable
+	 */
+	synchronized long append(int operation, int row, int column)
+	{
+		if(pendingLength + RECORD_LENGTH > pending.length)
+		{
+			byte[] grown = new byte[pending.length * 2];
+			System.arraycopy(pending, 0, grown, 0, pendingLength);
+			pending = grown;
+		}
+		int start = pendingLength;
+		pending[pendingLength++] = (byte) operation;
+		pendingLength = putInt(pending, pendingLength, row);
+		pendingLength = putInt(pending, pendingLength, column);
+		crc.reset();
+		crc.update(pending, start, 9);
+		pendingLength = putInt(pending, pendingLength, (int) crc.getValue());
+		appended++;
+		notifyAll();
+		return appended;
+	}
+
+	/**
+	 * Waits until the record with the given sequence number, and every record before it, is on disk
+	 * @throws IOException if the log could not be written
+	 */
+	synchronized void awaitDurable(long sequence) throws IOException
+	{
+		boolean interrupted = false;
+		while(durable < sequence && failure == null)
+		{
+			try
+			{
+				wait();
+			}
+			catch(InterruptedException e)
+			{
+				interrupted = true;
+			}
+		}
+		if(interrupted)
+			Thread.currentThread().interrupt();
+		if(durable < sequence)
+			throw new IOException("command log failed", failure);
+	}
+
+	/**
+	 * Arranges for callback to run once the record with the given sequence number is on disk, or the log failed
+	 * @return true, without arranging anything, if it is on disk or the log failed already; false if the flusher
+	 * 		thread will run callback
+	 */
+	synchronized boolean whenDurable(long sequence, Runnable callback)
+	{
+		if(durable >= sequence || failure != null)
+			return true;
+		waiters.add(new Waiter(sequence, callback));
+		return false;
+	}
+
+	/**
+	 * Removes the callbacks whose records are durable, every callback if the log failed. Requires the lock.
+	 * @return the callbacks removed, to run without the lock
+	 */
+	private List<Runnable> takeWaiters()
+	{
+		List<Runnable> ready = new ArrayList<Runnable>();
+		for(int k = waiters.size() - 1; k >= 0; k--)
+		{
+			Waiter waiter = waiters.get(k);
+			if(waiter.sequence <= durable || failure != null)
+			{
+				ready.add(waiter.callback);
+				waiters.set(k, waiters.get(waiters.size() - 1));
+				waiters.remove(waiters.size() - 1);
+			}
+		}
+		return ready;
+	}
+
+	private static void run(List<Runnable> callbacks)
+	{
+		for(Runnable callback : callbacks)
+			callback.run();
+	}
+
+	/**
+	 * Makes every record appended so far durable, then appends to a new segment. Requires the caller to hold
+	 * the whole Board, so no record is appended meanwhile.
+	 * @param segment file of the new segment
+	 */
+	synchronized void rotate(File segment) throws IOException
+	{
+		awaitDurable(appended);
+		file.close();
+		open(segment);
+	}
+
+	/**
+	 * Makes every record appended so far durable and stops the flusher
+	 */
+	void close() throws IOException
+	{
+		synchronized(this)
+		{
+			awaitDurable(appended);
+			closed = true;
+			notifyAll();
+		}
+		try
+		{
+			flusher.join();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		file.close();
+	}
+
+	/**
+	 * Body of the flusher thread: takes every pending record, writes and forces them, and wakes up their waiters
+	 */
+	private void flushLoop()
+	{
+		while(true)
+		{
+			byte[] batch;
+			int length;
+			long upTo;
+			FileChannel target;
+			synchronized(this)
+			{
+				while(pendingLength == 0 && !closed)
+				{
+					try
+					{
+						wait();
+					}
+					catch(InterruptedException e)
+					{
+						//Only close() stops the flusher
+					}
+				}
+				if(pendingLength == 0)
+					return;
+				batch = pending;
+				length = pendingLength;
+				upTo = appended;
+				target = channel;
+				pending = spare;
+				pendingLength = 0;
+			}
+			try
+			{
+				ByteBuffer buffer = ByteBuffer.wrap(batch, 0, length);
+				while(buffer.hasRemaining())
+					target.write(buffer);
+				target.force(false);
+			}
+			catch(IOException e)
+			{
+				List<Runnable> failed;
+				synchronized(this)
+				{
+					failure = e;
+					notifyAll();
+					failed = takeWaiters();
+				}
+				run(failed);
+				return;
+			}
+			List<Runnable> ready;
+			synchronized(this)
+			{
+				spare = batch;
+				durable = upTo;
+				notifyAll();
+				ready = waiters.isEmpty() ? null : takeWaiters();
+			}
+			if(ready != null)
+				run(ready);
+		}
+	}
+
+	/**
+	 * Applies the records of a segment to a board, stopping at the first torn or corrupted record
+	 * @param segment file written by a CommandLog
+	 * @param board to apply the records to, without a log attached
+	 * @param last true if no segment was written after this one, so a crash may have torn its end
+	 * @return number of records applied
+	 * @throws IOException if the segment cannot be read, or is damaged although it is not the last one
+	 */
+	static long replay(File segment, Board board, boolean last) throws IOException
+	{
+		RandomAccessFile input = new RandomAccessFile(segment, "r");
+		try
+		{
+			FileChannel channel = input.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocate(1024 * RECORD_LENGTH);
+			CRC32 check = new CRC32();
+			long records = 0;
+			while(true)
+			{
+				//Fill the buffer, it is only left partly empty at the end of the segment
+				buffer.clear();
+				int read = 0;
+				while(buffer.hasRemaining() && read >= 0)
+					read = channel.read(buffer);
+				buffer.flip();
+				while(buffer.remaining() >= RECORD_LENGTH)
+				{
+					byte[] record = buffer.array();
+					int start = buffer.position();
+					check.reset();
+					check.update(record, start, 9);
+					int operation = buffer.get();
+					int row = buffer.getInt();
+					int column = buffer.getInt();
+					if(buffer.getInt() != (int) check.getValue() || operation < Board.FLAG || operation > Board.CHORD)
+						return damaged(segment, records, last, "corrupted record");
+					board.replay(operation, row, column);
+					records++;
+				}
+				if(buffer.hasRemaining())
+					return damaged(segment, records, last, "truncated record");
+				if(read < 0)
+					return records;
+			}
+		}
+		finally
+		{
+			input.close();
+		}
+	}
+
+	private static long damaged(File segment, long records, boolean last, String problem) throws IOException
+	{
+		if(!last)
+			throw new IOException(segment + ": " + problem + " after " + records + " records");
+		return records;
+	}
+
+	/**
+	 * A callback waiting for a record to be durable
+	 */
+	private static final class Waiter
+	{
+		final long sequence;
+		final Runnable callback;
+
+		Waiter(long sequence, Runnable callback)
+		{
+			this.sequence = sequence;
+			this.callback = callback;
+		}
+	}
+
+	private static int putInt(byte[] bytes, int offset, int value)
+	{
+		bytes[offset] = (byte) (value >>> 24);
+		bytes[offset + 1] = (byte) (value >>> 16);
+		bytes[offset + 2] = (byte) (value >>> 8);
+		bytes[offset + 3] = (byte) value;
+		return offset + 4;
+	}
+}
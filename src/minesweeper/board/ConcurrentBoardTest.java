@@ -0,0 +1,245 @@
+package minesweeper.board;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class ConcurrentBoardTest
+{
+	/**
+	 * Stress tests for boards created with concurrent = true.
+	 *
+	 * The boards are split into horizontal regions by full rows of bombs that are never dug. A flood fill cannot
+	 * cross such a wall, so operations on different regions never affect each other and replaying every thread's
+	 * operations one thread after the other on a serial board must give the same final board.
+	 * Regions are several stripes high, so flood fills cross stripe boundaries.
+	 */
+	private static final int SIZE = 128;
+	private static final int THREADS = 4;
+	private static final int REGION = SIZE / THREADS;
+	private static final int OPERATIONS = 3000;
+	private static final int RACE_SIZE = 512;
+
+	//Operations on separate regions run in parallel and must end in the same board as a serial replay
+	@Test
+	public void parallelRegionsMatchSerialReplay()throws Exception
+	{
+		for(int seed = 0; seed < 5; seed++)
+		{
+			File file = writeBoard(seed, SIZE, true, 0.1);
+			final Board concurrent = new Board(file, true);
+			Board serial = new Board(file, false);
+			file.delete();
+
+			final int[][][] operations = new int[THREADS][][];
+			for(int t = 0; t < THREADS; t++)
+				operations[t] = randomOperations(new Random(seed * 31 + t), t * REGION, REGION - 1);
+
+			final CountDownLatch start = new CountDownLatch(1);
+			final Throwable[] failure = new Throwable[1];
+			Thread[] threads = new Thread[THREADS];
+			for(int t = 0; t < THREADS; t++)
+			{
+				final int[][] mine = operations[t];
+				threads[t] = new Thread(new Runnable()
+				{
+					public void run()
+					{
+						try
+						{
+							start.await();
+							for(int k = 0; k < mine.length; k++)
+							{
+								apply(concurrent, mine[k]);
+								if(k % 100 == 0)
+									concurrent.look();
+							}
+						}
+						catch(Throwable e)
+						{
+							failure[0] = e;
+						}
+					}
+				});
+				threads[t].start();
+			}
+			start.countDown();
+			for(Thread thread : threads)
+				thread.join();
+			assertEquals(null, failure[0]);
+
+			for(int t = 0; t < THREADS; t++)
+			{
+				for(int[] operation : operations[t])
+					apply(serial, operation);
+			}
+			assertEquals(serial.look(), concurrent.look());
+		}
+	}
+
+	//Threads fighting over the same squares leave a board whose dug squares all show their number of surrounding bombs,
+	//and whose rendered LOOK message agrees with its squares
+	@Test
+	public void contendedSquaresStayConsistent()throws Exception
+	{
+		for(int seed = 0; seed < 5; seed++)
+		{
+			File file = writeBoard(99 + seed, SIZE, false, 0.05);
+			final Board board = new Board(file, true);
+			file.delete();
+			board.look();
+			
+			final CountDownLatch start = new CountDownLatch(1);
+			Thread[] threads = new Thread[THREADS];
+			for(int t = 0; t < THREADS; t++)
+			{
+				final int[][] mine = randomOperations(new Random(1000 * seed + t), 0, SIZE);
+				threads[t] = new Thread(new Runnable()
+				{
+					public void run()
+					{
+						try
+						{
+							start.await();
+						}
+						catch(InterruptedException e)
+						{
+							return;
+						}
+						for(int[] operation : mine)
+							apply(board, operation);
+					}
+				});
+				threads[t].start();
+			}
+			start.countDown();
+			for(Thread thread : threads)
+				thread.join();
+			assertConsistent(board);
+		}
+	}
+	
+	//Flood fills racing with flags on the squares they dig
+	@Test
+	public void floodFillsRacingFlagsStayConsistent()throws Exception
+	{
+		for(int seed = 0; seed < 5; seed++)
+		{
+			File file = writeBoard(seed, RACE_SIZE, false, 0.001);
+			final Board board = new Board(file, true);
+			file.delete();
+			board.look();
+			
+			final AtomicBoolean flooding = new AtomicBoolean(true);
+			Thread[] flaggers = new Thread[THREADS - 1];
+			for(int t = 0; t < flaggers.length; t++)
+			{
+				final Random rand = new Random(seed * 7 + t);
+				flaggers[t] = new Thread(new Runnable()
+				{
+					public void run()
+					{
+						while(flooding.get())
+						{
+							int row = rand.nextInt(RACE_SIZE), column = rand.nextInt(RACE_SIZE);
+							board.flagDelta(row, column);
+							board.deflagDelta(row, column);
+							board.flagDelta(row, column);
+						}
+					}
+				});
+				flaggers[t].start();
+			}
+			Random rand = new Random(seed);
+			for(int k = 0; k < 20; k++)
+				board.digDelta(rand.nextInt(RACE_SIZE), rand.nextInt(RACE_SIZE));
+			flooding.set(false);
+			for(Thread thread : flaggers)
+				thread.join();
+			assertConsistent(board);
+		}
+	}
+	
+	/**
+	 * Checks that the LOOK message of a board matches its squares, and every dug square shows its number of surrounding bombs
+	 */
+	private static void assertConsistent(Board board)
+	{
+		String look = board.look();
+		assertEquals(new LookBuffer(board.squares).look(0), look);
+		String[] rows = look.split("\n");
+		for(int i = 0; i < board.rows; i++)
+		{
+			for(int j = 0; j < board.columns; j++)
+			{
+				char value = rows[i].charAt(2 * j);
+				if(value == '-' || value == 'F')
+					continue;
+				int bombs = 0;
+				for(int r = Math.max(i - 1, 0); r <= Math.min(i + 1, board.rows - 1); r++)
+				{
+					for(int c = Math.max(j - 1, 0); c <= Math.min(j + 1, board.columns - 1); c++)
+					{
+						if((r != i || c != j) && board.isBomb(r, c))
+							bombs++;
+					}
+				}
+				assertEquals(value == ' ' ? 0 : value - '0', bombs);
+			}
+		}
+	}
+	
+	/**
+	 * Writes a random board, whose last row in every region is a wall of bombs if walled
+	 * @param density chance of a square holding a bomb
+	 */
+	private static File writeBoard(long seed, int size, boolean walled, double density)throws IOException
+	{
+		Random rand = new Random(seed);
+		File file = File.createTempFile("walled", ".txt");
+		PrintWriter writer = new PrintWriter(file);
+		for(int i = 0; i < size; i++)
+		{
+			StringBuilder line = new StringBuilder();
+			for(int j = 0; j < size; j++)
+			{
+				boolean bomb = (walled && i % REGION == REGION - 1) || rand.nextDouble() < density;
+				line.append(bomb ? "1" : "0").append(j == size - 1 ? "\n" : " ");
+			}
+			writer.print(line);
+		}
+		writer.close();
+		return file;
+	}
+
+	/**
+	 * @return random {operation, row, column} triples on rows firstRow to firstRow + rows - 1
+	 */
+	private static int[][] randomOperations(Random rand, int firstRow, int rows)
+	{
+		int[][] operations = new int[OPERATIONS][];
+		for(int k = 0; k < OPERATIONS; k++)
+		{
+			int operation = rand.nextInt(10);
+			operations[k] = new int[] {operation < 6 ? 0 : operation < 8 ? 1 : 2, firstRow + rand.nextInt(rows), rand.nextInt(SIZE)};
+		}
+		return operations;
+	}
+
+	private static void apply(Board board, int[] operation)
+	{
+		if(operation[0] == 0)
+			board.digDelta(operation[1], operation[2]);
+		else if(operation[0] == 1)
+			board.flagDelta(operation[1], operation[2]);
+		else
+			board.deflagDelta(operation[1], operation[2]);
+	}
+}
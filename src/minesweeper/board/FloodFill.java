@@ -0,0 +1,91 @@
+package minesweeper.board;
+
+/**
+ * Iterative flood fill used by Board to dig outwards from a square with no surrounding bombs.
+ * Squares waiting to be expanded are kept as row-major indices in a ring buffer that is reused
+ * across fills, so a fill never recurses and allocates only when the buffer has to grow.
+ * The buffer only has to hold the current frontier of the fill, not the whole region.
+ *
+ * Rep invariant- 	queue.length is a power of two
+ * 					0 <= pending <= queue.length
+ * @author Rishabh
+ *
+ */
+final class FloodFill
+{
+	private static final int INITIAL_CAPACITY = 64;
+
+	private final CellStore squares;
+
+	//Ring buffer of row-major indices still to be expanded
+	private long[] queue = new long[INITIAL_CAPACITY];
+	private int head;
+	private int pending;
+
+	/**
+	 * @param squares storage the fills dig into
+	 */
+	FloodFill(CellStore squares)
+	{
+		this.squares = squares;
+	}
+
+	/**
+	 * Digs every untouched square reachable from (row, column) through squares with no surrounding bombs.
+	 * Squares with surrounding bombs are dug but not expanded further. Same squares as the old recursive
+	 * expandOutwards, without the stack depth.
+	 * @param row of a dug square with no surrounding bombs
+	 * @param column of a dug square with no surrounding bombs
+	 * @param changes journal receiving every square dug by the fill
+	 * @return number of squares dug by the fill
+	 */
+	int expandFrom(int row, int column, Changes changes)
+	{
+		int rows = squares.getRows(), columns = squares.getColumns();
+		int dug = 0;
+		head = 0;
+		pending = 0;
+		push((long) row * columns + column);
+		while(pending > 0)
+		{
+			long index = queue[head];
+			head = (head + 1) & (queue.length - 1);
+			pending--;
+			int r = (int) (index / columns);
+			int c = (int) (index - (long) r * columns);
+			int rowEnd = Math.min(r + 1, rows - 1), columnEnd = Math.min(c + 1, columns - 1);
+			for(int i = Math.max(r - 1, 0); i <= rowEnd; i++)
+			{
+				long rowBase = (long) i * columns;
+				for(int j = Math.max(c - 1, 0); j <= columnEnd; j++)
+				{
+					long neighbour = rowBase + j;
+					if(!squares.isUntouched(neighbour))
+						continue;
+					squares.setDug(neighbour, changes);
+					dug++;
+					if(squares.getCount(neighbour) == 0)
+						push(neighbour);
+				}
+			}
+		}
+		return dug;
+	}
+
+	/**
+	 * Appends an index to the ring buffer, doubling it when full
+	 */
+	private void push(long index)
+	{
+		if(pending == queue.length)
+		{
+			long[] grown = new long[queue.length * 2];
+			for(int k = 0; k < pending; k++)
+				grown[k] = queue[(head + k) & (queue.length - 1)];
+			queue = grown;
+			head = 0;
+		}
+		queue[(head + pending) & (queue.length - 1)] = index;
+		pending++;
+	}
+}
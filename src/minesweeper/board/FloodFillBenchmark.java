@@ -0,0 +1,141 @@
+package minesweeper.board;
+
+import java.util.Random;
+
+/**
+ * Compares the iterative FloodFill against the recursive expansion Board used to do, on large sparse boards.
+ * Every run digs the top left square of a freshly built board and expands the empty region around it.
+ * The recursive version is run on a thread with the default stack size, like a client thread of the server,
+ * and reports an overflow instead of a time when the region is too large for it.
+ *
+ * Usage: FloodFillBenchmark [SIZE...]
+ * @author Rishabh
+ *
+ */
+public class FloodFillBenchmark
+{
+	private static final double DENSITY = 0.01;
+	private static final int WARMUP_RUNS = 10;
+	private static final int MEASURED_RUNS = 5;
+
+	public static void main(String[] args) throws InterruptedException
+	{
+		int[] sizes = {50, 100, 250, 500, 1000, 2000};
+		if(args.length > 0)
+		{
+			sizes = new int[args.length];
+			for(int i = 0; i < args.length; i++)
+				sizes[i] = Integer.parseInt(args[i]);
+		}
+		System.out.println("size\tdensity\tdug\titerative_ms\trecursive_ms");
+		for(int size : sizes)
+		{
+			final CellStore template = sparseBoard(size, DENSITY, 42);
+			long[] iterative = measure(template, false);
+			long[] recursive = measure(template, true);
+			System.out.println(size + "\t" + DENSITY + "\t" + iterative[1] + "\t" + format(iterative[0]) + "\t"
+					+ (recursive == null ? "StackOverflowError" : format(recursive[0])));
+		}
+	}
+
+	/**
+	 * Runs a fill repeatedly on copies of template
+	 * @return {best time in nanoseconds, squares dug}, or null if the recursive fill overflowed the stack
+	 */
+	private static long[] measure(final CellStore template, final boolean recursive) throws InterruptedException
+	{
+		final long[] result = {Long.MAX_VALUE, 0};
+		final boolean[] overflowed = {false};
+		Thread thread = new Thread(new Runnable()
+		{
+			public void run()
+			{
+				try
+				{
+					for(int run = 0; run < WARMUP_RUNS + MEASURED_RUNS; run++)
+					{
+						CellStore squares = copy(template);
+						FloodFill fill = new FloodFill(squares);
+						Changes changes = new Changes();
+						long start = System.nanoTime();
+						squares.setDug(0, 0, changes);
+						long dug = recursive ? 1 + expandRecursively(squares, 0, 0, changes) : 1 + fill.expandFrom(0, 0, changes);
+						long elapsed = System.nanoTime() - start;
+						if(run >= WARMUP_RUNS)
+							result[0] = Math.min(result[0], elapsed);
+						result[1] = dug;
+					}
+				}
+				catch(StackOverflowError e)
+				{
+					overflowed[0] = true;
+				}
+			}
+		});
+		thread.start();
+		thread.join();
+		return overflowed[0] ? null : result;
+	}
+
+	/**
+	 * The recursive expansion Board used before FloodFill, kept here as the baseline
+	 * @return number of squares dug
+	 */
+	private static int expandRecursively(CellStore squares, int row, int column, Changes changes)
+	{
+		int rows = squares.getRows(), columns = squares.getColumns();
+		int dug = 0;
+		for(int i = -1; i < 2; i++)
+		{
+			for(int j = -1; j < 2; j++)
+			{
+				int r = row + i, c = column + j;
+				if(r >= 0 && c >= 0 && r < rows && c < columns && squares.isUntouched(r, c))
+				{
+					squares.setDug(r, c, changes);
+					dug++;
+					if(squares.getCount(r, c) == 0)
+						dug += expandRecursively(squares, r, c, changes);
+				}
+			}
+		}
+		return dug;
+	}
+
+	/**
+	 * Builds a board with bombs placed independently with the given density, keeping the top left corner clear
+	 */
+	private static CellStore sparseBoard(int size, double density, long seed)
+	{
+		Random rand = new Random(seed);
+		CellStore squares = new CellStore(size);
+		for(int i = 0; i < size; i++)
+		{
+			for(int j = 0; j < size; j++)
+			{
+				squares.setBomb(i, j, (i > 1 || j > 1) && rand.nextDouble() < density);
+			}
+		}
+		squares.computeCounts();
+		return squares;
+	}
+
+	private static CellStore copy(CellStore template)
+	{
+		CellStore squares = new CellStore(template.getRows(), template.getColumns());
+		for(int i = 0; i < template.getRows(); i++)
+		{
+			for(int j = 0; j < template.getColumns(); j++)
+			{
+				squares.setBomb(i, j, template.isBomb(i, j));
+			}
+		}
+		squares.computeCounts();
+		return squares;
+	}
+
+	private static String format(long nanos)
+	{
+		return String.format("%.3f", nanos / 1e6);
+	}
+}
@@ -0,0 +1,216 @@
+package minesweeper.board;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts of non-negative values, like durations in nanoseconds, in log-linear buckets: every power of two is split
+ * into SUB_BUCKETS buckets of equal width, so a value is known to within 1/SUB_BUCKETS of itself (12.5%) whatever its
+ * magnitude, with a fixed number of buckets (the layout of HdrHistogram with one significant binary digit less).
+ *
+ * Recording is one atomic add to a bucket plus one to a sum, both on counters striped by thread so
+ * threads recording together rarely touch the same cache line; it allocates nothing and never blocks. Reading
+ * merges the stripes into a Snapshot, which may miss values recorded meanwhile.
+ *
+ * Rep invariant- 	counts.length == stripes * BUCKETS, sums.length == stripes * PADDING
+ * 					stripes is a power of two
+ * @author Rishabh
+ *
+ */
+public final class Histogram
+{
+	private static final int SUB_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	//Values below SUB_BUCKETS have a bucket each, then every power of two up to 2^62 has SUB_BUCKETS
+	static final int BUCKETS = (62 - SUB_BITS + 2) * SUB_BUCKETS;
+	//Longs between the sums of two stripes, so they lie on different cache lines
+	private static final int PADDING = 8;
+	private static final int STRIPES = stripeCount(Runtime.getRuntime().availableProcessors());
+
+	private final int stripes = STRIPES;
+	private final AtomicLongArray counts = new AtomicLongArray(STRIPES * BUCKETS);
+	private final AtomicLongArray sums = new AtomicLongArray(STRIPES * PADDING);
+
+	/**
+	 * Counts a value
+	 * @param value to count, negative values are counted as 0
+	 */
+	public void record(long value)
+	{
+		this.record(value, 1);
+	}
+
+	/**
+	 * Counts a value several times
+	 * @param value to count, negative values are counted as 0
+	 * @param times number of times to count it, >= 0
+	 */
+	public void record(long value, long times)
+	{
+		if(value < 0)
+			value = 0;
+		int stripe = (int) Thread.currentThread().getId() & (stripes - 1);
+		counts.addAndGet(stripe * BUCKETS + bucketOf(value), times);
+		sums.addAndGet(stripe * PADDING, value * times);
+	}
+
+	/**
+	 * @return counts of the values recorded so far
+	 */
+	public Snapshot snapshot()
+	{
+		long[] merged = new long[BUCKETS];
+		for(int stripe = 0; stripe < stripes; stripe++)
+		{
+			for(int bucket = 0; bucket < BUCKETS; bucket++)
+				merged[bucket] += counts.get(stripe * BUCKETS + bucket);
+		}
+		long sum = 0;
+		for(int stripe = 0; stripe < stripes; stripe++)
+			sum += sums.get(stripe * PADDING);
+		return new Snapshot(merged, sum);
+	}
+
+	/**
+	 * @return bucket counting value, value >= 0
+	 */
+	static int bucketOf(long value)
+	{
+		if(value < SUB_BUCKETS)
+			return (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + (int) ((value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1));
+	}
+
+	/**
+	 * @return smallest value counted by a bucket
+	 */
+	static long lowestValueOf(int bucket)
+	{
+		if(bucket < SUB_BUCKETS)
+			return bucket;
+		int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+		return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BITS);
+	}
+
+	/**
+	 * @return largest value counted by a bucket
+	 */
+	static long highestValueOf(int bucket)
+	{
+		return bucket == BUCKETS - 1 ? Long.MAX_VALUE : lowestValueOf(bucket + 1) - 1;
+	}
+
+	/**
+	 * @return smallest power of two no smaller than the number of processors, at most 64
+	 */
+	private static int stripeCount(int processors)
+	{
+		int stripes = 1;
+		while(stripes < processors && stripes < 64)
+			stripes <<= 1;
+		return stripes;
+	}
+
+	/**
+	 * Counts of a Histogram at some point. Values are reported as the largest value of their bucket, so they are
+	 * never below the values recorded.
+	 */
+	public static final class Snapshot
+	{
+		private final long[] counts;
+		private final long count;
+		private final long sum;
+
+		Snapshot(long[] counts, long sum)
+		{
+			this.counts = counts;
+			long total = 0;
+			for(long bucket : counts)
+				total += bucket;
+			this.count = total;
+			this.sum = sum;
+		}
+
+		/**
+		 * @return number of values recorded
+		 */
+		public long getCount()
+		{
+			return count;
+		}
+
+		/**
+		 * @return exact mean of the values recorded, 0 if there are none
+		 */
+		public double getMean()
+		{
+			return count == 0 ? 0 : (double) sum / count;
+		}
+
+		/**
+		 * @param percentile between 0 and 100
+		 * @return value at least percentile percent of the values recorded are no larger than, 0 if there are none
+		 */
+		public long getValueAtPercentile(double percentile)
+		{
+			if(count == 0)
+				return 0;
+			long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * count));
+			long seen = 0;
+			for(int bucket = 0; bucket < BUCKETS; bucket++)
+			{
+				seen += counts[bucket];
+				if(seen >= rank)
+					return highestValueOf(bucket);
+			}
+			return highestValueOf(BUCKETS - 1);
+		}
+
+		/**
+		 * @return value at the 50th percentile, see getValueAtPercentile
+		 */
+		public long getP50()
+		{
+			return getValueAtPercentile(50);
+		}
+
+		/**
+		 * @return value at the 90th percentile, see getValueAtPercentile
+		 */
+		public long getP90()
+		{
+			return getValueAtPercentile(90);
+		}
+
+		/**
+		 * @return value at the 99th percentile, see getValueAtPercentile
+		 */
+		public long getP99()
+		{
+			return getValueAtPercentile(99);
+		}
+
+		/**
+		 * @return value at the 99.9th percentile, see getValueAtPercentile
+		 */
+		public long getP999()
+		{
+			return getValueAtPercentile(99.9);
+		}
+
+		/**
+		 * @return bound no more than 12.5% above the largest value recorded, 0 if there are none
+		 */
+		public long getMax()
+		{
+			return getValueAtPercentile(100);
+		}
+
+		@Override
+		public String toString()
+		{
+			return "count=" + count + " mean=" + String.format("%.1f", getMean()) + " p50=" + getP50() + " p90=" + getP90()
+					+ " p99=" + getP99() + " p999=" + getP999() + " max=" + getMax();
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package minesweeper.board;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class HistogramTest
+{
+	//Every value falls in a bucket whose bounds are within 12.5% of it
+	@Test
+	public void bucketsTest()
+	{
+		Random rand = new Random(3);
+		for(int k = 0; k < 100000; k++)
+		{
+			long value = k < 1000 ? k : rand.nextLong() >>> (1 + rand.nextInt(63));
+			int bucket = Histogram.bucketOf(value);
+			assertTrue(bucket >= 0 && bucket < Histogram.BUCKETS);
+			assertTrue(value + " in " + bucket, Histogram.lowestValueOf(bucket) <= value && value <= Histogram.highestValueOf(bucket));
+			assertTrue(Histogram.highestValueOf(bucket) - Histogram.lowestValueOf(bucket) <= value / 8);
+		}
+		assertEquals(Histogram.BUCKETS - 1, Histogram.bucketOf(Long.MAX_VALUE));
+		for(int bucket = 1; bucket < Histogram.BUCKETS; bucket++)
+			assertEquals(Histogram.highestValueOf(bucket - 1) + 1, Histogram.lowestValueOf(bucket));
+	}
+
+	//Percentiles are the upper bounds of the buckets of the values at those ranks, the mean is exact
+	@Test
+	public void percentilesTest()
+	{
+		Histogram histogram = new Histogram();
+		assertEquals(0, histogram.snapshot().getP99());
+		for(int value = 1; value <= 100; value++)
+			histogram.record(value);
+		histogram.record(1000000, 0);
+		histogram.record(-5);
+		Histogram.Snapshot snapshot = histogram.snapshot();
+		assertEquals(101, snapshot.getCount());
+		assertEquals(5050 / 101.0, snapshot.getMean(), 1e-9);
+		assertEquals(51, snapshot.getP50());
+		assertEquals(95, snapshot.getP90());
+		assertEquals(103, snapshot.getMax());
+		assertEquals(0, snapshot.getValueAtPercentile(0));
+	}
+
+	//Threads recording together lose no value
+	@Test
+	public void concurrentTest() throws InterruptedException
+	{
+		final Histogram histogram = new Histogram();
+		Thread[] threads = new Thread[4];
+		for(int t = 0; t < threads.length; t++)
+		{
+			threads[t] = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					for(int i = 0; i < 102400; i++)
+						histogram.record(i & 1023);
+				}
+			});
+			threads[t].start();
+		}
+		for(Thread thread : threads)
+			thread.join();
+		Histogram.Snapshot snapshot = histogram.snapshot();
+		assertEquals(409600, snapshot.getCount());
+		assertEquals(511.5, snapshot.getMean(), 1e-9);
+	}
+}
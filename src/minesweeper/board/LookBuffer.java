@@ -0,0 +1,78 @@
+package minesweeper.board;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Holds the LOOK message of a Board as bytes. The buffer is rendered once and then kept current square by square
+ * from the change journal of each operation, so an operation costs only as much as the squares it changed.
+ * The String handed out by look() is cached per board version, so repeated looks between two operations
+ * return the same String without rendering or copying anything.
+ *
+ * Layout- square (row, column) is shown at byte 2 * (row * columns + column), followed by ' ' or, for the last
+ * column, '\n'. This is exactly the LOOK message.
+ *
+ * Only boards of at most Board.MAX_LOOK_SQUARES squares have a buffer, larger ones cannot be looked at whole.
+ *
+ * Rep invariant- 	bytes.length == 2 * rows * columns
+ * 					snapshot == null or snapshot is the US-ASCII decoding of bytes
+ * @author Rishabh
+ *
+ */
+final class LookBuffer
+{
+	private final CellStore squares;
+	private final byte[] bytes;
+
+	//Board version the snapshot was taken at, or -1 if there is none
+	private long snapshotVersion = -1;
+	private String snapshot;
+
+	/**
+	 * Renders the whole board once
+	 * @param squares storage to render
+	 */
+	LookBuffer(CellStore squares)
+	{
+		this.squares = squares;
+		int rows = squares.getRows(), columns = squares.getColumns();
+		this.bytes = new byte[2 * rows * columns];
+		int index = 0;
+		for(int row = 0; row < rows; row++)
+		{
+			for(int column = 0; column < columns; column++, index++)
+			{
+				bytes[2 * index] = (byte) squares.getCurrentValue(index);
+				bytes[2 * index + 1] = (byte) (column == columns - 1 ? '\n' : ' ');
+			}
+		}
+	}
+
+	/**
+	 * Re-renders the squares in a change journal. Operations on different rows of a concurrent Board
+	 * may call this at the same time, as they write disjoint bytes.
+	 * @param changes squares changed by an operation
+	 */
+	void applyChanges(Changes changes)
+	{
+		int count = changes.size();
+		for(int k = 0; k < count; k++)
+		{
+			int index = (int) changes.get(k);
+			bytes[2 * index] = (byte) squares.getCurrentValue(index);
+		}
+	}
+
+	/**
+	 * @param version current version of the board
+	 * @return the LOOK message, shared with every other caller at the same version
+	 */
+	String look(long version)
+	{
+		if(snapshotVersion != version)
+		{
+			snapshot = new String(bytes, StandardCharsets.US_ASCII);
+			snapshotVersion = version;
+		}
+		return snapshot;
+	}
+}
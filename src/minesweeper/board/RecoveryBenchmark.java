@@ -0,0 +1,146 @@
+package minesweeper.board;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Measures how long BoardJournal.recover takes for large boards and long log tails, and how many durable operations
+ * per second group commit sustains.
+ *
+ * For every board size and log length, a journal directory is built with a snapshot of a random board and a log
+ * segment of random operations (mostly flags and deflags, a tenth digs), then recovered. The reported time includes
+ * loading the snapshot, replaying the log and writing the snapshot that ends recovery.
+ *
+ * Usage: RecoveryBenchmark [SIZE...]
+ * @author Rishabh
+ *
+ */
+public class RecoveryBenchmark
+{
+	private static final long[] OPERATIONS = {0, 100000, 1000000};
+	private static final int[] THREADS = {1, 4, 16};
+	private static final int DURABLE_SECONDS = 3;
+
+	public static void main(String[] args) throws Exception
+	{
+		int[] sizes = {1000, 4000, 10000};
+		if(args.length > 0)
+		{
+			sizes = new int[args.length];
+			for(int i = 0; i < args.length; i++)
+				sizes[i] = Integer.parseInt(args[i]);
+		}
+
+		System.out.println("size\tlogged_operations\tsnapshot_bytes\tlog_bytes\trecover_ms");
+		for(int size : sizes)
+		{
+			for(long operations : OPERATIONS)
+			{
+				File directory = createDirectory();
+				try
+				{
+					Board board = new Board(size);
+					BoardJournal.create(directory, board).close();
+					writeLog(new File(directory, "log-0.log"), size, operations);
+					long snapshotBytes = new File(directory, "snapshot-0.bin").length();
+					long logBytes = new File(directory, "log-0.log").length();
+
+					long start = System.nanoTime();
+					BoardJournal journal = BoardJournal.recover(directory, false);
+					long elapsed = System.nanoTime() - start;
+					journal.close();
+					System.out.println(size + "\t" + operations + "\t" + snapshotBytes + "\t" + logBytes + "\t" + elapsed / 1000000);
+				}
+				finally
+				{
+					delete(directory);
+				}
+			}
+		}
+
+		System.out.println();
+		System.out.println("threads\tdurable_operations_per_sec");
+		for(int threads : THREADS)
+			System.out.println(threads + "\t" + durableThroughput(threads));
+	}
+
+	/**
+	 * Appends random operations to a log segment without waiting for each to be durable
+	 */
+	private static void writeLog(File segment, int size, long operations) throws IOException
+	{
+		CommandLog log = new CommandLog(segment);
+		Random rand = new Random(7);
+		for(long k = 0; k < operations; k++)
+		{
+			int operation = rand.nextInt(10);
+			log.append(operation == 0 ? Board.DIG : operation < 6 ? Board.FLAG : Board.DEFLAG, rand.nextInt(size), rand.nextInt(size));
+		}
+		log.close();
+	}
+
+	/**
+	 * Runs threads each flagging and deflagging its own squares of a journaled concurrent board
+	 * @return operations answered per second, each one durable before it was answered
+	 */
+	private static long durableThroughput(int threads) throws Exception
+	{
+		File directory = createDirectory();
+		try
+		{
+			final Board board = new Board(1000, true);
+			BoardJournal journal = BoardJournal.create(directory, board);
+			final long deadline = System.nanoTime() + DURABLE_SECONDS * 1000000000L;
+			final long[] counts = new long[threads];
+			Thread[] workers = new Thread[threads];
+			for(int t = 0; t < threads; t++)
+			{
+				final int id = t;
+				workers[t] = new Thread(new Runnable()
+				{
+					public void run()
+					{
+						int row = id * 1000 / counts.length;
+						for(long k = 0; System.nanoTime() < deadline; k++)
+						{
+							if(k % 2 == 0)
+								board.flagDelta(row, (int) (k / 2 % 1000));
+							else
+								board.deflagDelta(row, (int) (k / 2 % 1000));
+							counts[id]++;
+						}
+					}
+				});
+				workers[t].start();
+			}
+			long total = 0;
+			for(int t = 0; t < threads; t++)
+			{
+				workers[t].join();
+				total += counts[t];
+			}
+			journal.close();
+			return total / DURABLE_SECONDS;
+		}
+		finally
+		{
+			delete(directory);
+		}
+	}
+
+	private static File createDirectory() throws IOException
+	{
+		File directory = File.createTempFile("journal", "");
+		directory.delete();
+		directory.mkdir();
+		return directory;
+	}
+
+	private static void delete(File directory)
+	{
+		for(File file : directory.listFiles())
+			file.delete();
+		directory.delete();
+	}
+}
@@ -0,0 +1,143 @@
+package minesweeper.board;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Locks guarding the squares of a Board.
+ *
+ * An operation that needs the whole board (a look, or a dig that may flood fill) takes the write side of
+ * a board-wide read/write lock. In striped mode, an operation that only touches the squares of one row
+ * takes the read side of that lock plus the stripe lock of the band of rows containing that row, so
+ * operations on rows of different bands run in parallel. Every operation holds at most one stripe,
+ * which keeps the locking deadlock free.
+ *
+ * In serial mode there are no stripes and every operation takes the whole board, like the synchronized
+ * methods Board used to have.
+ *
+ * How long every lock is waited for and held is recorded in the BoardMetrics of the board. Only the outermost acquisition of
+ * the whole board by a thread is measured.
+ *
+ * Rep invariant- 	stripes.length == 0 in serial mode, else stripes.length == ceil(rows / stripeHeight)
+ * 					stripeAcquired.length == stripes.length
+ * 					stripeHeight > 0
+ * @author Rishabh
+ *
+ */
+final class RegionLocks
+{
+	//Upper bound on the number of stripes, enough to keep every core of a server busy
+	static final int MAX_STRIPES = 64;
+
+	private final ReentrantReadWriteLock board = new ReentrantReadWriteLock();
+	private final ReentrantLock[] stripes;
+	private final int stripeHeight;
+
+	//When the holder of the whole board, and of each stripe, took it, in System.nanoTime
+	private long boardAcquired;
+	private final long[] stripeAcquired;
+	private final BoardMetrics metrics;
+
+	/**
+	 * @param rows number of rows of the board
+	 * @param striped true for striped mode, false for serial mode
+	 * @param metrics recording how long the locks are waited for and held
+	 */
+	RegionLocks(int rows, boolean striped, BoardMetrics metrics)
+	{
+		this.metrics = metrics;
+		if(striped)
+		{
+			this.stripeHeight = (rows + MAX_STRIPES - 1) / MAX_STRIPES;
+			this.stripes = new ReentrantLock[(rows + stripeHeight - 1) / stripeHeight];
+			for(int i = 0; i < stripes.length; i++)
+				stripes[i] = new ReentrantLock();
+		}
+		else
+		{
+			this.stripeHeight = Math.max(rows, 1);
+			this.stripes = new ReentrantLock[0];
+		}
+		this.stripeAcquired = new long[stripes.length];
+	}
+
+	/**
+	 * @return true if operations on single rows can run in parallel
+	 */
+	boolean isStriped()
+	{
+		return stripes.length > 0;
+	}
+
+	/**
+	 * @return number of workspaces operations need, one per stripe (one in serial mode)
+	 */
+	int getStripeCount()
+	{
+		return Math.max(stripes.length, 1);
+	}
+
+	/**
+	 * Locks the whole board, waiting for every operation in progress to finish
+	 */
+	void lockAll()
+	{
+		long start = System.nanoTime();
+		board.writeLock().lock();
+		if(board.getWriteHoldCount() == 1)
+		{
+			boardAcquired = System.nanoTime();
+			metrics.lockWaited(boardAcquired - start);
+		}
+	}
+
+	/**
+	 * Releases the lock taken by lockAll()
+	 */
+	void unlockAll()
+	{
+		long held = board.getWriteHoldCount() == 1 ? System.nanoTime() - boardAcquired : -1;
+		board.writeLock().unlock();
+		if(held >= 0)
+			metrics.lockHeld(held);
+	}
+
+	/**
+	 * Locks the band of rows containing row. In serial mode this locks the whole board.
+	 * @param row of the squares the operation touches, 0 <= row < rows
+	 * @return stripe that was locked, whose workspace the caller may use until it unlocks
+	 */
+	int lockRow(int row)
+	{
+		if(!isStriped())
+		{
+			lockAll();
+			return 0;
+		}
+		long start = System.nanoTime();
+		board.readLock().lock();
+		int stripe = row / stripeHeight;
+		stripes[stripe].lock();
+		stripeAcquired[stripe] = System.nanoTime();
+		metrics.lockWaited(stripeAcquired[stripe] - start);
+		return stripe;
+	}
+
+	/**
+	 * Releases the lock taken by lockRow(row)
+	 * @param row passed to lockRow
+	 */
+	void unlockRow(int row)
+	{
+		if(!isStriped())
+		{
+			unlockAll();
+			return;
+		}
+		int stripe = row / stripeHeight;
+		long held = System.nanoTime() - stripeAcquired[stripe];
+		stripes[stripe].unlock();
+		board.readLock().unlock();
+		metrics.lockHeld(held);
+	}
+}
@@ -0,0 +1,978 @@
+package minesweeper.board;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Plays a Board by deduction, the way a careful player does, or deduces what a LOOK message gives away without
+ * playing. Squares are deduced with three rules, each tried only when the ones before it found nothing-
+ * 		single:      a number whose missing bombs are 0, or as many as its unknown neighbours, decides them all
+ * 		subset:      if the unknown neighbours of a number are among those of a nearby number, the squares only
+ * 		             the second one sees hold the difference of their missing bombs
+ * 		enumeration: the unknown squares next to numbers (the frontier) are split in components sharing no number,
+ * 		             and every placement of bombs of a component satisfying its numbers is counted; a square
+ * 		             holding a bomb in all placements or in none is decided. Components are independent, so
+ * 		             they are counted in parallel on a ForkJoinPool.
+ * Squares far from every number are never decided: nothing is known of the number of bombs left.
+ *
+ * A solver plays through Board.perform(Batch, ...), the moves of a round locked once, and learns the squares that
+ * changed from the DELTA responses, so a round costs as much as the squares it reveals. Nobody else should play
+ * the board meanwhile: a bomb dug by somebody else changes numbers the solver relies on.
+ *
+ * A solver is thread safe, each call keeps its state to itself.
+ * @author Rishabh
+ *
+ */
+public final class Solver
+{
+	//Most placements tried when counting the placements of one component, beyond which it decides nothing
+	static final int MAX_NODES = 1 << 20;
+
+	//States of the squares not dug yet, dug squares hold their number of surrounding bombs
+	private static final byte UNKNOWN = -1;
+	private static final byte FLAGGED = -2;
+	private static final byte MINE = -3;
+	private static final byte SAFE = -4;
+	private static final byte SAFE_FLAGGED = -5;
+
+	private static ForkJoinPool sharedPool;
+
+	private final ForkJoinPool pool;
+
+	/**
+	 * Creates a solver counting components on a pool shared by every solver created this way
+	 */
+	public Solver()
+	{
+		this(sharedPool());
+	}
+
+	/**
+	 * @param pool counting the components of the frontier
+	 */
+	public Solver(ForkJoinPool pool)
+	{
+		this.pool = pool;
+	}
+
+	private static synchronized ForkJoinPool sharedPool()
+	{
+		if(sharedPool == null)
+			sharedPool = new ForkJoinPool();
+		return sharedPool;
+	}
+
+	/**
+	 * Plays a board until every square without a bomb is dug, or nothing more can be deduced. If no square is dug
+	 * yet, (row, column) is dug first. Squares deduced to hold a bomb are flagged, and flags on squares deduced
+	 * safe are removed before digging them.
+	 * @param board to play, played by nobody else meanwhile
+	 * @param row of the first square dug
+	 * @param column of the first square dug
+	 * @param guess true to dig the square least likely to hold a bomb when nothing can be deduced, instead of stopping
+	 * @return what the solver did
+	 */
+	public Result solve(Board board, int row, int column, boolean guess)
+	{
+		Game game = new Game(board.getRows(), board.getColumns());
+		game.read(board.look());
+		Batch batch = new Batch();
+		if(game.unknown == game.state.length && game.isValid(row, column))
+			game.dig(batch, board, row * game.columns + column);
+		while(game.unknown > 0)
+		{
+			if(game.deduce(true))
+				game.play(batch, board);
+			else if(guess && game.guess >= 0)
+			{
+				game.guesses++;
+				game.dig(batch, board, game.guess);
+			}
+			else
+				break;
+		}
+		return new Result(game);
+	}
+
+	/**
+	 * Deduces every square a LOOK message gives away, without playing
+	 * @param look LOOK message of a whole board
+	 * @return squares deduced safe and squares deduced to hold a bomb
+	 */
+	public Analysis analyze(String look)
+	{
+		int columns = (look.indexOf('\n') + 1) / 2;
+		if(columns == 0)
+			throw new IllegalArgumentException("not a LOOK message");
+		Game game = new Game(look.length() / (2 * columns), columns);
+		game.read(look);
+		while(game.deduce(false))
+			;
+		return new Analysis(game);
+	}
+
+	/**
+	 * State of one solve: what is known of every square, and the numbers whose rules may decide something
+	 *
+	 * Rep invariant- 	state.length == rows * columns
+	 * 					unknown == number of squares not dug and not MINE
+	 * 					queued[i] iff i is in work, inFrontier[i] iff i is in frontier
+	 */
+	private final class Game
+	{
+		final int rows;
+		final int columns;
+		final byte[] state;
+		int unknown;
+
+		//Numbers to check with the single rule
+		private final Squares work = new Squares();
+		private final boolean[] queued;
+		//Numbers that had unknown neighbours when last checked
+		private final Squares frontier = new Squares();
+		private final boolean[] inFrontier;
+		//Squares deduced since the last round was played
+		private final Squares toDig = new Squares();
+		private final Squares toFlag = new Squares();
+		//Square to guess and its chance of holding a bomb, -1 if there is none, set when nothing is deduced
+		int guess = -1;
+		private double guessChance;
+		//Next square looked at for a guess far from every number, all squares before it are dug or by a number
+		private int interior;
+
+		int dug, flagged, bombs, guesses, rounds, bySingle, bySubset, byEnumeration;
+
+		//Neighbours of a square, filled by unknownNeighbours
+		private final int[] around = new int[8];
+		private final int[] other = new int[8];
+		private int mines;
+
+		Game(int rows, int columns)
+		{
+			this.rows = rows;
+			this.columns = columns;
+			this.state = new byte[rows * columns];
+			this.queued = new boolean[state.length];
+			this.inFrontier = new boolean[state.length];
+		}
+
+		boolean isValid(int row, int column)
+		{
+			return row >= 0 && column >= 0 && row < rows && column < columns;
+		}
+
+		/**
+		 * Learns every square from a LOOK message
+		 */
+		void read(String look)
+		{
+			if(look.length() != 2 * state.length)
+				throw new IllegalArgumentException("LOOK message of " + look.length() + " characters for " + rows + "x" + columns + " squares");
+			for(int i = 0; i < state.length; i++)
+			{
+				char value = look.charAt(2 * i);
+				if(value == '-' || value == 'F')
+				{
+					state[i] = value == '-' ? UNKNOWN : FLAGGED;
+					unknown++;
+				}
+				else
+				{
+					state[i] = (byte) (value == ' ' ? 0 : value - '0');
+					enqueue(i);
+				}
+			}
+		}
+
+		/**
+		 * Applies the rules until they decide something
+		 * @param play true to stop at the first square decided, so it gets played before deducing further
+		 * @return true if a square was decided
+		 */
+		boolean deduce(boolean play)
+		{
+			boolean decided = false;
+			while(true)
+			{
+				int before = bySingle + bySubset + byEnumeration;
+				while(work.size() > 0)
+				{
+					int cell = work.get(work.size() - 1);
+					work.removeLast();
+					queued[cell] = false;
+					single(cell);
+				}
+				if(bySingle + bySubset + byEnumeration > before)
+				{
+					decided = true;
+					if(play)
+						return true;
+					continue;
+				}
+				if(subsets() || enumerate())
+				{
+					decided = true;
+					if(play)
+						return true;
+					continue;
+				}
+				return decided;
+			}
+		}
+
+		/**
+		 * Single rule on a number
+		 */
+		private void single(int cell)
+		{
+			int count = unknownNeighbours(cell, around);
+			if(count == 0)
+				return;
+			if(!inFrontier[cell])
+			{
+				inFrontier[cell] = true;
+				frontier.add(cell);
+			}
+			int missing = state[cell] - mines;
+			if(missing == 0 || missing == count)
+			{
+				for(int k = 0; k < count; k++)
+					decide(around[k], missing != 0);
+				bySingle += count;
+			}
+		}
+
+		/**
+		 * Subset rule on every pair of nearby numbers of the frontier
+		 * @return true if a square was decided
+		 */
+		private boolean subsets()
+		{
+			compactFrontier();
+			int before = bySubset;
+			for(int k = 0; k < frontier.size(); k++)
+			{
+				int a = frontier.get(k);
+				int row = a / columns, column = a - row * columns;
+				for(int r = Math.max(row - 2, 0); r <= Math.min(row + 2, rows - 1); r++)
+				{
+					for(int c = Math.max(column - 2, 0); c <= Math.min(column + 2, columns - 1); c++)
+					{
+						int b = r * columns + c;
+						if(b == a || !inFrontier[b])
+							continue;
+						int countA = unknownNeighbours(a, around), missingA = state[a] - mines;
+						int countB = unknownNeighbours(b, other), missingB = state[b] - mines;
+						if(countA == 0 || countB <= countA || !contains(other, countB, around, countA))
+							continue;
+						int extra = countB - countA, missing = missingB - missingA;
+						if(missing != 0 && missing != extra)
+							continue;
+						for(int j = 0; j < countB; j++)
+						{
+							if(!contains(around, countA, other[j]))
+								decide(other[j], missing != 0);
+						}
+						bySubset += extra;
+					}
+				}
+			}
+			return bySubset > before;
+		}
+
+		/**
+		 * Enumeration rule on the frontier, also choosing the square to guess if nothing is decided
+		 * @return true if a square was decided
+		 */
+		private boolean enumerate()
+		{
+			compactFrontier();
+			//Unknown squares next to numbers, and the numbers as lists of those squares
+			Map<Integer, Integer> variableOf = new HashMap<Integer, Integer>();
+			Squares variables = new Squares();
+			List<int[]> constraints = new ArrayList<int[]>();
+			Squares missing = new Squares();
+			for(int k = 0; k < frontier.size(); k++)
+			{
+				int cell = frontier.get(k);
+				int count = unknownNeighbours(cell, around);
+				int[] constraint = new int[count];
+				for(int j = 0; j < count; j++)
+				{
+					Integer variable = variableOf.get(around[j]);
+					if(variable == null)
+					{
+						variable = variables.size();
+						variableOf.put(around[j], variable);
+						variables.add(around[j]);
+					}
+					constraint[j] = variable;
+				}
+				constraints.add(constraint);
+				missing.add(state[cell] - mines);
+			}
+
+			//Components: variables linked by a common number
+			int[] parent = new int[variables.size()];
+			for(int v = 0; v < parent.length; v++)
+				parent[v] = v;
+			for(int[] constraint : constraints)
+			{
+				for(int j = 1; j < constraint.length; j++)
+					parent[find(parent, constraint[j])] = find(parent, constraint[0]);
+			}
+			Map<Integer, List<Integer>> byRoot = new HashMap<Integer, List<Integer>>();
+			for(int c = 0; c < constraints.size(); c++)
+			{
+				int root = find(parent, constraints.get(c)[0]);
+				List<Integer> members = byRoot.get(root);
+				if(members == null)
+				{
+					members = new ArrayList<Integer>();
+					byRoot.put(root, members);
+				}
+				members.add(c);
+			}
+			final List<Component> components = new ArrayList<Component>();
+			for(List<Integer> members : byRoot.values())
+				components.add(new Component(variables, constraints, missing, members));
+			if(components.size() == 1)
+				components.get(0).count();
+			else if(components.size() > 1)
+			{
+				pool.invoke(new RecursiveAction()
+				{
+					protected void compute()
+					{
+						invokeAll(components);
+					}
+				});
+			}
+
+			int before = byEnumeration;
+			guess = -1;
+			guessChance = 2;
+			for(Component component : components)
+			{
+				if(!component.complete)
+					continue;
+				for(int v = 0; v < component.squares.length; v++)
+				{
+					long placements = component.bombs[v];
+					if(placements == 0 || placements == component.placements)
+					{
+						decide(component.squares[v], placements != 0);
+						byEnumeration++;
+					}
+					else if((double) placements / component.placements < guessChance)
+					{
+						guessChance = (double) placements / component.placements;
+						guess = component.squares[v];
+					}
+				}
+			}
+			if(byEnumeration > before)
+			{
+				guess = -1;
+				return true;
+			}
+			//Squares far from every number hold a bomb about as often as on a generated board
+			int far = this.interiorSquare();
+			if(far >= 0 && (guess < 0 || guessChance > BoardGenerator.DEFAULT_DENSITY))
+				guess = far;
+			else if(guess < 0 && components.size() > 0)
+				guess = components.get(0).squares[0];
+			return false;
+		}
+
+		/**
+		 * @return an unknown square with no dug neighbour, -1 if there is none
+		 */
+		private int interiorSquare()
+		{
+			for(; interior < state.length; interior++)
+			{
+				if(isUnknown(state[interior]) && unknownNeighbours(interior, around) == neighbours(interior))
+					return interior;
+			}
+			return -1;
+		}
+
+		/**
+		 * Drops the numbers of the frontier left without unknown neighbours
+		 */
+		private void compactFrontier()
+		{
+			int kept = 0;
+			for(int k = 0; k < frontier.size(); k++)
+			{
+				int cell = frontier.get(k);
+				if(unknownNeighbours(cell, around) > 0)
+					frontier.set(kept++, cell);
+				else
+					inFrontier[cell] = false;
+			}
+			frontier.truncate(kept);
+		}
+
+		/**
+		 * Records a square as safe or holding a bomb, and queues the numbers around it
+		 */
+		private void decide(int square, boolean bomb)
+		{
+			byte was = state[square];
+			if(bomb)
+			{
+				state[square] = MINE;
+				unknown--;
+				if(was == UNKNOWN)
+					toFlag.add(square);
+			}
+			else
+			{
+				state[square] = was == FLAGGED ? SAFE_FLAGGED : SAFE;
+				toDig.add(square);
+			}
+			enqueueAround(square);
+		}
+
+		/**
+		 * Flags and digs the squares decided since the last round, with the board locked once, and learns the
+		 * squares they changed
+		 */
+		void play(Batch batch, Board board)
+		{
+			batch.clear();
+			for(int k = 0; k < toFlag.size(); k++)
+				batch.flag(toFlag.get(k) / columns, toFlag.get(k) % columns);
+			for(int k = 0; k < toDig.size(); k++)
+			{
+				int square = toDig.get(k);
+				if(state[square] == SAFE_FLAGGED)
+					batch.deflag(square / columns, square % columns);
+				batch.dig(square / columns, square % columns);
+			}
+			flagged += toFlag.size();
+			toFlag.clear();
+			toDig.clear();
+			this.perform(batch, board);
+		}
+
+		/**
+		 * Digs one square, removing its flag first
+		 */
+		void dig(Batch batch, Board board, int square)
+		{
+			batch.clear();
+			if(state[square] == FLAGGED || state[square] == SAFE_FLAGGED)
+				batch.deflag(square / columns, square % columns);
+			batch.dig(square / columns, square % columns);
+			this.perform(batch, board);
+		}
+
+		private void perform(Batch batch, Board board)
+		{
+			rounds++;
+			board.perform(batch, true, null, false);
+			for(int k = 0; k < batch.getPerformed(); k++)
+				this.learn(batch.getResponse(k));
+		}
+
+		/**
+		 * Learns the squares of a DELTA message, preceded by a BOOM! line if a bomb was dug
+		 */
+		private void learn(String response)
+		{
+			int at = 0;
+			if(response.startsWith("BOOM!"))
+			{
+				bombs++;
+				at = response.indexOf('\n') + 1;
+			}
+			at = response.indexOf('\n', at) + 1;
+			while(at < response.length())
+			{
+				int space = response.indexOf(' ', at);
+				int row = Integer.parseInt(response.substring(at, space));
+				int next = response.indexOf(' ', space + 1);
+				int column = Integer.parseInt(response.substring(space + 1, next));
+				this.learn(row * columns + column, response.charAt(next + 1));
+				at = next + 3;
+			}
+		}
+
+		/**
+		 * Learns what a square now shows
+		 */
+		private void learn(int square, char value)
+		{
+			byte was = state[square];
+			if(value == '-')
+			{
+				if(was == FLAGGED)
+					state[square] = UNKNOWN;
+				else if(was == SAFE_FLAGGED)
+					state[square] = SAFE;
+				return;
+			}
+			if(value == 'F')
+				return;
+			if(was < 0)
+			{
+				if(was != MINE)
+					unknown--;
+				dug++;
+			}
+			state[square] = (byte) (value == ' ' ? 0 : value - '0');
+			enqueue(square);
+			enqueueAround(square);
+		}
+
+		private void enqueue(int cell)
+		{
+			if(state[cell] > 0 && !queued[cell])
+			{
+				queued[cell] = true;
+				work.add(cell);
+			}
+		}
+
+		private void enqueueAround(int square)
+		{
+			int row = square / columns, column = square - row * columns;
+			for(int r = Math.max(row - 1, 0); r <= Math.min(row + 1, rows - 1); r++)
+			{
+				for(int c = Math.max(column - 1, 0); c <= Math.min(column + 1, columns - 1); c++)
+					enqueue(r * columns + c);
+			}
+		}
+
+		/**
+		 * Lists the neighbours of a square that are not dug and not decided, and counts its neighbours
+		 * decided to hold a bomb in mines
+		 * @return number of neighbours listed
+		 */
+		private int unknownNeighbours(int square, int[] into)
+		{
+			int row = square / columns, column = square - row * columns;
+			int count = 0;
+			mines = 0;
+			for(int r = Math.max(row - 1, 0); r <= Math.min(row + 1, rows - 1); r++)
+			{
+				for(int c = Math.max(column - 1, 0); c <= Math.min(column + 1, columns - 1); c++)
+				{
+					int neighbour = r * columns + c;
+					if(neighbour == square)
+						continue;
+					if(isUnknown(state[neighbour]))
+						into[count++] = neighbour;
+					else if(state[neighbour] == MINE)
+						mines++;
+				}
+			}
+			return count;
+		}
+
+		private int neighbours(int square)
+		{
+			int row = square / columns, column = square - row * columns;
+			return (Math.min(row + 1, rows - 1) - Math.max(row - 1, 0) + 1) * (Math.min(column + 1, columns - 1) - Math.max(column - 1, 0) + 1) - 1;
+		}
+	}
+
+	private static boolean isUnknown(byte state)
+	{
+		return state == UNKNOWN || state == FLAGGED;
+	}
+
+	/**
+	 * @return true if every one of the first count squares of subset is among the first length of set
+	 */
+	private static boolean contains(int[] set, int length, int[] subset, int count)
+	{
+		for(int k = 0; k < count; k++)
+		{
+			if(!contains(set, length, subset[k]))
+				return false;
+		}
+		return true;
+	}
+
+	private static boolean contains(int[] set, int length, int square)
+	{
+		for(int k = 0; k < length; k++)
+		{
+			if(set[k] == square)
+				return true;
+		}
+		return false;
+	}
+
+	private static int find(int[] parent, int v)
+	{
+		while(parent[v] != v)
+		{
+			parent[v] = parent[parent[v]];
+			v = parent[v];
+		}
+		return v;
+	}
+
+	/**
+	 * Squares of the frontier linked by the numbers around them, and the placements of bombs satisfying those
+	 * numbers. Counting placements is a depth-first search over the squares in breadth-first order, so each
+	 * number has all its squares placed soon after its first one and rejects wrong placements early.
+	 */
+	static final class Component extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		//Squares of the component, in search order
+		final int[] squares;
+		//Numbers, as positions in squares, and how many bombs each is missing
+		private final int[][] constraints;
+		private final int[] missing;
+		//Numbers each square is part of
+		private final int[][] constraintsOf;
+
+		//Placements found, and how many of them hold a bomb on each square
+		long placements;
+		final long[] bombs;
+		//False if the search gave up after MAX_NODES
+		boolean complete;
+
+		/**
+		 * @param variables squares of the whole frontier
+		 * @param all numbers of the whole frontier, as positions in variables
+		 * @param missing bombs each number of the whole frontier is missing
+		 * @param members positions in all of the numbers of this component
+		 */
+		Component(Squares variables, List<int[]> all, Squares missing, List<Integer> members)
+		{
+			//Breadth-first order over the squares, starting from the squares of the first number
+			Map<Integer, List<Integer>> numbersOf = new HashMap<Integer, List<Integer>>();
+			for(int m = 0; m < members.size(); m++)
+			{
+				for(int variable : all.get(members.get(m)))
+				{
+					List<Integer> numbers = numbersOf.get(variable);
+					if(numbers == null)
+					{
+						numbers = new ArrayList<Integer>();
+						numbersOf.put(variable, numbers);
+					}
+					numbers.add(m);
+				}
+			}
+			Map<Integer, Integer> position = new HashMap<Integer, Integer>();
+			Squares order = new Squares();
+			boolean[] visited = new boolean[members.size()];
+			Squares queue = new Squares();
+			queue.add(0);
+			visited[0] = true;
+			for(int head = 0; head < queue.size(); head++)
+			{
+				for(int variable : all.get(members.get(queue.get(head))))
+				{
+					if(position.containsKey(variable))
+						continue;
+					position.put(variable, order.size());
+					order.add(variable);
+					for(int number : numbersOf.get(variable))
+					{
+						if(!visited[number])
+						{
+							visited[number] = true;
+							queue.add(number);
+						}
+					}
+				}
+			}
+
+			this.squares = new int[order.size()];
+			for(int k = 0; k < squares.length; k++)
+				squares[k] = variables.get(order.get(k));
+			this.constraints = new int[members.size()][];
+			this.missing = new int[members.size()];
+			int[] sizes = new int[squares.length];
+			for(int m = 0; m < members.size(); m++)
+			{
+				int[] constraint = all.get(members.get(m));
+				constraints[m] = new int[constraint.length];
+				for(int j = 0; j < constraint.length; j++)
+				{
+					constraints[m][j] = position.get(constraint[j]);
+					sizes[constraints[m][j]]++;
+				}
+				this.missing[m] = missing.get(members.get(m));
+			}
+			this.constraintsOf = new int[squares.length][];
+			for(int k = 0; k < squares.length; k++)
+				constraintsOf[k] = new int[sizes[k]];
+			int[] filled = new int[squares.length];
+			for(int m = 0; m < constraints.length; m++)
+			{
+				for(int k : constraints[m])
+					constraintsOf[k][filled[k]++] = m;
+			}
+			this.bombs = new long[squares.length];
+		}
+
+		protected void compute()
+		{
+			this.count();
+		}
+
+		/**
+		 * Counts the placements of bombs satisfying every number of the component
+		 */
+		void count()
+		{
+			int n = squares.length;
+			int[] value = new int[n];
+			Arrays.fill(value, -1);
+			int[] placed = new int[constraints.length];
+			int[] open = new int[constraints.length];
+			for(int m = 0; m < constraints.length; m++)
+				open[m] = constraints[m].length;
+			long nodes = 0;
+			int depth = 0;
+			while(depth >= 0)
+			{
+				if(depth == n)
+				{
+					placements++;
+					for(int k = 0; k < n; k++)
+						bombs[k] += value[k];
+					depth--;
+					continue;
+				}
+				//Undo the value tried last at this depth and try the next one
+				int next = value[depth] + 1;
+				if(value[depth] >= 0)
+				{
+					for(int m : constraintsOf[depth])
+					{
+						open[m]++;
+						placed[m] -= value[depth];
+					}
+				}
+				if(next > 1)
+				{
+					value[depth] = -1;
+					depth--;
+					continue;
+				}
+				if(++nodes > MAX_NODES)
+					return;
+				value[depth] = next;
+				boolean consistent = true;
+				for(int m : constraintsOf[depth])
+				{
+					open[m]--;
+					placed[m] += next;
+					consistent &= placed[m] <= missing[m] && placed[m] + open[m] >= missing[m];
+				}
+				if(consistent)
+					depth++;
+			}
+			complete = true;
+		}
+	}
+
+	/**
+	 * Growable list of ints, mostly row-major indices of squares
+	 *
+	 * Rep invariant- 	0 <= count <= values.length
+	 */
+	static final class Squares
+	{
+		private int[] values = new int[16];
+		private int count;
+
+		void clear()
+		{
+			count = 0;
+		}
+
+		void add(int value)
+		{
+			if(count == values.length)
+				values = Arrays.copyOf(values, count * 2);
+			values[count++] = value;
+		}
+
+		int size()
+		{
+			return count;
+		}
+
+		int get(int k)
+		{
+			return values[k];
+		}
+
+		void set(int k, int value)
+		{
+			values[k] = value;
+		}
+
+		void removeLast()
+		{
+			count--;
+		}
+
+		/**
+		 * Keeps the first size values
+		 */
+		void truncate(int size)
+		{
+			count = size;
+		}
+
+		int[] toArray()
+		{
+			return Arrays.copyOf(values, count);
+		}
+	}
+
+	/**
+	 * What a solver did to a board
+	 */
+	public static final class Result
+	{
+		private final boolean solved;
+		private final int dug, flagged, bombs, guesses, rounds, bySingle, bySubset, byEnumeration;
+
+		private Result(Game game)
+		{
+			this.solved = game.unknown == 0;
+			this.dug = game.dug;
+			this.flagged = game.flagged;
+			this.bombs = game.bombs;
+			this.guesses = game.guesses;
+			this.rounds = game.rounds;
+			this.bySingle = game.bySingle;
+			this.bySubset = game.bySubset;
+			this.byEnumeration = game.byEnumeration;
+		}
+
+		/**
+		 * @return true if every square without a bomb is dug and every square with one is flagged
+		 */
+		public boolean isSolved()
+		{
+			return solved;
+		}
+
+		/**
+		 * @return number of squares dug by the solver's digs, flood fills included
+		 */
+		public int getDug()
+		{
+			return dug;
+		}
+
+		/**
+		 * @return number of squares the solver flagged
+		 */
+		public int getFlagged()
+		{
+			return flagged;
+		}
+
+		/**
+		 * @return number of bombs the solver dug, on its first dig or its guesses
+		 */
+		public int getBombs()
+		{
+			return bombs;
+		}
+
+		/**
+		 * @return number of squares dug without being deduced safe, not counting the first dig
+		 */
+		public int getGuesses()
+		{
+			return guesses;
+		}
+
+		/**
+		 * @return number of batches of moves played
+		 */
+		public int getRounds()
+		{
+			return rounds;
+		}
+
+		/**
+		 * @return number of squares decided by the single, subset and enumeration rules
+		 */
+		public int[] getDecided()
+		{
+			return new int[] {bySingle, bySubset, byEnumeration};
+		}
+
+		@Override
+		public String toString()
+		{
+			return (solved ? "solved" : "stuck") + " dug=" + dug + " flagged=" + flagged + " bombs=" + bombs
+					+ " guesses=" + guesses + " rounds=" + rounds + " single=" + bySingle + " subset=" + bySubset
+					+ " enumeration=" + byEnumeration;
+		}
+	}
+
+	/**
+	 * What a LOOK message gives away
+	 */
+	public static final class Analysis
+	{
+		private final int columns;
+		private final int[] safe;
+		private final int[] mines;
+
+		private Analysis(Game game)
+		{
+			this.columns = game.columns;
+			Squares safe = new Squares(), mines = new Squares();
+			for(int i = 0; i < game.state.length; i++)
+			{
+				if(game.state[i] == SAFE || game.state[i] == SAFE_FLAGGED)
+					safe.add(i);
+				else if(game.state[i] == MINE)
+					mines.add(i);
+			}
+			this.safe = safe.toArray();
+			this.mines = mines.toArray();
+		}
+
+		/**
+		 * @return squares deduced safe and not dug yet, as row-major indices (row * getColumns() + column)
+		 */
+		public int[] getSafe()
+		{
+			return safe.clone();
+		}
+
+		/**
+		 * @return squares deduced to hold a bomb, as row-major indices (row * getColumns() + column)
+		 */
+		public int[] getMines()
+		{
+			return mines.clone();
+		}
+
+		/**
+		 * @return number of columns of the board analyzed
+		 */
+		public int getColumns()
+		{
+			return columns;
+		}
+	}
+}
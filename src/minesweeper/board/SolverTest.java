@@ -0,0 +1,93 @@
+package minesweeper.board;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class SolverTest
+{
+	/**
+	 * Tests have been written for
+	 * 1) Each rule on a LOOK message only it decides
+	 * 2) Squares deduced from random boards, which must be right
+	 * 3) Playing random boards to the end, guessing when stuck
+	 * 4) The same solve counted on one thread and on several
+	 */
+	@Test
+	public void rulesTest()
+	{
+		Solver solver = new Solver();
+		//Single rule: a 1 touching one unknown square
+		Solver.Analysis analysis = solver.analyze("- 1\n1 1\n");
+		assertArrayEquals(new int[] {}, analysis.getSafe());
+		assertArrayEquals(new int[] {0}, analysis.getMines());
+		//Subset rule: 1-2-1 below three unknown squares
+		analysis = solver.analyze("- - -\n1 2 1\n     \n");
+		assertEquals(3, analysis.getColumns());
+		assertArrayEquals(new int[] {1}, analysis.getSafe());
+		assertArrayEquals(new int[] {0, 2}, analysis.getMines());
+		//Nothing to deduce from a 1 between two unknown squares
+		analysis = solver.analyze("- 1 -\n");
+		assertEquals(0, analysis.getSafe().length + analysis.getMines().length);
+	}
+
+	@Test
+	public void soundTest()
+	{
+		BoardGenerator generator = new BoardGenerator(5);
+		Solver solver = new Solver();
+		for(int k = 0; k < 40; k++)
+		{
+			Board board = generator.generate(12 + k % 5, 30 - k % 7, (k % 4 + 2) * 12, false);
+			board.dig(k % 12, k % 11);
+			board.dig((k * 7) % 12, (k * 5) % 23);
+			Solver.Analysis analysis = solver.analyze(board.look());
+			int columns = analysis.getColumns();
+			for(int square : analysis.getSafe())
+				assertFalse(board.isBomb(square / columns, square % columns));
+			for(int square : analysis.getMines())
+				assertTrue(board.isBomb(square / columns, square % columns));
+		}
+	}
+
+	@Test
+	public void solveTest()
+	{
+		BoardGenerator generator = new BoardGenerator(8);
+		Solver solver = new Solver();
+		for(int k = 0; k < 20; k++)
+		{
+			Board board = generator.generate(30, 16, 60 + k, false);
+			Solver.Result result = solver.solve(board, 15, 8, true);
+			assertTrue(result.toString(), result.isSolved());
+			assertEquals(board.look().replaceAll("[^-]", "").length(), 0);
+			assertEquals(60 + k - result.getBombs(), result.getFlagged());
+			assertTrue(result.getBombs() <= result.getGuesses() + 1);
+		}
+	}
+
+	@Test
+	public void parallelTest()
+	{
+		ForkJoinPool one = new ForkJoinPool(1), four = new ForkJoinPool(4);
+		try
+		{
+			for(int k = 0; k < 5; k++)
+			{
+				Solver.Result single = new Solver(one).solve(new BoardGenerator(k).generate(60, 60, 700, false), 30, 30, true);
+				Solver.Result parallel = new Solver(four).solve(new BoardGenerator(k).generate(60, 60, 700, false), 30, 30, true);
+				assertEquals(single.toString(), parallel.toString());
+			}
+		}
+		finally
+		{
+			one.shutdown();
+			four.shutdown();
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package minesweeper.board;
+
+/**
+ * Immutable rectangle of squares a client displays, from (firstRow, firstColumn) to (lastRow, lastColumn) inclusive.
+ * A viewport may reach beyond the board; only the squares it shares with the board are rendered.
+ *
+ * Rep invariant- 	firstRow <= lastRow
+ * 					firstColumn <= lastColumn
+ * @author Rishabh
+ *
+ */
+public final class Viewport
+{
+	private final int firstRow;
+	private final int firstColumn;
+	private final int lastRow;
+	private final int lastColumn;
+
+	/**
+	 * Creates the viewport between two opposite corners, given in any order
+	 * @param row0 row of a corner
+	 * @param column0 column of that corner
+	 * @param row1 row of the opposite corner
+	 * @param column1 column of the opposite corner
+	 */
+	public Viewport(int row0, int column0, int row1, int column1)
+	{
+		this.firstRow = Math.min(row0, row1);
+		this.lastRow = Math.max(row0, row1);
+		this.firstColumn = Math.min(column0, column1);
+		this.lastColumn = Math.max(column0, column1);
+		this.checkRep();
+	}
+
+	private void checkRep()
+	{
+		assert this.firstRow <= this.lastRow;
+		assert this.firstColumn <= this.lastColumn;
+	}
+
+	public int getFirstRow()
+	{
+		return this.firstRow;
+	}
+
+	public int getFirstColumn()
+	{
+		return this.firstColumn;
+	}
+
+	public int getLastRow()
+	{
+		return this.lastRow;
+	}
+
+	public int getLastColumn()
+	{
+		return this.lastColumn;
+	}
+
+	/**
+	 * @param row of a square
+	 * @param column of a square
+	 * @return true if the square is inside the viewport
+	 */
+	public boolean contains(int row, int column)
+	{
+		return row >= this.firstRow && row <= this.lastRow && column >= this.firstColumn && column <= this.lastColumn;
+	}
+
+	@Override
+	public boolean equals(Object other)
+	{
+		if(!(other instanceof Viewport))
+			return false;
+		Viewport that = (Viewport) other;
+		return this.firstRow == that.firstRow && this.firstColumn == that.firstColumn
+				&& this.lastRow == that.lastRow && this.lastColumn == that.lastColumn;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return ((firstRow * 31 + firstColumn) * 31 + lastRow) * 31 + lastColumn;
+	}
+}
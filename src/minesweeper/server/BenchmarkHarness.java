@@ -0,0 +1,258 @@
+package minesweeper.server;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the benchmarks of BenchmarkSuite the way JMH does without needing it on the class path: each benchmark, for
+ * one combination of its parameters, is set up once, run by its threads for a number of warmup iterations and then
+ * of measured iterations of a fixed duration, and torn down. Only the invocations of Benchmark.run are timed, so
+ * the work a benchmark does in prepare (like building a fresh board for a flood fill) is left out.
+ *
+ * Results are printed as tab separated rows, one per benchmark and parameters:
+ *
+ *   benchmark  params  threads  iterations  ns_per_op  stdev_ns  ops_per_sec
+ *
+ * where ns_per_op is the mean over the measured iterations of the time of an operation on one thread, stdev_ns its
+ * standard deviation between iterations, and ops_per_sec the mean throughput of all threads together. The same
+ * rows can be appended to a file, prefixed with the time, a label (like the commit measured) and the Java version,
+ * so results can be tracked from one run to the next.
+ * @author Rishabh
+ *
+ */
+final class BenchmarkHarness
+{
+	static final String HEADER = "benchmark\tparams\tthreads\titerations\tns_per_op\tstdev_ns\tops_per_sec";
+
+	//Results of the benchmarks, kept so the JIT cannot drop the work
+	private static volatile long sink;
+
+	private final int warmups;
+	private final int iterations;
+	private final long iterationMillis;
+	private final Pattern filter;
+	private final PrintStream out;
+	private final String prefix;
+
+	/**
+	 * @param warmups number of iterations run before measuring, >= 0
+	 * @param iterations number of measured iterations, > 0
+	 * @param iterationMillis duration of an iteration; every thread still runs at least one invocation in each
+	 * @param filter regular expression a benchmark's name must contain to run, null to run them all
+	 * @param out file the rows are appended to as well, null for standard output only
+	 * @param label written in front of the rows appended to out
+	 * @throws IOException if out cannot be opened
+	 */
+	BenchmarkHarness(int warmups, int iterations, long iterationMillis, String filter, File out, String label) throws IOException
+	{
+		this.warmups = warmups;
+		this.iterations = iterations;
+		this.iterationMillis = iterationMillis;
+		this.filter = filter == null ? null : Pattern.compile(filter);
+		if(out == null)
+		{
+			this.out = null;
+			this.prefix = null;
+		}
+		else
+		{
+			boolean created = !out.exists();
+			this.out = new PrintStream(new FileOutputStream(out, true), true);
+			this.prefix = String.format("%tFT%<tT", new Date()) + "\t" + label + "\t" + System.getProperty("java.version") + "\t";
+			if(created)
+				this.out.println("time\tlabel\tjava\t" + HEADER);
+		}
+	}
+
+	/**
+	 * Keeps a result alive. Benchmarks running on several threads should call it once per invocation, as every
+	 * call writes the same field.
+	 */
+	static void consume(long value)
+	{
+		sink ^= value;
+	}
+
+	/**
+	 * Keeps a result alive, without reading it, so consuming a large LOOK message costs nothing
+	 */
+	static void consume(Object value)
+	{
+		sink ^= System.identityHashCode(value);
+	}
+
+	/**
+	 * Runs the benchmarks selected by the filter and prints their rows
+	 */
+	void run(List<Benchmark> benchmarks) throws Exception
+	{
+		System.out.println(HEADER);
+		for(Benchmark benchmark : benchmarks)
+		{
+			if(filter != null && !filter.matcher(benchmark.name).find())
+				continue;
+			String row = this.measure(benchmark);
+			System.out.println(row);
+			if(out != null)
+				out.println(prefix + row);
+		}
+		if(out != null)
+			out.close();
+	}
+
+	/**
+	 * Runs one benchmark
+	 * @return its row
+	 */
+	private String measure(Benchmark benchmark) throws Exception
+	{
+		benchmark.setUp();
+		double[] nanosPerOp = new double[iterations];
+		double[] opsPerSecond = new double[iterations];
+		try
+		{
+			for(int i = 0; i < warmups + iterations; i++)
+			{
+				double[] result = this.iteration(benchmark);
+				if(i >= warmups)
+				{
+					nanosPerOp[i - warmups] = result[0];
+					opsPerSecond[i - warmups] = result[1];
+				}
+			}
+		}
+		finally
+		{
+			benchmark.tearDown();
+		}
+		double mean = mean(nanosPerOp);
+		double variance = 0;
+		for(double value : nanosPerOp)
+			variance += (value - mean) * (value - mean);
+		double stdev = iterations > 1 ? Math.sqrt(variance / (iterations - 1)) : 0;
+		return benchmark.name + "\t" + benchmark.params + "\t" + benchmark.threads + "\t" + iterations + "\t"
+				+ String.format("%.1f\t%.1f\t%.1f", mean, stdev, mean(opsPerSecond));
+	}
+
+	/**
+	 * Runs the threads of a benchmark together for one iteration
+	 * @return {mean nanoseconds per operation of a thread, operations per second of all threads}
+	 */
+	private double[] iteration(final Benchmark benchmark) throws Exception
+	{
+		final int threads = benchmark.threads;
+		final long[] operations = new long[threads];
+		final long[] nanos = new long[threads];
+		final Exception[] failure = new Exception[1];
+		final CyclicBarrier start = new CyclicBarrier(threads);
+		Thread[] runners = new Thread[threads];
+		for(int t = 0; t < threads; t++)
+		{
+			final int thread = t;
+			runners[t] = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					try
+					{
+						start.await();
+						long deadline = System.nanoTime() + iterationMillis * 1000000L;
+						do
+						{
+							benchmark.prepare(thread);
+							long before = System.nanoTime();
+							operations[thread] += benchmark.run(thread);
+							nanos[thread] += System.nanoTime() - before;
+						}
+						while(System.nanoTime() < deadline);
+					}
+					catch(Exception e)
+					{
+						synchronized(failure)
+						{
+							failure[0] = e;
+						}
+					}
+				}
+			}, "benchmark-" + t);
+			runners[t].start();
+		}
+		for(Thread runner : runners)
+			runner.join();
+		if(failure[0] != null)
+			throw failure[0];
+		double perOp = 0;
+		double perSecond = 0;
+		for(int t = 0; t < threads; t++)
+		{
+			perOp += (double) nanos[t] / operations[t] / threads;
+			perSecond += operations[t] * 1e9 / nanos[t];
+		}
+		return new double[] {perOp, perSecond};
+	}
+
+	private static double mean(double[] values)
+	{
+		double sum = 0;
+		for(double value : values)
+			sum += value;
+		return sum / values.length;
+	}
+
+	/**
+	 * A benchmark with one combination of its parameters
+	 */
+	abstract static class Benchmark
+	{
+		final String name;
+		final String params;
+		final int threads;
+
+		/**
+		 * @param name of the benchmark, shared by all of its parameters
+		 * @param params values of the parameters, like "size=100 density=0.25"
+		 * @param threads number of threads running it together, > 0
+		 */
+		Benchmark(String name, String params, int threads)
+		{
+			this.name = name;
+			this.params = params;
+			this.threads = threads;
+		}
+
+		/**
+		 * Called once before the benchmark runs, untimed
+		 */
+		void setUp() throws Exception
+		{
+		}
+
+		/**
+		 * Called by a thread before each of its invocations of run, untimed
+		 * @param thread number of the thread, 0 <= thread < threads
+		 */
+		void prepare(int thread) throws Exception
+		{
+		}
+
+		/**
+		 * One timed invocation
+		 * @param thread number of the thread, 0 <= thread < threads
+		 * @return number of operations it performed, > 0
+		 */
+		abstract long run(int thread) throws Exception;
+
+		/**
+		 * Called once after the benchmark ran, untimed
+		 */
+		void tearDown() throws Exception
+		{
+		}
+	}
+}
@@ -0,0 +1,570 @@
+package minesweeper.server;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import minesweeper.board.Board;
+import minesweeper.board.BoardGenerator;
+import minesweeper.board.Solver;
+
+/**
+ * Benchmarks of the Board operations and of the server protocol, run by BenchmarkHarness for every combination of
+ * their parameters:
+ *
+ *   board.look            rendering a LOOK message after a change, by board size, wide and tall boards included
+ *   board.flag_delta      flag and deflag in DELTA mode on a concurrent board, by board size and thread count,
+ *                         each thread on its own rows
+ *   board.dig_numbered    digs that reveal a single numbered square, by board size and mine density
+ *   board.flood_fill      a dig expanding a region of region*region empty squares (see FloodFill), by region size,
+ *                         and of wide and tall empty boards
+ *   board.generate        generating a seeded random board (see BoardGenerator), by board size and mine density
+ *   board.solve           playing a random board to the end with a Solver, guessing when stuck, by board size and
+ *                         mine density
+ *   board.load_text       loading a board file of 0s and 1s, by board size
+ *   board.load_binary     loading a board saved by Board.save, by board size
+ *   protocol.parse        CommandParser on a mix of valid and invalid messages
+ *   protocol.handle       MinesweeperServer.handleRequest of DELTA moves, without sockets
+ *   server.round_trip     commands per second of clients connected to a server in this process, by engine,
+ *                         client count (the threads) and pipelining depth (see PipelineBenchmark)
+ *
+ * Usage: BenchmarkSuite [--quick] [--filter REGEX] [--warmup N] [--iterations N] [--time MILLIS]
+ *                       [--out FILE] [--label LABEL]
+ *
+ * --quick runs shorter iterations on fewer parameters, to check for large regressions. --filter runs only the
+ * benchmarks whose name contains a match of REGEX. --out appends the results to FILE, labelled with LABEL (the
+ * commit measured, for example), see BenchmarkHarness.
+ * @author Rishabh
+ *
+ */
+public class BenchmarkSuite
+{
+	private static final long SEED = 42;
+	private static final String[] MESSAGES = {"dig 3 4", "flag 12 7", "deflag 12 7", "look", "dig -1 250",
+			"flag 99 0", "mode delta", "help", "dig 1 2 3", "hello"};
+
+	//Files written for the loading benchmarks, deleted on exit
+	private static final Map<String, File> files = new HashMap<String, File>();
+	//Ports of the servers started in this process, by engine
+	private static final Map<Boolean, Integer> ports = new HashMap<Boolean, Integer>();
+
+	public static void main(String[] args) throws Exception
+	{
+		boolean quick = false;
+		String filter = null;
+		String label = "";
+		File out = null;
+		int warmups = 3, iterations = 5;
+		long millis = 1000;
+		try
+		{
+			for(int i = 0; i < args.length; i++)
+			{
+				String flag = args[i];
+				if(flag.equals("--quick"))
+					quick = true;
+				else if(flag.equals("--filter"))
+					filter = args[++i];
+				else if(flag.equals("--warmup"))
+					warmups = Integer.parseInt(args[++i]);
+				else if(flag.equals("--iterations"))
+					iterations = Integer.parseInt(args[++i]);
+				else if(flag.equals("--time"))
+					millis = Long.parseLong(args[++i]);
+				else if(flag.equals("--out"))
+					out = new File(args[++i]);
+				else if(flag.equals("--label"))
+					label = args[++i];
+				else
+					throw new IllegalArgumentException("unknown option: \"" + flag + "\"");
+			}
+			if(iterations < 1 || warmups < 0 || millis < 1)
+				throw new IllegalArgumentException("iterations, warmup and time must be positive");
+		}
+		catch(ArrayIndexOutOfBoundsException | IllegalArgumentException e)
+		{
+			System.err.println(e.getMessage() == null ? "missing argument" : e.getMessage());
+			System.err.println("usage: BenchmarkSuite [--quick] [--filter REGEX] [--warmup N] [--iterations N] [--time MILLIS] [--out FILE] [--label LABEL]");
+			return;
+		}
+		if(quick)
+		{
+			warmups = Math.min(warmups, 1);
+			iterations = Math.min(iterations, 2);
+			millis = Math.min(millis, 200);
+		}
+		new BenchmarkHarness(warmups, iterations, millis, filter, out, label).run(benchmarks(quick));
+		for(File file : files.values())
+			file.delete();
+		System.exit(0);
+	}
+
+	/**
+	 * @param quick true for fewer parameters
+	 * @return every benchmark with every combination of its parameters
+	 */
+	private static List<BenchmarkHarness.Benchmark> benchmarks(boolean quick)
+	{
+		int[] sizes = quick ? new int[] {100, 1000} : new int[] {100, 1000, 4000};
+		double[] densities = quick ? new double[] {0.25} : new double[] {0.05, 0.25};
+		int[] threads = quick ? new int[] {1, 4} : new int[] {1, 2, 4, 8};
+		int[] regions = quick ? new int[] {100, 1000} : new int[] {10, 100, 1000, 3000};
+		int[] depths = quick ? new int[] {1, 16} : new int[] {1, 16, 64};
+		int[][] shapes = quick ? new int[][] {{100, 3000}} : new int[][] {{100, 3000}, {3000, 100}, {3, 100000}};
+		int[] solveSizes = quick ? new int[] {50, 200} : new int[] {50, 200, 500};
+		double[] solveDensities = quick ? new double[] {0.15} : new double[] {0.10, 0.15, 0.20};
+
+		List<BenchmarkHarness.Benchmark> benchmarks = new ArrayList<BenchmarkHarness.Benchmark>();
+		for(int size : sizes)
+			benchmarks.add(look(size, size));
+		for(int[] shape : shapes)
+			benchmarks.add(look(shape[0], shape[1]));
+		for(int size : sizes)
+		{
+			for(int count : threads)
+				benchmarks.add(flagDelta(size, count));
+		}
+		for(int size : sizes)
+		{
+			for(double density : densities)
+				benchmarks.add(digNumbered(size, density));
+		}
+		for(int region : regions)
+			benchmarks.add(floodFill(region, region));
+		for(int[] shape : shapes)
+			benchmarks.add(floodFill(shape[0], shape[1]));
+		for(int size : sizes)
+		{
+			for(double density : densities)
+				benchmarks.add(generate(size, density));
+		}
+		for(int size : solveSizes)
+		{
+			for(double density : solveDensities)
+				benchmarks.add(solve(size, density));
+		}
+		for(int size : sizes)
+			benchmarks.add(load(size, false));
+		for(int size : sizes)
+			benchmarks.add(load(size, true));
+		benchmarks.add(parse());
+		benchmarks.add(handle());
+		for(boolean nio : new boolean[] {false, true})
+		{
+			for(int count : threads)
+			{
+				for(int depth : depths)
+					benchmarks.add(roundTrip(nio, count, depth));
+			}
+		}
+		return benchmarks;
+	}
+
+	private static BenchmarkHarness.Benchmark look(final int rows, final int columns)
+	{
+		return new BenchmarkHarness.Benchmark("board.look", "size=" + shape(rows, columns), 1)
+		{
+			private Board board;
+			private int square;
+
+			void setUp()
+			{
+				board = new BoardGenerator(SEED).generate(rows, columns, BoardGenerator.mineCount(rows, columns, 0.25), false);
+			}
+
+			//Changes a square, so the look renders the board again instead of returning the last LOOK message
+			void prepare(int thread)
+			{
+				int row = square % rows, column = (square / rows) % columns;
+				board.flagDelta(row, column);
+				board.deflagDelta(row, column);
+				square += 7919;
+			}
+
+			long run(int thread)
+			{
+				BenchmarkHarness.consume(board.look());
+				return 1;
+			}
+		};
+	}
+
+	private static BenchmarkHarness.Benchmark flagDelta(final int size, final int threads)
+	{
+		return new BenchmarkHarness.Benchmark("board.flag_delta", "size=" + size, threads)
+		{
+			private static final int BATCH = 100;
+			private Board board;
+			private int[] next;
+
+			void setUp()
+			{
+				board = new BoardGenerator(SEED).generate(size, BoardGenerator.mineCount(size, 0.25), true);
+				next = new int[threads * 16];
+			}
+
+			long run(int thread)
+			{
+				//Rows of each thread are a contiguous band, so threads do not share stripes of the board's locks
+				int band = Math.max(1, size / threads);
+				int square = next[thread * 16];
+				long sum = 0;
+				for(int i = 0; i < BATCH; i++, square++)
+				{
+					int row = (thread * band + (square / size) % band) % size, column = square % size;
+					sum += board.flagDelta(row, column).length() + board.deflagDelta(row, column).length();
+				}
+				BenchmarkHarness.consume(sum);
+				//Counters of different threads are 16 ints apart, so they do not share a cache line
+				next[thread * 16] = square;
+				return 2 * BATCH;
+			}
+		};
+	}
+
+	private static BenchmarkHarness.Benchmark digNumbered(final int size, final double density)
+	{
+		return new BenchmarkHarness.Benchmark("board.dig_numbered", "size=" + size + " density=" + density, 1)
+		{
+			private File file;
+			private int[] squares;
+			private Board board;
+			private int next;
+
+			void setUp() throws IOException
+			{
+				boolean[][] bombs = bombs(size, density);
+				file = textBoard(size, density, bombs);
+				//Squares that are not bombs but have some around, so a dig reveals them alone
+				int count = 0;
+				squares = new int[size * size];
+				for(int row = 0; row < size; row++)
+				{
+					for(int column = 0; column < size; column++)
+					{
+						if(!bombs[row][column] && around(bombs, row, column) > 0)
+							squares[count++] = row * size + column;
+					}
+				}
+				squares = Arrays.copyOf(squares, count);
+				shuffle(squares, new Random(SEED));
+				next = squares.length;
+			}
+
+			//Loads the board again once every numbered square is dug
+			void prepare(int thread) throws IOException
+			{
+				if(next == squares.length)
+				{
+					board = new Board(file);
+					next = 0;
+				}
+			}
+
+			long run(int thread)
+			{
+				int square = squares[next++];
+				BenchmarkHarness.consume(board.digDelta(square / size, square % size));
+				return 1;
+			}
+		};
+	}
+
+	private static BenchmarkHarness.Benchmark floodFill(final int rows, final int columns)
+	{
+		return new BenchmarkHarness.Benchmark("board.flood_fill", "region=" + shape(rows, columns), 1)
+		{
+			private Board board;
+
+			//A board without bombs, so digging a corner expands it all
+			void prepare(int thread)
+			{
+				board = new BoardGenerator(SEED).generate(rows, columns, 0, false);
+			}
+
+			long run(int thread)
+			{
+				BenchmarkHarness.consume(board.digDelta(0, 0).length());
+				return 1;
+			}
+		};
+	}
+
+	private static BenchmarkHarness.Benchmark generate(final int size, final double density)
+	{
+		return new BenchmarkHarness.Benchmark("board.generate", "size=" + size + " density=" + density, 1)
+		{
+			private long seed;
+
+			long run(int thread)
+			{
+				BenchmarkHarness.consume(new BoardGenerator(seed++).generate(size, BoardGenerator.mineCount(size, density)));
+				return 1;
+			}
+		};
+	}
+
+	private static BenchmarkHarness.Benchmark solve(final int size, final double density)
+	{
+		return new BenchmarkHarness.Benchmark("board.solve", "size=" + size + " density=" + density, 1)
+		{
+			private final Solver solver = new Solver();
+			private long seed;
+			private Board board;
+
+			void prepare(int thread)
+			{
+				board = new BoardGenerator(seed++).generate(size, BoardGenerator.mineCount(size, density));
+			}
+
+			long run(int thread)
+			{
+				BenchmarkHarness.consume(solver.solve(board, size / 2, size / 2, true).getRounds());
+				return 1;
+			}
+		};
+	}
+
+	private static BenchmarkHarness.Benchmark load(final int size, final boolean binary)
+	{
+		return new BenchmarkHarness.Benchmark(binary ? "board.load_binary" : "board.load_text", "size=" + size, 1)
+		{
+			private File file;
+
+			void setUp() throws IOException
+			{
+				file = textBoard(size, 0.25, bombs(size, 0.25));
+				if(binary)
+				{
+					File saved = files.get("binary" + size);
+					if(saved == null)
+					{
+						saved = File.createTempFile("board" + size, ".bin");
+						new Board(file).save(saved);
+						files.put("binary" + size, saved);
+					}
+					file = saved;
+				}
+			}
+
+			long run(int thread) throws IOException
+			{
+				BenchmarkHarness.consume(new Board(file));
+				return 1;
+			}
+		};
+	}
+
+	private static BenchmarkHarness.Benchmark parse()
+	{
+		return new BenchmarkHarness.Benchmark("protocol.parse", "messages=" + MESSAGES.length, 1)
+		{
+			private final CommandParser parser = new CommandParser();
+
+			long run(int thread)
+			{
+				long sum = 0;
+				for(int i = 0; i < 100; i++)
+				{
+					for(String message : MESSAGES)
+						sum += parser.parse(message) + parser.getX() + parser.getY();
+				}
+				BenchmarkHarness.consume(sum);
+				return 100 * MESSAGES.length;
+			}
+		};
+	}
+
+	private static BenchmarkHarness.Benchmark handle()
+	{
+		return new BenchmarkHarness.Benchmark("protocol.handle", "size=100", 1)
+		{
+			private MinesweeperServer server;
+			private Session session;
+			private final String[] requests = {"flag 5 7", "deflag 5 7", "dig -1 250", "help"};
+
+			void setUp() throws Exception
+			{
+				//Starting a server sets up the games the requests are handled in
+				port(false);
+				server = new MinesweeperServer(0, true);
+				session = new Session();
+				server.welcome(session);
+				server.handleRequest("mode delta", session);
+			}
+
+			long run(int thread)
+			{
+				for(int i = 0; i < 25; i++)
+				{
+					for(String request : requests)
+						BenchmarkHarness.consume(server.handleRequest(request, session));
+				}
+				return 25 * requests.length;
+			}
+
+			void tearDown()
+			{
+				server.goodbye(session);
+			}
+		};
+	}
+
+	private static BenchmarkHarness.Benchmark roundTrip(final boolean nio, final int clients, final int depth)
+	{
+		return new BenchmarkHarness.Benchmark("server.round_trip", "engine=" + (nio ? "nio" : "threads") + " depth=" + depth, clients)
+		{
+			private Socket[] sockets;
+			private BufferedReader[] ins;
+			private OutputStream[] outs;
+			private byte[][] rounds;
+
+			void setUp() throws Exception
+			{
+				int port = port(nio);
+				sockets = new Socket[clients];
+				ins = new BufferedReader[clients];
+				outs = new OutputStream[clients];
+				rounds = new byte[clients][];
+				for(int c = 0; c < clients; c++)
+				{
+					sockets[c] = new Socket("localhost", port);
+					sockets[c].setTcpNoDelay(true);
+					ins[c] = new BufferedReader(new InputStreamReader(sockets[c].getInputStream()));
+					outs[c] = sockets[c].getOutputStream();
+					ins[c].readLine();
+					outs[c].write("mode delta\n".getBytes());
+					ins[c].readLine();
+					//An even number of commands flagging and deflagging the client's own square, so each changes it
+					StringBuilder round = new StringBuilder();
+					for(int i = 0; i < 2 * depth; i++)
+						round.append(i % 2 == 0 ? "flag " : "deflag ").append(c).append(" 1\n");
+					rounds[c] = round.toString().getBytes();
+				}
+			}
+
+			long run(int thread) throws IOException
+			{
+				outs[thread].write(rounds[thread]);
+				for(int i = 0; i < 2 * depth; i++)
+				{
+					String header = ins[thread].readLine();
+					int changed = Integer.parseInt(header.substring("DELTA ".length()));
+					for(int j = 0; j <= changed; j++)
+						ins[thread].readLine();
+				}
+				return 2 * depth;
+			}
+
+			void tearDown() throws IOException
+			{
+				for(Socket socket : sockets)
+					socket.close();
+			}
+		};
+	}
+
+	/**
+	 * @return port of a server started in this process for the engine, started on the first call
+	 */
+	private static synchronized int port(boolean nio) throws Exception
+	{
+		Integer port = ports.get(nio);
+		if(port == null)
+		{
+			port = ServerLoadBenchmark.startServer(nio);
+			ports.put(nio, port);
+		}
+		return port;
+	}
+
+	/**
+	 * @return "N" for a square board of N rows, "ROWSxCOLUMNS" otherwise
+	 */
+	private static String shape(int rows, int columns)
+	{
+		return rows == columns ? String.valueOf(rows) : rows + "x" + columns;
+	}
+
+	/**
+	 * @return bombs placed independently with the given density, the same for the same arguments
+	 */
+	private static boolean[][] bombs(int size, double density)
+	{
+		Random random = new Random(SEED + size);
+		boolean[][] bombs = new boolean[size][size];
+		for(int row = 0; row < size; row++)
+		{
+			for(int column = 0; column < size; column++)
+				bombs[row][column] = random.nextDouble() < density;
+		}
+		return bombs;
+	}
+
+	private static int around(boolean[][] bombs, int row, int column)
+	{
+		int count = 0;
+		for(int r = Math.max(0, row - 1); r <= Math.min(bombs.length - 1, row + 1); r++)
+		{
+			for(int c = Math.max(0, column - 1); c <= Math.min(bombs.length - 1, column + 1); c++)
+			{
+				if((r != row || c != column) && bombs[r][c])
+					count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return file of 0s and 1s holding the bombs, written on the first call for the size and density
+	 */
+	private static File textBoard(int size, double density, boolean[][] bombs) throws IOException
+	{
+		String key = "text" + size + "_" + density;
+		File file = files.get(key);
+		if(file != null)
+			return file;
+		file = File.createTempFile("board" + size, ".txt");
+		Writer writer = new BufferedWriter(new FileWriter(file));
+		try
+		{
+			StringBuilder line = new StringBuilder(2 * size);
+			for(boolean[] row : bombs)
+			{
+				line.setLength(0);
+				for(int column = 0; column < size; column++)
+					line.append(column == 0 ? "" : " ").append(row[column] ? '1' : '0');
+				writer.write(line.append('\n').toString());
+			}
+		}
+		finally
+		{
+			writer.close();
+		}
+		files.put(key, file);
+		return file;
+	}
+
+	private static void shuffle(int[] values, Random random)
+	{
+		for(int i = values.length - 1; i > 0; i--)
+		{
+			int j = random.nextInt(i + 1);
+			int value = values[i];
+			values[i] = values[j];
+			values[j] = value;
+		}
+	}
+}
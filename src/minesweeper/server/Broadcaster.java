@@ -0,0 +1,72 @@
+package minesweeper.server;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import minesweeper.board.Board;
+import minesweeper.board.BoardListener;
+import minesweeper.board.ChangeEvent;
+
+/**
+ * Fans the changes of one game's board out to the Subscriptions of the players watching it. It only listens to
+ * the board while somebody watches, and skips the subscription of the player whose operation made the changes,
+ * as that player already gets them in its response.
+ * @author Rishabh
+ *
+ */
+final class Broadcaster implements BoardListener
+{
+	//Subscription of the player whose request the current thread is performing, if that player watches
+	private static final ThreadLocal<Subscription> ACTING = new ThreadLocal<Subscription>();
+
+	private final Board board;
+	private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<Subscription>();
+
+	/**
+	 * @param board of the game
+	 */
+	Broadcaster(Board board)
+	{
+		this.board = board;
+	}
+
+	/**
+	 * Starts pushing the changes of the board to a subscription
+	 */
+	synchronized void add(Subscription subscription)
+	{
+		subscriptions.add(subscription);
+		if(subscriptions.size() == 1)
+			board.addListener(this);
+	}
+
+	/**
+	 * Stops pushing changes to a subscription
+	 */
+	synchronized void remove(Subscription subscription)
+	{
+		if(subscriptions.remove(subscription) && subscriptions.isEmpty())
+			board.removeListener(this);
+	}
+
+	/**
+	 * Marks the current thread as performing a request of the player owning subscription, or of nobody watching
+	 * @param subscription of the player, or null
+	 */
+	static void setActing(Subscription subscription)
+	{
+		if(subscription == null)
+			ACTING.remove();
+		else
+			ACTING.set(subscription);
+	}
+
+	public void squaresChanged(Board board, ChangeEvent event)
+	{
+		Subscription acting = ACTING.get();
+		for(Subscription subscription : subscriptions)
+		{
+			if(subscription != acting)
+				subscription.offer(board, event);
+		}
+	}
+}
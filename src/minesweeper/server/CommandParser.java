@@ -0,0 +1,384 @@
+package minesweeper.server;
+
+/**
+ * Hand-written parser for client messages. It accepts exactly the messages of the grammar
+ *
+ *   MESSAGE :== "look" (SPACE REGION)? | "dig" SPACE INT SPACE INT | "flag" SPACE INT SPACE INT | "deflag" SPACE INT SPACE INT
+ *             | "chord" SPACE INT SPACE INT | "help" | "bye" | "mode" SPACE ("look" | "delta") | "create" SPACE ID (SPACE INT (SPACE INT)?)? | "join" SPACE ID
+ *             | "watch" (SPACE REGION)? | "unwatch" | "stats" | "status"
+ *   REGION :== INT SPACE INT SPACE INT SPACE INT
+ *   INT :== "-"? [0-9]+
+ *   ID :== [A-Za-z0-9_-]{1,64}
+ *
+ * (the grammar MinesweeperServer used to check with String.matches on every line, plus the game, viewport, stats and status commands) and
+ * decodes the arguments in the same pass. A parser is reused from one message to the next and allocates nothing
+ * but the ID of create and join messages, so it can parse straight from the bytes a connection received.
+ * Arguments beyond the range of int saturate to Integer.MIN_VALUE or Integer.MAX_VALUE, which are outside every board.
+ *
+ * A parser is not thread safe, each connection has its own.
+ * @author Rishabh
+ *
+ */
+final class CommandParser
+{
+	static final int INVALID = 0;
+	static final int LOOK = 1;
+	static final int DIG = 2;
+	static final int FLAG = 3;
+	static final int DEFLAG = 4;
+	static final int HELP = 5;
+	static final int BYE = 6;
+	static final int MODE_LOOK = 7;
+	static final int MODE_DELTA = 8;
+	static final int CREATE = 9;
+	static final int JOIN = 10;
+	static final int LOOK_REGION = 11;
+	static final int WATCH = 12;
+	static final int UNWATCH = 13;
+	static final int WATCH_BOARD = 14;
+	static final int STATS = 15;
+	static final int CHORD = 16;
+	static final int STATUS = 17;
+
+	//Longest game ID
+	static final int MAX_ID_LENGTH = 64;
+
+	private static final char[] LOOK_WORD = "look".toCharArray();
+	private static final char[] DIG_WORD = "dig".toCharArray();
+	private static final char[] FLAG_WORD = "flag".toCharArray();
+	private static final char[] DEFLAG_WORD = "deflag".toCharArray();
+	private static final char[] HELP_WORD = "help".toCharArray();
+	private static final char[] BYE_WORD = "bye".toCharArray();
+	private static final char[] MODE_WORD = "mode".toCharArray();
+	private static final char[] DELTA_WORD = "delta".toCharArray();
+	private static final char[] CREATE_WORD = "create".toCharArray();
+	private static final char[] JOIN_WORD = "join".toCharArray();
+	private static final char[] WATCH_WORD = "watch".toCharArray();
+	private static final char[] UNWATCH_WORD = "unwatch".toCharArray();
+	private static final char[] STATS_WORD = "stats".toCharArray();
+	private static final char[] CHORD_WORD = "chord".toCharArray();
+	private static final char[] STATUS_WORD = "status".toCharArray();
+
+	//Message being parsed, either a CharSequence or a range of bytes
+	private CharSequence chars;
+	private byte[] bytes;
+	private int offset;
+	private int length;
+
+	//Position of the next character to parse
+	private int position;
+
+	//Result of the last parse
+	private int type;
+	private int x;
+	private int y;
+	private int x2;
+	private int y2;
+	private String id;
+	private boolean hasSize;
+
+	/**
+	 * Parses a message
+	 * @param input message without its line terminator
+	 * @return type of the message, INVALID if it does not match the grammar
+	 */
+	int parse(CharSequence input)
+	{
+		this.chars = input;
+		this.bytes = null;
+		this.offset = 0;
+		this.length = input.length();
+		return parse();
+	}
+
+	/**
+	 * Parses a message from the bytes a client sent, each byte being one character
+	 * @param input buffer holding the message
+	 * @param offset of the message in input
+	 * @param length of the message, without its line terminator
+	 * @return type of the message, INVALID if it does not match the grammar
+	 */
+	int parse(byte[] input, int offset, int length)
+	{
+		this.chars = null;
+		this.bytes = input;
+		this.offset = offset;
+		this.length = length;
+		return parse();
+	}
+
+	/**
+	 * @return type of the last message parsed
+	 */
+	int getType()
+	{
+		return type;
+	}
+
+	/**
+	 * @return first argument (x) of the last DIG, FLAG, DEFLAG or CHORD message, or the x of the first corner of the last
+	 * 		LOOK_REGION or WATCH message
+	 */
+	int getX()
+	{
+		return x;
+	}
+
+	/**
+	 * @return second argument (y) of the last DIG, FLAG, DEFLAG or CHORD message, or the y of the first corner of the last
+	 * 		LOOK_REGION or WATCH message
+	 */
+	int getY()
+	{
+		return y;
+	}
+
+	/**
+	 * @return x of the second corner of the last LOOK_REGION or WATCH message
+	 */
+	int getX2()
+	{
+		return x2;
+	}
+
+	/**
+	 * @return y of the second corner of the last LOOK_REGION or WATCH message
+	 */
+	int getY2()
+	{
+		return y2;
+	}
+
+	/**
+	 * @return game ID of the last CREATE or JOIN message
+	 */
+	String getId()
+	{
+		return id;
+	}
+
+	/**
+	 * @return true if the last CREATE message gave a board size, which is then getX() columns wide and getY()
+	 * 		rows tall, like the coordinates of moves (getY() being getX() when the message gave a single size, for a square board)
+	 */
+	boolean hasSize()
+	{
+		return hasSize;
+	}
+
+	private int parse()
+	{
+		position = 0;
+		type = parseMessage();
+		chars = null;
+		bytes = null;
+		return type;
+	}
+
+	private int parseMessage()
+	{
+		if(length == 0)
+			return INVALID;
+		switch(charAt(0))
+		{
+		case 'l':
+			if(!word(LOOK_WORD))
+				return INVALID;
+			if(atEnd())
+				return LOOK;
+			return space() && region() ? LOOK_REGION : INVALID;
+		case 'w':
+			if(!word(WATCH_WORD))
+				return INVALID;
+			if(atEnd())
+				return WATCH_BOARD;
+			return space() && region() ? WATCH : INVALID;
+		case 'u':
+			return word(UNWATCH_WORD) && atEnd() ? UNWATCH : INVALID;
+		case 's':
+			if(length > 4 && charAt(4) == 'u')
+				return word(STATUS_WORD) && atEnd() ? STATUS : INVALID;
+			return word(STATS_WORD) && atEnd() ? STATS : INVALID;
+		case 'h':
+			return word(HELP_WORD) && atEnd() ? HELP : INVALID;
+		case 'b':
+			return word(BYE_WORD) && atEnd() ? BYE : INVALID;
+		case 'f':
+			return word(FLAG_WORD) && coordinates() ? FLAG : INVALID;
+		case 'j':
+			return word(JOIN_WORD) && space() && id() && atEnd() ? JOIN : INVALID;
+		case 'c':
+			if(length > 1 && charAt(1) == 'h')
+				return word(CHORD_WORD) && coordinates() ? CHORD : INVALID;
+			if(!word(CREATE_WORD) || !space() || !id())
+				return INVALID;
+			hasSize = !atEnd();
+			if(!hasSize)
+				return CREATE;
+			if(!space())
+				return INVALID;
+			long width = integer();
+			if(width == Long.MIN_VALUE)
+				return INVALID;
+			x = (int) width;
+			y = x;
+			if(atEnd())
+				return CREATE;
+			if(!space())
+				return INVALID;
+			long height = integer();
+			if(height == Long.MIN_VALUE || !atEnd())
+				return INVALID;
+			y = (int) height;
+			return CREATE;
+		case 'm':
+			if(!word(MODE_WORD) || !space())
+				return INVALID;
+			if(word(LOOK_WORD))
+				return atEnd() ? MODE_LOOK : INVALID;
+			return word(DELTA_WORD) && atEnd() ? MODE_DELTA : INVALID;
+		case 'd':
+			if(length > 1 && charAt(1) == 'i')
+				return word(DIG_WORD) && coordinates() ? DIG : INVALID;
+			return word(DEFLAG_WORD) && coordinates() ? DEFLAG : INVALID;
+		default:
+			return INVALID;
+		}
+	}
+
+	/**
+	 * Consumes expected if the message continues with it
+	 * @return true if it did
+	 */
+	private boolean word(char[] expected)
+	{
+		if(length - position < expected.length)
+			return false;
+		for(int i = 0; i < expected.length; i++)
+		{
+			if(charAt(position + i) != expected[i])
+				return false;
+		}
+		position += expected.length;
+		return true;
+	}
+
+	/**
+	 * Consumes SPACE INT SPACE INT up to the end of the message, storing the integers in x and y
+	 * @return true if the rest of the message matched
+	 */
+	private boolean coordinates()
+	{
+		if(!space())
+			return false;
+		long first = integer();
+		if(first == Long.MIN_VALUE || !space())
+			return false;
+		long second = integer();
+		if(second == Long.MIN_VALUE || !atEnd())
+			return false;
+		x = (int) first;
+		y = (int) second;
+		return true;
+	}
+
+	/**
+	 * Consumes INT SPACE INT SPACE INT SPACE INT up to the end of the message, storing the integers in x, y, x2 and y2
+	 * @return true if the rest of the message matched
+	 */
+	private boolean region()
+	{
+		long first = integer();
+		if(first == Long.MIN_VALUE || !space())
+			return false;
+		long second = integer();
+		if(second == Long.MIN_VALUE || !space())
+			return false;
+		long third = integer();
+		if(third == Long.MIN_VALUE || !space())
+			return false;
+		long fourth = integer();
+		if(fourth == Long.MIN_VALUE || !atEnd())
+			return false;
+		x = (int) first;
+		y = (int) second;
+		x2 = (int) third;
+		y2 = (int) fourth;
+		return true;
+	}
+
+	/**
+	 * Consumes an ID, storing it in id
+	 * @return true if there was one
+	 */
+	private boolean id()
+	{
+		int start = position;
+		while(position < length && position - start <= MAX_ID_LENGTH)
+		{
+			char c = charAt(position);
+			if((c < 'a' || c > 'z') && (c < 'A' || c > 'Z') && (c < '0' || c > '9') && c != '_' && c != '-')
+				break;
+			position++;
+		}
+		int idLength = position - start;
+		if(idLength == 0 || idLength > MAX_ID_LENGTH)
+			return false;
+		char[] value = new char[idLength];
+		for(int i = 0; i < idLength; i++)
+			value[i] = charAt(start + i);
+		id = new String(value);
+		return true;
+	}
+
+	/**
+	 * Consumes a single space
+	 * @return true if there was one
+	 */
+	private boolean space()
+	{
+		if(position < length && charAt(position) == ' ')
+		{
+			position++;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Consumes an INT, saturating it to the range of int
+	 * @return value of the INT, or Long.MIN_VALUE if there is none
+	 */
+	private long integer()
+	{
+		boolean negative = position < length && charAt(position) == '-';
+		if(negative)
+			position++;
+		int start = position;
+		long value = 0;
+		while(position < length)
+		{
+			char c = charAt(position);
+			if(c < '0' || c > '9')
+				break;
+			if(value <= Integer.MAX_VALUE)
+				value = value * 10 + (c - '0');
+			position++;
+		}
+		if(position == start)
+			return Long.MIN_VALUE;
+		if(negative)
+			return Math.max(-value, Integer.MIN_VALUE);
+		return Math.min(value, Integer.MAX_VALUE);
+	}
+
+	private boolean atEnd()
+	{
+		return position == length;
+	}
+
+	private char charAt(int i)
+	{
+		return chars != null ? chars.charAt(i) : (char) (bytes[offset + i] & 0xFF);
+	}
+}
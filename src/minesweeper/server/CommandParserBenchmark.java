@@ -0,0 +1,110 @@
+package minesweeper.server;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Compares CommandParser with the regular expression path MinesweeperServer used to take for every message
+ * (String.matches, then split and Integer.parseInt), on a mix of valid and invalid messages.
+ * Each path is timed over ROUNDS passes of the mix after as many warmup passes, and the best pass is reported
+ * in nanoseconds per message, together with the bytes allocated per message where the JVM can tell.
+ *
+ * Usage: CommandParserBenchmark [ROUNDS]
+ * @author Rishabh
+ *
+ */
+public class CommandParserBenchmark
+{
+	private static final String GRAMMAR = "(look)|(dig -?\\d+ -?\\d+)|(flag -?\\d+ -?\\d+)|"
+			+ "(deflag -?\\d+ -?\\d+)|(help)|(bye)|(mode (look|delta))";
+	private static final String[] MESSAGES = {"dig 3 4", "flag 12 7", "deflag 12 7", "look", "dig -1 250",
+			"flag 99 0", "mode delta", "help", "dig 1 2 3", "hello"};
+	private static final int PASS = 10000;
+
+	//Keeps the results alive so the JIT cannot drop the work
+	private static long sink;
+
+	public static void main(String[] args)
+	{
+		int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+		String[] strings = new String[PASS];
+		byte[][] bytes = new byte[PASS][];
+		for(int i = 0; i < PASS; i++)
+		{
+			strings[i] = MESSAGES[i % MESSAGES.length];
+			bytes[i] = strings[i].getBytes();
+		}
+
+		System.out.println("path\tmessages\tns_per_message\tbytes_per_message");
+		for(int path = 0; path < 3; path++)
+		{
+			long best = Long.MAX_VALUE;
+			long allocated = 0;
+			for(int round = 0; round < 2 * rounds; round++)
+			{
+				long bytesBefore = allocatedBytes();
+				long start = System.nanoTime();
+				sink += path == 0 ? regex(strings) : path == 1 ? parser(strings) : parser(bytes);
+				long elapsed = System.nanoTime() - start;
+				long bytesAfter = allocatedBytes();
+				if(round >= rounds)
+				{
+					best = Math.min(best, elapsed);
+					allocated = bytesAfter - bytesBefore;
+				}
+			}
+			String name = path == 0 ? "regex" : path == 1 ? "parser_string" : "parser_bytes";
+			System.out.println(name + "\t" + PASS + "\t" + String.format("%.1f", (double) best / PASS) + "\t"
+					+ (allocatedBytes() < 0 ? "n/a" : String.format("%.1f", (double) allocated / PASS)));
+		}
+		if(sink == 42)
+			System.out.println();
+	}
+
+	/**
+	 * Handles messages like MinesweeperServer did before CommandParser
+	 */
+	private static long regex(String[] messages)
+	{
+		long sum = 0;
+		for(String message : messages)
+		{
+			if(!message.matches(GRAMMAR))
+				continue;
+			String[] tokens = message.split(" ");
+			sum += tokens[0].length();
+			if(tokens[0].equals("dig") || tokens[0].equals("flag") || tokens[0].equals("deflag"))
+				sum += Integer.parseInt(tokens[1]) + Integer.parseInt(tokens[2]);
+		}
+		return sum;
+	}
+
+	private static long parser(String[] messages)
+	{
+		CommandParser parser = new CommandParser();
+		long sum = 0;
+		for(String message : messages)
+			sum += parser.parse(message) + parser.getX() + parser.getY();
+		return sum;
+	}
+
+	private static long parser(byte[][] messages)
+	{
+		CommandParser parser = new CommandParser();
+		long sum = 0;
+		for(byte[] message : messages)
+			sum += parser.parse(message, 0, message.length) + parser.getX() + parser.getY();
+		return sum;
+	}
+
+	/**
+	 * @return bytes allocated so far by the current thread, or a negative number if the JVM cannot tell
+	 */
+	private static long allocatedBytes()
+	{
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if(threads instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		return -1;
+	}
+}
@@ -0,0 +1,131 @@
+package minesweeper.server;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CommandParserTest
+{
+	/**
+	 * CommandParser must accept exactly the messages matched by the regular expression MinesweeperServer used to check,
+	 * and decode the same arguments Integer.parseInt does whenever they fit in an int.
+	 */
+	private static final String GRAMMAR = "(look( -?\\d+ -?\\d+ -?\\d+ -?\\d+)?)|(dig -?\\d+ -?\\d+)|(flag -?\\d+ -?\\d+)|"
+			+ "(deflag -?\\d+ -?\\d+)|(help)|(bye)|(mode (look|delta))|(create [A-Za-z0-9_-]{1,64}( -?\\d+){0,2})|(join [A-Za-z0-9_-]{1,64})"
+			+ "|(watch( -?\\d+ -?\\d+ -?\\d+ -?\\d+)?)|(unwatch)|(stats)|(chord -?\\d+ -?\\d+)|(status)";
+	private static final String[] PIECES = {"look", "dig", "flag", "deflag", "help", "bye", "mode", "delta",
+			" ", " ", " ", "-", "0", "7", "42", "2147483647", "2147483648", "99999999999", "\t", "\r", "L", "x", "", "d", "de",
+			"create", "join", "game_1", "Z-", "ab", "/", "0123456789012345678901234567890123456789",
+			"watch", "unwatch", "un", "look 1 2 3", "watch 0 0 9", "stats", "st", "chord", "ch", "c", "status", "statu"};
+
+	//Hand-picked messages on both sides of the grammar
+	@Test
+	public void knownMessagesTest()
+	{
+		String[] messages = {"look", "help", "bye", "mode look", "mode delta", "dig 1 2", "flag -3 04", "deflag 0 -0",
+				"", " ", "look ", " look", "Look", "lookk", "loo", "dig", "dig ", "dig 1", "dig 1 ", "dig 1 2 ", "dig  1 2",
+				"dig 1  2", "dig - 2", "dig 1 -", "dig --1 2", "dig 1-2", "dig +1 2", "dig 1.0 2", "di 1 2", "digg 1 2",
+				"deflag", "defla 1 2", "flag 1 2 3", "mode", "mode ", "mode LOOK", "mode deltas", "mode  look", "bye\r",
+				"dig \u0661 2", "dig 1 2\n", "create a", "create a 5", "create a -5", "create a 5 6", "create a 5 6 7", "create a 5 -6", "create a 5 ", "create a 5  6", "create", "create ", "create a ",
+				"create \u00e9", "join a", "join", "join ", "join a b", "join a 5", "jo a", "create a_b-C9", "join .",
+				"join 0123456789012345678901234567890123456789012345678901234567890123",
+				"join 01234567890123456789012345678901234567890123456789012345678901234", "look 1 2 3 4", "look -1 2 -3 04",
+				"look 1 2 3", "look 1 2 3 4 ", "look 1 2 3 4 5", "look  1 2 3 4", "watch 1 2 3 4", "watch", "watch ", "watchx", "watch 1 2 3",
+				"unwatch", "unwatch 1", "unwatc", "Unwatch", "watch 1 2 3 4x", "stats", "stats ", "stat", "statsx",
+				"chord 1 2", "chord -1 02", "chord 1", "chord", "chor 1 2", "chords 1 2", "c 1 2", "ch",
+				"status", "status ", "statusx", "statu", "statsu", "stAtus"};
+		for(String message : messages)
+			assertSameAsGrammar(message);
+	}
+
+	//Coordinates beyond the range of int saturate instead of failing
+	@Test
+	public void overflowTest()
+	{
+		CommandParser parser = new CommandParser();
+		assertEquals(CommandParser.DIG, parser.parse("dig 2147483647 -2147483648"));
+		assertEquals(Integer.MAX_VALUE, parser.getX());
+		assertEquals(Integer.MIN_VALUE, parser.getY());
+		assertEquals(CommandParser.FLAG, parser.parse("flag 2147483648 -99999999999999999999999"));
+		assertEquals(Integer.MAX_VALUE, parser.getX());
+		assertEquals(Integer.MIN_VALUE, parser.getY());
+		assertEquals(CommandParser.DEFLAG, parser.parse("deflag 000000000000000000000012 -0000000000000000000003"));
+		assertEquals(12, parser.getX());
+		assertEquals(-3, parser.getY());
+		assertEquals(CommandParser.CREATE, parser.parse("create g 99999999999 7"));
+		assertEquals(Integer.MAX_VALUE, parser.getX());
+		assertEquals(7, parser.getY());
+		assertEquals(CommandParser.CREATE, parser.parse("create g 12"));
+		assertEquals(12, parser.getX());
+		assertEquals(12, parser.getY());
+	}
+
+	//Random concatenations of grammar pieces, parsed from Strings and from bytes
+	@Test
+	public void randomMessagesTest()
+	{
+		Random rand = new Random(8);
+		for(int k = 0; k < 200000; k++)
+		{
+			StringBuilder message = new StringBuilder();
+			int pieces = 1 + rand.nextInt(5);
+			for(int i = 0; i < pieces; i++)
+				message.append(PIECES[rand.nextInt(PIECES.length)]);
+			assertSameAsGrammar(message.toString());
+		}
+	}
+
+	private static void assertSameAsGrammar(String message)
+	{
+		CommandParser parser = new CommandParser();
+		int type = parser.parse(message);
+		assertEquals(message, message.matches(GRAMMAR), type != CommandParser.INVALID);
+
+		byte[] bytes = ("xx" + message).getBytes();
+		CommandParser byteParser = new CommandParser();
+		assertEquals(message, type, byteParser.parse(bytes, 2, bytes.length - 2));
+		if(type == CommandParser.DIG || type == CommandParser.FLAG || type == CommandParser.DEFLAG || type == CommandParser.CHORD)
+		{
+			String[] tokens = message.split(" ");
+			assertEquals(saturate(tokens[1]), parser.getX());
+			assertEquals(saturate(tokens[2]), parser.getY());
+			assertEquals(parser.getX(), byteParser.getX());
+			assertEquals(parser.getY(), byteParser.getY());
+		}
+		if(type == CommandParser.LOOK_REGION || type == CommandParser.WATCH)
+		{
+			String[] tokens = message.split(" ");
+			assertEquals(saturate(tokens[1]), parser.getX());
+			assertEquals(saturate(tokens[2]), parser.getY());
+			assertEquals(saturate(tokens[3]), parser.getX2());
+			assertEquals(saturate(tokens[4]), parser.getY2());
+			assertEquals(parser.getY2(), byteParser.getY2());
+		}
+		if(type == CommandParser.CREATE || type == CommandParser.JOIN)
+		{
+			String[] tokens = message.split(" ");
+			assertEquals(tokens[1], parser.getId());
+			assertEquals(tokens[1], byteParser.getId());
+			assertEquals(tokens.length >= 3, parser.hasSize());
+			if(parser.hasSize())
+			{
+				assertEquals(saturate(tokens[2]), parser.getX());
+				assertEquals(saturate(tokens[tokens.length - 1]), parser.getY());
+			}
+		}
+	}
+
+	private static int saturate(String token)
+	{
+		try
+		{
+			return Integer.parseInt(token);
+		}
+		catch(NumberFormatException e)
+		{
+			return token.startsWith("-") ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+		}
+	}
+}
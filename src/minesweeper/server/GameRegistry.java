@@ -0,0 +1,297 @@
+package minesweeper.server;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import minesweeper.board.Board;
+import minesweeper.board.BoardPool;
+
+/**
+ * The games hosted by a MinesweeperServer, each an independent Board known by an ID.
+ *
+ * Players join a game and play on its board until they join another one or disconnect. A game nobody has played
+ * for idleTimeout is evicted, and so is the least recently joined game without players when creating a game would
+ * exceed maxGames games or maxSquares squares in total, so the memory used by boards stays bounded whatever
+ * clients do. Lazy boards, which only store the squares players touched, are left out of the squares. Games with players are never evicted, and neither are pinned games (the game the server starts with).
+ *
+ * The registry is only locked to create, join, leave and evict games; operations on a board go straight to
+ * the Board, which does its own locking.
+ *
+ * Rep invariant- 	games is in least recently joined first order
+ * 					squares == sum of rows * columns over games whose boards are not lazy
+ * 					games.size() <= maxGames and squares <= maxSquares, except for pinned games
+ * @author Rishabh
+ *
+ */
+class GameRegistry
+{
+	//Largest board a client may create
+	static final int MAX_SIZE = 1000;
+
+	private final LinkedHashMap<String, Game> games = new LinkedHashMap<String, Game>(16, 0.75f, true);
+	private final int maxGames;
+	private final long maxSquares;
+	private final long idleTimeoutNanos;
+	private final boolean concurrent;
+	//Boards that can be solved without guessing, given to created games of their size, null if there are none
+	private final BoardPool pool;
+	//True to make the first dig of created games safe, see Board.setFirstDigSafe. Boards from the pool are
+	//left alone, moving their bombs would break their solution.
+	private final boolean safeFirstDig;
+	private long squares;
+
+	/**
+	 * @param maxGames largest number of games hosted at once, > 0
+	 * @param maxSquares largest number of squares of all boards together, > 0
+	 * @param idleTimeoutMillis time after which a game without players is evicted, >= 0
+	 * @param concurrent true to create boards letting players on far apart rows play in parallel
+	 */
+	GameRegistry(int maxGames, long maxSquares, long idleTimeoutMillis, boolean concurrent)
+	{
+		this(maxGames, maxSquares, idleTimeoutMillis, concurrent, null, false);
+	}
+
+	/**
+	 * @param pool of boards given to the created games of the pool's rows and columns when it has some, or null
+	 * @param safeFirstDig true to move the bombs around the first square dug on created games away
+	 */
+	GameRegistry(int maxGames, long maxSquares, long idleTimeoutMillis, boolean concurrent, BoardPool pool, boolean safeFirstDig)
+	{
+		this.maxGames = maxGames;
+		this.maxSquares = maxSquares;
+		this.idleTimeoutNanos = idleTimeoutMillis * 1000000L;
+		this.concurrent = concurrent;
+		this.pool = pool;
+		this.safeFirstDig = safeFirstDig;
+	}
+
+	/**
+	 * Hosts board as a game that is never evicted
+	 * @param id of the game, not already hosted
+	 * @return the game
+	 */
+	synchronized Game pin(String id, Board board)
+	{
+		return pin(id, board, null);
+	}
+
+	/**
+	 * Hosts board as a game that is never evicted
+	 * @param id of the game, not already hosted
+	 * @param pool the board was taken from, telling the square to dig first, or null
+	 * @return the game
+	 */
+	synchronized Game pin(String id, Board board, BoardPool pool)
+	{
+		if(games.containsKey(id))
+			throw new IllegalArgumentException("game " + id + " already exists");
+		Game game = new Game(id, board, true, pool);
+		games.put(id, game);
+		squares += game.squares;
+		return game;
+	}
+
+	/**
+	 * Creates a game with a random square board, like create(id, size, size, current)
+	 * @param size of the board, 1 <= size <= MAX_SIZE
+	 */
+	Game create(String id, int size, Game current)
+	{
+		return create(id, size, size, current);
+	}
+
+	/**
+	 * Creates a game with a random board, taken from the pool if it has one of that shape, and moves a player to
+	 * it, evicting games without players if needed to make room for it
+	 * @param id of the game
+	 * @param rows of the board, 1 <= rows <= MAX_SIZE
+	 * @param columns of the board, 1 <= columns <= MAX_SIZE
+	 * @param current game the player is in, or null
+	 * @return the game created
+	 * @throws IllegalArgumentException if a game id already exists or the size is out of range
+	 * @throws IllegalStateException if there is no room for the game
+	 */
+	synchronized Game create(String id, int rows, int columns, Game current)
+	{
+		if(rows < 1 || rows > MAX_SIZE || columns < 1 || columns > MAX_SIZE)
+			throw new IllegalArgumentException("size must be between 1 and " + MAX_SIZE);
+		evictIdle();
+		if(games.containsKey(id))
+			throw new IllegalArgumentException("game " + id + " already exists");
+		long needed = (long) rows * columns;
+		Iterator<Game> eldest = games.values().iterator();
+		while(games.size() >= maxGames || squares + needed > maxSquares)
+		{
+			Game evictable = nextEvictable(eldest);
+			if(evictable == null)
+				throw new IllegalStateException("too many games");
+			evict(eldest, evictable);
+		}
+		Board board = pool != null && pool.getRows() == rows && pool.getColumns() == columns ? pool.poll() : null;
+		Game game;
+		if(board != null)
+			game = new Game(id, board, false, pool);
+		else
+		{
+			board = new Board(rows, columns, concurrent);
+			board.setFirstDigSafe(safeFirstDig);
+			game = new Game(id, board, false, null);
+		}
+		games.put(id, game);
+		squares += game.squares;
+		return join(id, current);
+	}
+
+	/**
+	 * Moves a player to a game
+	 * @param id of the game to join
+	 * @param current game the player is in, or null
+	 * @return the game joined, or null if there is no game id (the player then stays in current)
+	 */
+	synchronized Game join(String id, Game current)
+	{
+		Game game = games.get(id);
+		if(game == null)
+			return null;
+		game.players++;
+		if(current != null)
+			leave(current);
+		return game;
+	}
+
+	/**
+	 * Removes a player from a game it joined
+	 */
+	synchronized void leave(Game game)
+	{
+		game.players--;
+		if(game.players == 0)
+			game.idleSince = System.nanoTime();
+	}
+
+	/**
+	 * Evicts every game that has had no players for longer than the idle timeout
+	 * @return number of games evicted
+	 */
+	synchronized int evictIdle()
+	{
+		long now = System.nanoTime();
+		int evicted = 0;
+		Iterator<Game> it = games.values().iterator();
+		for(Game game = nextEvictable(it); game != null; game = nextEvictable(it))
+		{
+			if(now - game.idleSince >= idleTimeoutNanos)
+			{
+				evict(it, game);
+				evicted++;
+			}
+		}
+		return evicted;
+	}
+
+	/**
+	 * Advances it to the next game without players that is not pinned
+	 * @return that game, or null if there is none
+	 */
+	private Game nextEvictable(Iterator<Game> it)
+	{
+		while(it.hasNext())
+		{
+			Game game = it.next();
+			if(game.players == 0 && !game.pinned)
+				return game;
+		}
+		return null;
+	}
+
+	/**
+	 * Evicts game, the game it returned last
+	 */
+	private void evict(Iterator<Game> it, Game game)
+	{
+		it.remove();
+		squares -= game.squares;
+	}
+
+	/**
+	 * @return number of games hosted
+	 */
+	synchronized int size()
+	{
+		return games.size();
+	}
+
+	/**
+	 * @return number of squares of all boards hosted that are not lazy
+	 */
+	synchronized long getSquares()
+	{
+		return squares;
+	}
+
+	/**
+	 * A hosted game. Its players count is guarded by the registry.
+	 */
+	static final class Game
+	{
+		private final String id;
+		private final Board board;
+		private final Broadcaster broadcaster;
+		//Number of squares of the board charged against maxSquares, 0 for a lazy board
+		private final long squares;
+		private final boolean pinned;
+		//Square the board can be solved from without guessing, -1 if it was not taken from a pool
+		private final int firstRow;
+		private final int firstColumn;
+		//Set once the win of the board has been counted
+		private final AtomicBoolean completed = new AtomicBoolean();
+		private int players;
+		private long idleSince = System.nanoTime();
+
+		private Game(String id, Board board, boolean pinned, BoardPool pool)
+		{
+			this.firstRow = pool != null ? pool.getRow() : -1;
+			this.firstColumn = pool != null ? pool.getColumn() : -1;
+			this.id = id;
+			this.board = board;
+			// a won game is over, its board stays as it was won
+			board.setEndsWhenWon(true);
+			this.broadcaster = new Broadcaster(board);
+			this.squares = board.isLazy() ? 0 : (long) board.getRows() * board.getColumns();
+			this.pinned = pinned;
+		}
+
+		String getId()
+		{
+			return id;
+		}
+
+		Board getBoard()
+		{
+			return board;
+		}
+
+		Broadcaster getBroadcaster()
+		{
+			return broadcaster;
+		}
+
+		/**
+		 * @return the dig request of the square the board can be solved from without guessing, "dig X Y", or
+		 * 		null if the board was not taken from a pool
+		 */
+		String getFirstDig()
+		{
+			return firstRow < 0 ? null : "dig " + firstColumn + " " + firstRow;
+		}
+
+		/**
+		 * @return true the first time it is called after the board is won, false otherwise
+		 */
+		boolean completed()
+		{
+			return board.isWon() && !completed.get() && completed.compareAndSet(false, true);
+		}
+	}
+}
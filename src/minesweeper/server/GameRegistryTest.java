@@ -0,0 +1,156 @@
+package minesweeper.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import minesweeper.board.Board;
+import minesweeper.board.BoardGenerator;
+import minesweeper.board.BoardPool;
+
+public class GameRegistryTest
+{
+	//Games are independent boards, and players move between them
+	@Test
+	public void createJoinTest()
+	{
+		GameRegistry games = new GameRegistry(10, 1000, 60000, false);
+		GameRegistry.Game lobby = games.pin("lobby", new Board(5));
+		GameRegistry.Game current = games.join("lobby", null);
+		assertSame(lobby, current);
+
+		GameRegistry.Game created = games.create("g1", 4, current);
+		assertEquals("g1", created.getId());
+		assertEquals(4, created.getBoard().getRows());
+		assertEquals(4, created.getBoard().getColumns());
+		assertSame(created, games.join("g1", null));
+		assertNull(games.join("g2", created));
+		assertEquals(2, games.size());
+		assertEquals(41, games.getSquares());
+	}
+
+	//Games created with the size of the pool's boards get one of them while it has some, with a safe first dig
+	@Test
+	public void poolTest() throws InterruptedException
+	{
+		BoardPool pool = new BoardPool(8, 8, 6, 1, 3, false);
+		try
+		{
+			while(pool.size() == 0)
+				Thread.sleep(1);
+			GameRegistry games = new GameRegistry(10, 1000, 60000, false, pool, true);
+			GameRegistry.Game game = games.create("g1", 8, null);
+			Board board = game.getBoard();
+			//Moving the bombs of a pool board would break its solution
+			assertFalse(board.isFirstDigSafe());
+			assertEquals("dig 4 4", game.getFirstDig());
+			board.dig(pool.getRow(), pool.getColumn());
+			assertEquals(' ', board.look().charAt(2 * (pool.getRow() * 8 + pool.getColumn())));
+			assertEquals(5, games.create("g2", 5, null).getBoard().getRows());
+			GameRegistry.Game other = games.create("g3", 5, null);
+			assertTrue(other.getBoard().isFirstDigSafe());
+			assertNull(other.getFirstDig());
+		}
+		finally
+		{
+			pool.close();
+		}
+	}
+
+	//A pool of rectangular boards is used by games created with its rows and columns, in that order
+	@Test
+	public void rectangularPoolTest() throws InterruptedException
+	{
+		BoardPool pool = new BoardPool(6, 9, 6, 1, 3, false);
+		try
+		{
+			while(pool.size() == 0)
+				Thread.sleep(1);
+			GameRegistry games = new GameRegistry(10, 1000, 60000, false, pool, false);
+			GameRegistry.Game transposed = games.create("g1", 9, 6, null);
+			assertNull(transposed.getFirstDig());
+			assertEquals(9, transposed.getBoard().getRows());
+			assertEquals(6, transposed.getBoard().getColumns());
+			GameRegistry.Game game = games.create("g2", 6, 9, null);
+			assertEquals("dig " + pool.getColumn() + " " + pool.getRow(), game.getFirstDig());
+			assertEquals(9, game.getBoard().getColumns());
+		}
+		finally
+		{
+			pool.close();
+		}
+	}
+
+	//Creating a game that exists, or is too large, fails without changing anything
+	@Test(expected = IllegalArgumentException.class)
+	public void duplicateTest()
+	{
+		GameRegistry games = new GameRegistry(10, 1000, 60000, false);
+		games.create("g", 3, null);
+		games.create("g", 3, null);
+	}
+
+	//When full, the least recently joined game without players is evicted, and games with players never are
+	@Test
+	public void boundedTest()
+	{
+		GameRegistry games = new GameRegistry(3, 1000, 60000, false);
+		games.pin("lobby", new Board(10));
+		GameRegistry.Game first = games.create("first", 10, null);
+		games.create("second", 10, null);
+		games.leave(first);
+		games.create("third", 10, null);
+		assertNull(games.join("first", null));
+		assertEquals(3, games.size());
+		assertEquals(300, games.getSquares());
+
+		//lobby is pinned and the others have players
+		try
+		{
+			games.create("fourth", 1, null);
+			throw new AssertionError("created a game beyond the bounds");
+		}
+		catch(IllegalStateException e)
+		{
+			assertEquals("too many games", e.getMessage());
+		}
+		assertEquals(3, games.size());
+	}
+
+	//A lazy board only stores the squares played, so its size does not use up the squares of created games
+	@Test
+	public void lazyTest()
+	{
+		GameRegistry games = new GameRegistry(10, 1000, 60000, false);
+		games.pin("huge", new BoardGenerator(1).generateLazy(100000, 0.1, false));
+		assertEquals(0, games.getSquares());
+		assertEquals(5, games.create("g", 5, null).getBoard().getRows());
+		assertEquals(25, games.getSquares());
+	}
+
+	//Games without players are evicted once idle, the pinned game never is
+	@Test
+	public void idleTest()throws InterruptedException
+	{
+		GameRegistry games = new GameRegistry(10, 1000, 50, false);
+		games.pin("lobby", new Board(3));
+		GameRegistry.Game idle = games.create("idle", 3, null);
+		GameRegistry.Game busy = games.create("busy", 3, null);
+		games.leave(idle);
+		assertEquals(0, games.evictIdle());
+		Thread.sleep(100);
+		assertEquals(1, games.evictIdle());
+		assertNull(games.join("idle", null));
+		assertNotNull(games.join("lobby", busy));
+		assertEquals(0, games.evictIdle());
+		Thread.sleep(100);
+		assertEquals(1, games.evictIdle());
+		assertNotNull(games.join("lobby", null));
+		assertEquals(1, games.size());
+	}
+}
@@ -4,22 +4,40 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Queue;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import minesweeper.board.Batch;
 import minesweeper.board.Board;
+import minesweeper.board.BoardGenerator;
+import minesweeper.board.BoardJournal;
+import minesweeper.board.BoardPool;
+import minesweeper.board.Viewport;
 
 /**
- * The following class uses different threads for different players playing the same game of Minesweeper
- * However, all of the different threads share the same Board object.
- * This means that if all the methods on board that look into it or modify its parameters are synchronized (which is the case),
- * two threads would never operate on it together.
+ * The following class uses different threads for different players playing games of Minesweeper
+ * Every player starts in the game the server was started with, and may create or join other games hosted by the
+ * same server (see GameRegistry). All of the threads of players in the same game share the same Board object.
+ * Board does its own locking: by default two threads never operate on it together, and with --concurrent only
+ * threads operating on far apart rows of the board do.
  * Also, a static AtomicInteger() for counting number of players has been included which removes concurrency issues related to
  * modifying (incrementing and decrementing)
  * Thus even though concurrency is reduced, the data type is threadsafe.
@@ -29,22 +47,60 @@ import minesweeper.board.Board;
 
 public class MinesweeperServer {
     private final ServerSocket serverSocket;
+    /**
+     * Channel of serverSocket if the server uses the NIO engine, else null.
+     */
+    private final ServerSocketChannel serverChannel;
     /**
      * True if the server should _not_ disconnect a client after a BOOM message.
      */
     private final boolean debug;
     //single instance of number of players
     private static AtomicInteger countPlayers = new AtomicInteger();
-    //single instance of Board
-    private static Board board; 
+    //measurements of the server, answered to 'stats' and published through JMX
+    private static final ServerStats stats = new ServerStats(countPlayers);
+    //ID of the game the server starts with, which every player joins on connecting
+    static final String DEFAULT_GAME = "default";
+    //size of the boards created without a size
+    private static final int DEFAULT_SIZE = 10;
+    //most pipelined moves performed under one acquisition of the board, so one client cannot hold it for long
+    static final int MAX_BATCH = 64;
+    //most characters of a waiting line the thread engine looks through for its end, see hasLine
+    private static final int MAX_PEEK = 1024;
+    //share of bombs of the boards that can be solved without guessing, and how many of them are kept ready
+    private static final double NO_GUESS_DENSITY = 0.15;
+    private static final int NO_GUESS_POOL = 16;
+    //milliseconds between checks whether the journal of the default game needs a snapshot
+    private static final long SNAPSHOT_CHECK_PERIOD = 10000L;
+    //single instance of the games hosted
+    private static GameRegistry games; 
 
     /**
-     * Make a MinesweeperServer that listens for connections on port.
+     * Make a MinesweeperServer that listens for connections on port, with one thread per connection.
      * 
      * @param port port number, requires 0 <= port <= 65535
      */
     public MinesweeperServer(int port, boolean debug) throws IOException {
-        serverSocket = new ServerSocket(port);
+        this(port, debug, false);
+    }
+
+    /**
+     * Make a MinesweeperServer that listens for connections on port.
+     * 
+     * @param port port number, requires 0 <= port <= 65535
+     * @param nio true to serve every connection from a few selector threads (see NioEngine),
+     *            false to start a thread per connection
+     */
+    public MinesweeperServer(int port, boolean debug, boolean nio) throws IOException {
+        if (nio) {
+            serverChannel = ServerSocketChannel.open();
+            serverSocket = serverChannel.socket();
+            serverSocket.setReuseAddress(true);
+            serverSocket.bind(new InetSocketAddress(port));
+        } else {
+            serverChannel = null;
+            serverSocket = new ServerSocket(port);
+        }
         this.debug = debug;
     }
 
@@ -57,7 +113,11 @@ public class MinesweeperServer {
      */    
     public void serve() throws IOException 
     { 
-    	 //ServerSocket serverSocket = new ServerSocket(PORT); 
+    	 if (serverChannel != null) 
+    	 {
+    		 new NioEngine(this, serverChannel, Runtime.getRuntime().availableProcessors()).serve();
+    		 return;
+    	 }
     	 
     	 while (true) 
     	 { 
@@ -84,7 +144,6 @@ public class MinesweeperServer {
     	                try 
     	                {
 							socket.close();
-							countPlayers.decrementAndGet();
 						} 
     	                catch (IOException e) 
 						{
@@ -107,20 +166,38 @@ public class MinesweeperServer {
     private void handleConnection(Socket socket) throws IOException 
     {
         BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
-        countPlayers.incrementAndGet();
-        out.println("Welcome to Minesweeper. " + countPlayers.intValue() + "people are playing including you. Type 'help' for help.");
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), false);
+        final Pusher pusher = new Pusher(out);
+        Session session = new Session(new Runnable() 
+        {
+            public void run() 
+            {
+                pusher.wake();
+            }
+        });
+        pusher.session = session;
+        out.println(welcome(session));
+        out.flush();
 
+        List<String> responses = new ArrayList<String>();
         try {
             for (String line = in.readLine(); line != null; line = in.readLine()) {
-                String output = handleRequest(line);
-                if (output != null) {
+                // lines the client already sent are handled together, and their responses sent with one flush
+                boolean ends = pipelineRequest(line, session, responses);
+                boolean more = !ends && hasLine(in);
+                if (!ends && !more) {
+                    ends = flushRequests(session, responses);
+                }
+                for (String output : responses) {
                     out.println(output);
                 }
-                if(output.equals("bye") || (output.equals("BOOM!" + '\n') && !debug))
+                responses.clear();
+                if(ends)
                 {
-                	socket.close();
-                	countPlayers.decrementAndGet();
+                	break;
+                }
+                if (!more) {
+                    out.flush();
                 }
             }
         } 
@@ -129,88 +206,499 @@ public class MinesweeperServer {
         	out.println();
         }
         finally {
+            goodbye(session);
+            pusher.stop();
             out.close();
             in.close();
         }
     }
 
+    /**
+     * Tells whether a whole line has arrived already, so reading it does not block. in.ready() alone is also true
+     * when only the start of the next line has arrived, and a client waiting for the responses to the lines before
+     * it to finish that line would then never get them. Looks at MAX_PEEK characters at most, beyond which the
+     * line is handled as if it had not arrived yet.
+     * 
+     * @param in reader of the connection, positioned at the start of a line
+     * @return true if a line terminator is among the characters that can be read without blocking
+     */
+    private static boolean hasLine(BufferedReader in) throws IOException 
+    {
+        in.mark(MAX_PEEK);
+        try 
+        {
+            for (int k = 0; k < MAX_PEEK && in.ready(); k++) 
+            {
+                int c = in.read();
+                if (c == '\n' || c == '\r') 
+                {
+                    return true;
+                }
+            }
+            return false;
+        } 
+        finally 
+        {
+            in.reset();
+        }
+    }
+
+    /**
+     * Counts a new player in and puts it in the default game. Called once per connection, whatever engine serves it.
+     * 
+     * @param session state of the player's connection
+     * @return welcome message for the player
+     */
+    String welcome(Session session)
+    {
+        session.setGame(games.join(DEFAULT_GAME, null));
+        countPlayers.incrementAndGet();
+        stats.connected();
+        String firstDig = session.getGame().getFirstDig();
+        return "Welcome to Minesweeper. " + countPlayers.intValue() + "people are playing including you. Type 'help' for help."
+                + (firstDig != null ? " Send '" + firstDig + "' first to solve the board without guessing." : "");
+    }
+
+    /**
+     * Counts a player out of the server and its game. Called once when a connection counted in by welcome() is closed.
+     * 
+     * @param session state of the player's connection
+     */
+    void goodbye(Session session)
+    {
+        unwatch(session);
+        games.leave(session.getGame());
+        countPlayers.decrementAndGet();
+    }
+
+    /**
+     * @param output response of handleRequest, possibly null
+     * @return true if the connection has to be closed after sending output
+     */
+    boolean endsConnection(String output)
+    {
+        return output != null && (output.equals("bye") || (output.startsWith("BOOM!" + '\n') && !debug));
+    }
+
     /**
      * Handler for client input, performing requested operations and returning an output message.
      * 
+     * A client may send "mode delta" (usually right after connecting) so that dig, flag and deflag answer
+     * with only the squares that changed, as a DELTA message of "ROW COLUMN VAL" lines, instead of the
+     * whole board. "mode look" switches back, and "look" always returns a full snapshot of the board.
+     * 
+     * "look X1 Y1 X2 Y2" returns a snapshot of the rectangle between the squares (X1, Y1) and (X2, Y2) only,
+     * cut to the board. "watch X1 Y1 X2 Y2" subscribes the client to that rectangle: it is answered like the
+     * region look, and from then on "look" and the LOOK responses to dig, flag and deflag render only the
+     * rectangle, and DELTA responses only list its squares. "unwatch" goes back to the whole board.
+     * 
+     * A watching client is also pushed the changes other players make to its rectangle, or to the whole board
+     * after "watch" without a rectangle (which is answered like "look"). Pushes are "UPDATE N" messages of
+     * "ROW COLUMN VAL" lines, sent between responses, coalesced while the client is slow to read them, and
+     * replaced by a "RESYNC" message, asking the client to look again, if too many squares changed meanwhile
+     * (see Subscription). "unwatch" stops them.
+     * 
+     * "create ID [X [Y]]" creates a game with a random board X squares wide and Y squares tall, like --size X,Y
+     * (X*X with a single size, 10*10 by default), and moves the client to it, "join ID" moves the client to an
+     * existing game. Both answer "created ID" or "joined ID", or a message saying why they failed. With
+     * --no-guess, a game created with a board of the pool answers "created ID, dig X Y first" with the square to
+     * dig first to solve it without guessing, which the welcome message also tells about the default game. The other commands act on the board of the client's game.
+     * 
+     * "stats" returns measurements of the server, one per line: connections, how long operations wait for and
+     * hold the locks of the boards, flood fill sizes, response sizes, and latencies of each kind of command,
+     * and how long won games took from their first to their last dig (see ServerStats, which JMX clients can
+     * read as minesweeper:type=ServerStats).
+     * 
+     * "status" tells whether the game of the client is won, and how many squares are left to dig, bombs, flags
+     * and dug squares it has, in a time that does not depend on the size of its board once the bombs of a lazy
+     * board have been counted (see Board.status()).
+     * 
+     * A won game is over: its board no longer changes, and digs, flags, deflags and chords on it are answered with
+     * Board.GAME_OVER, telling the player to create or join another game, however the lines were pipelined (see
+     * Board.setEndsWhenWon). The move that wins it is answered as usual.
+     * 
+     * Clients may send many lines without waiting for their responses. The engines then handle the lines
+     * that arrived together through pipelineRequest, which runs consecutive digs, flags and deflags with one
+     * acquisition of the board, and send all of their responses, in order, with a single write.
+     * 
+     * Coordinates too large for an int are treated as Integer.MIN_VALUE or Integer.MAX_VALUE, so like any
+     * other coordinate outside the board they leave it unchanged.
+     * 
      * @param input message from client
+     * @param session state of the client's connection
      * @return message to client
      */
-    private String handleRequest(String input) 
+    String handleRequest(String input, Session session) 
+    {
+        CommandParser parser = session.getParser();
+        parser.parse(input);
+        return execute(parser, session);
+    }
+
+    /**
+     * Handler for a line the client sent along with more lines it has not waited for the responses of. Digs,
+     * flags, deflags and chords are held back until flushRequests(), another kind of request, or MAX_BATCH of them, so
+     * that consecutive ones run with a single acquisition of the board (see Board.perform(Batch, ...)).
+     * Responses are added in the order of the lines, exactly as handleRequest would have returned them one by
+     * one; a connection that ends with a move, or reads no further, must call flushRequests().
+     * 
+     * @param input message from client
+     * @param session state of the client's connection
+     * @param responses receives the responses of the requests performed, in order
+     * @return true if the connection has to be closed after sending the responses; the lines after it are ignored
+     */
+    boolean pipelineRequest(String input, Session session, List<String> responses) 
+    {
+        CommandParser parser = session.getParser();
+        parser.parse(input);
+        return pipeline(parser, session, responses);
+    }
+
+    /**
+     * Handler for a pipelined line received as bytes, like pipelineRequest(String, Session, List) but without
+     * decoding the line into a String first
+     * 
+     * @param line buffer holding the message from client, one byte per character
+     * @param length of the message, without its line terminator
+     * @param session state of the client's connection
+     * @param responses receives the responses of the requests performed, in order
+     * @return true if the connection has to be closed after sending the responses
+     */
+    boolean pipelineRequest(byte[] line, int length, Session session, List<String> responses) 
+    {
+        CommandParser parser = session.getParser();
+        parser.parse(line, 0, length);
+        return pipeline(parser, session, responses);
+    }
+
+    /**
+     * Performs the moves held back by pipelineRequest
+     * 
+     * @param session state of the client's connection
+     * @param responses receives the responses of the moves, in order
+     * @return true if the connection has to be closed after sending the responses
+     */
+    boolean flushRequests(Session session, List<String> responses) 
     {
-        String regex = "(look)|(dig -?\\d+ -?\\d+)|(flag -?\\d+ -?\\d+)|"
-                + "(deflag -?\\d+ -?\\d+)|(help)|(bye)";
-        if ( ! input.matches(regex)) 
+        Batch batch = session.getBatch();
+        if (batch.size() == 0) 
         {
-            // invalid input
-            return null;
+            return false;
         }
-        String[] tokens = input.split(" ");
-        if (tokens[0].equals("look")) 
+        // the changes the moves make are in their responses, they are not pushed back to the client
+        Broadcaster.setActing(session.getSubscription());
+        long start = System.nanoTime();
+        Board board = session.getGame().getBoard();
+        try 
         {
-            // 'look' request
-        	return board.look();
+            // without debug, a BOOM ends the connection, so the moves after it are not performed
+            board.perform(batch, session.isDelta(), session.getViewport(), !debug, !session.defersDurable());
         } 
-        else if (tokens[0].equals("help")) 
+        catch (IllegalArgumentException e) 
         {
-            // 'help' request
-            return "MESSAGE     :== ( LOOK | DIG | FLAG | DEFLAG | HELP_REQ | BYE ) NEWLINE";
+            // the board is too large for the LOOK messages that answer the moves, none of them was performed
+            for (int k = 0; k < batch.size(); k++) 
+            {
+                responses.add(e.getMessage());
+            }
+            batch.clear();
+            return false;
         } 
-        else if (tokens[0].equals("bye")) 
+        finally 
         {
-            // 'bye' request
-        	return "bye";
+            Broadcaster.setActing(null);
+        }
+        if (session.defersDurable()) 
+        {
+            // the engine sends the responses once the moves are durable
+            session.performed(board, batch.getLogged());
+        }
+        stats.batch(batch, System.nanoTime() - start);
+        completed(session.getGame());
+        String last = null;
+        for (int k = 0; k < batch.getPerformed(); k++) 
+        {
+            last = batch.getResponse(k);
+            stats.response(last);
+            responses.add(last);
+        }
+        batch.clear();
+        return endsConnection(last);
+    }
+
+    /**
+     * Holds back the move parser just parsed, or performs the held back moves and then the request
+     */
+    private boolean pipeline(CommandParser parser, Session session, List<String> responses) 
+    {
+        Batch batch = session.getBatch();
+        int x = parser.getX();
+        int y = parser.getY();
+        switch (parser.getType()) 
+        {
+        case CommandParser.DIG:
+            batch.dig(y, x);
+            return batch.size() == MAX_BATCH && flushRequests(session, responses);
+        case CommandParser.FLAG:
+            batch.flag(y, x);
+            return batch.size() == MAX_BATCH && flushRequests(session, responses);
+        case CommandParser.DEFLAG:
+            batch.deflag(y, x);
+            return batch.size() == MAX_BATCH && flushRequests(session, responses);
+        case CommandParser.CHORD:
+            batch.chord(y, x);
+            return batch.size() == MAX_BATCH && flushRequests(session, responses);
+        case CommandParser.INVALID:
+            // invalid input gets no response, and does not need the moves before it performed
+            return false;
+        default:
+            if (flushRequests(session, responses)) 
+            {
+                return true;
+            }
+            String output = execute(parser, session);
+            responses.add(output);
+            return endsConnection(output);
+        }
+    }
+
+    /**
+     * Performs the request parser just parsed, on behalf of the session's subscription if it watches its game
+     * 
+     * @return message to client, null if the request was invalid
+     */
+    private String execute(CommandParser parser, Session session) 
+    {
+        long start = System.nanoTime();
+        String output;
+        Subscription subscription = session.getSubscription();
+        if (subscription == null) 
+        {
+            output = perform(parser, session);
         } 
         else 
         {
-            int x = Integer.parseInt(tokens[1]);
-            int y = Integer.parseInt(tokens[2]);
-            if (tokens[0].equals("dig")) 
+            // the changes the request makes are in its response, they are not pushed back to the client
+            Broadcaster.setActing(subscription);
+            try 
             {
-                // 'dig x y' request
-            	return board.dig(y, x);
+                output = perform(parser, session);
             } 
-            else if (tokens[0].equals("flag")) 
+            finally 
             {
-                // 'flag x y' request
-                return board.flag(y, x);
+                Broadcaster.setActing(null);
+            }
+        }
+        stats.command(parser.getType(), System.nanoTime() - start, output);
+        if (parser.getType() == CommandParser.DIG || parser.getType() == CommandParser.CHORD) 
+        {
+            completed(session.getGame());
+        }
+        return output;
+    }
+
+    /**
+     * Records how long a game took if the moves just performed won it
+     */
+    private void completed(GameRegistry.Game game) 
+    {
+        if (game.completed() && game.getBoard().getCompletionNanos() >= 0) 
+        {
+            stats.completed(game.getBoard().getCompletionNanos());
+        }
+    }
+
+    /**
+     * Performs the request parser just parsed
+     * 
+     * @return message to client, null if the request was invalid
+     */
+    private String perform(CommandParser parser, Session session) 
+    {
+        try 
+        {
+            return answer(parser, session);
+        } 
+        catch (IllegalArgumentException e) 
+        {
+            // a LOOK message too large to build (see Board.MAX_LOOK_SQUARES), nothing was performed
+            return e.getMessage();
+        }
+    }
+
+    /**
+     * Performs the request parser just parsed, throwing if its answer is a LOOK message too large to build
+     */
+    private String answer(CommandParser parser, Session session) 
+    {
+        Board board = session.getGame().getBoard();
+        Viewport viewport = session.getViewport();
+        int x = parser.getX();
+        int y = parser.getY();
+        switch (parser.getType()) 
+        {
+        case CommandParser.LOOK:
+            // 'look' request
+            return viewport != null ? board.look(viewport) : board.look();
+        case CommandParser.LOOK_REGION:
+            // 'look X1 Y1 X2 Y2' request
+            return board.look(y, x, parser.getY2(), parser.getX2());
+        case CommandParser.WATCH:
+            // 'watch X1 Y1 X2 Y2' request
+            session.setViewport(new Viewport(y, x, parser.getY2(), parser.getX2()));
+            watch(session);
+            return board.look(session.getViewport());
+        case CommandParser.WATCH_BOARD:
+            // 'watch' request
+            session.setViewport(null);
+            watch(session);
+            return board.look();
+        case CommandParser.UNWATCH:
+            // 'unwatch' request
+            session.setViewport(null);
+            unwatch(session);
+            return "unwatch";
+        case CommandParser.STATS:
+            // 'stats' request
+            return stats.getStats();
+        case CommandParser.STATUS:
+            // 'status' request
+            return board.status();
+        case CommandParser.HELP:
+            // 'help' request
+            return "MESSAGE     :== ( LOOK | DIG | FLAG | DEFLAG | CHORD | HELP_REQ | BYE | MODE | CREATE | JOIN | WATCH | UNWATCH | STATS | STATUS ) NEWLINE";
+        case CommandParser.BYE:
+            // 'bye' request
+            return "bye";
+        case CommandParser.MODE_LOOK:
+        case CommandParser.MODE_DELTA:
+            // 'mode look' or 'mode delta' request
+            session.setDelta(parser.getType() == CommandParser.MODE_DELTA);
+            return session.isDelta() ? "mode delta" : "mode look";
+        case CommandParser.CREATE:
+            // 'create ID [X [Y]]' request
+            try 
+            {
+                moveTo(session, games.create(parser.getId(), parser.hasSize() ? y : DEFAULT_SIZE, parser.hasSize() ? x : DEFAULT_SIZE,
+                        session.getGame()));
+                String firstDig = session.getGame().getFirstDig();
+                return "created " + parser.getId() + (firstDig != null ? ", " + firstDig + " first" : "");
             } 
-            else if (tokens[0].equals("deflag")) 
+            catch (IllegalArgumentException | IllegalStateException e) 
+            {
+                return e.getMessage();
+            }
+        case CommandParser.JOIN:
+            // 'join ID' request
+            GameRegistry.Game game = games.join(parser.getId(), session.getGame());
+            if (game == null) 
             {
-                // 'deflag x y' request
-            	return board.deflag(y, x);
+                return "no game " + parser.getId();
             }
+            moveTo(session, game);
+            return "joined " + parser.getId();
+        case CommandParser.DIG:
+            // 'dig x y' request
+            if (viewport != null) 
+            {
+                return session.isDelta() ? board.digDelta(y, x, viewport) : board.dig(y, x, viewport);
+            }
+            return session.isDelta() ? board.digDelta(y, x) : board.dig(y, x);
+        case CommandParser.FLAG:
+            // 'flag x y' request
+            if (viewport != null) 
+            {
+                return session.isDelta() ? board.flagDelta(y, x, viewport) : board.flag(y, x, viewport);
+            }
+            return session.isDelta() ? board.flagDelta(y, x) : board.flag(y, x);
+        case CommandParser.DEFLAG:
+            // 'deflag x y' request
+            if (viewport != null) 
+            {
+                return session.isDelta() ? board.deflagDelta(y, x, viewport) : board.deflag(y, x, viewport);
+            }
+            return session.isDelta() ? board.deflagDelta(y, x) : board.deflag(y, x);
+        case CommandParser.CHORD:
+            // 'chord x y' request
+            if (viewport != null) 
+            {
+                return session.isDelta() ? board.chordDelta(y, x, viewport) : board.chord(y, x, viewport);
+            }
+            return session.isDelta() ? board.chordDelta(y, x) : board.chord(y, x);
+        default:
+            // invalid input
+            return null;
+        }
+    }
+
+    /**
+     * Subscribes a session to the changes of its game in its viewport, replacing any previous subscription
+     */
+    private void watch(Session session)
+    {
+        unwatch(session);
+        session.getGame().getBroadcaster().add(session.subscribe(session.getViewport()));
+    }
+
+    /**
+     * Ends the subscription of a session, if it has one
+     */
+    private void unwatch(Session session)
+    {
+        Subscription subscription = session.getSubscription();
+        if (subscription != null) 
+        {
+            session.getGame().getBroadcaster().remove(subscription);
+            session.unsubscribe();
+        }
+    }
+
+    /**
+     * Moves a session to the game it joined, taking its subscription along without the updates of the old game
+     */
+    private void moveTo(Session session, GameRegistry.Game game)
+    {
+        boolean watching = session.getSubscription() != null;
+        unwatch(session);
+        session.setGame(game);
+        if (watching) 
+        {
+            watch(session);
         }
-        // Should never get here--make sure to return in each of the valid cases above.
-        throw new UnsupportedOperationException();
     }
 
     /**
      * Start a MinesweeperServer using the given arguments.
      * 
-     * Usage: MinesweeperServer [--debug] [--port PORT] [--size SIZE | --file FILE]
+     * Usage: MinesweeperServer [--debug] [--concurrent] [--nio] [--port PORT] [--size SIZE | --size X,Y | --file FILE]
+     *                           [--seed SEED] [--mines MINES] [--lazy | --no-guess] [--safe-first-dig] [--max-games GAMES] [--max-squares SQUARES]
+     *                           [--idle-timeout SECONDS] [--data DIR]
      * 
      * The --debug argument means the server should run in debug mode. The server should disconnect
      * a client after a BOOM message if and only if the debug flag argument was NOT given. E.g.
      * "MinesweeperServer --debug" starts the server in debug mode.
      * 
+     * The --concurrent argument makes the board let players on far apart rows dig and flag in parallel
+     * instead of one at a time.
+     * 
+     * The --nio argument makes the server handle all connections from one selector thread per core instead
+     * of starting a thread per connection, so it can hold many thousands of players.
+     * 
      * PORT is an optional integer in the range 0 to 65535 inclusive, specifying the port the
      * server should be listening on for incoming connections. E.g. "MinesweeperServer --port 1234"
      * starts the server listening on port 1234.
      * 
      * SIZE is an optional integer argument specifying that a random board of size SIZE*SIZE should
      * be generated. E.g. "MinesweeperServer --size 15" starts the server initialized with a random
-     * board of size 15*15.
+     * board of size 15*15. X,Y gives the width and height of a board that need not be square, like the
+     * x and y of the commands: "MinesweeperServer --size 3000,100" starts the server with a random board
+     * of 100 rows of 3000 squares.
      * 
      * FILE is an optional argument specifying a file pathname where a board has been stored. If
      * this argument is given, the stored board should be loaded as the starting board. E.g.
      * "MinesweeperServer --file boardfile.txt" starts the server initialized with the board stored
-     * in boardfile.txt, however large it happens to be (but the board may be assumed to be
-     * square).
+     * in boardfile.txt, however large it happens to be, with as many rows as the file has lines and as
+     * many columns as the first line has values.
      * 
      * The board file format, for use with the "--file" option, is specified by the following
      * grammar:
@@ -221,40 +709,91 @@ public class MinesweeperServer {
      *   SPACE :== " " 
      *   NEWLINE :== "\r?\n"
      * 
+     * where every LINE has as many VALs as the first one.
+     * 
      * If neither FILE nor SIZE is given, generate a random board of size 10x10.
      * 
+     * SEED is an optional integer making the random board reproducible: servers started with the same SEED,
+     * SIZE and MINES start with the same board. MINES is the exact number of bombs of the random board, a
+     * quarter of its squares by default. Both are ignored when FILE is given.
+     * 
+     * The --lazy argument makes the random board store only the squares players touched (see
+     * BoardGenerator.generateLazy), so very large boards fit in memory. Every square then holds a bomb with
+     * probability MINES / (X*Y), so the number of bombs is only about MINES. It cannot be combined with DIR.
+     * Without it X*Y is at most 2^31 - 1, with it the board may have up to about 8.8e12 squares (see CellStore),
+     * such as 2,000,000,2,000,000, as long as the JVM has room for its table of 4 bytes per 4096 squares. Boards
+     * of over Board.MAX_LOOK_SQUARES squares (about 1.07e9) cannot be looked at whole: "look" and the LOOK
+     * responses of moves are refused with a message, "look X1 Y1 X2 Y2", "watch" with a region and "mode delta"
+     * work at any size.
+     * 
+     * The --no-guess argument makes the random board one that can be solved without guessing by digging its middle
+     * square (x = X/2, y = Y/2) first, which holds no bomb and has none around it (see BoardPool). Boards are
+     * generated and checked on every core, and games created with the shape of the default game, "create ID X Y",
+     * get one of them too. The welcome message and the response to create tell players that square. MINES is 15%
+     * of the squares by default, as hardly any board with more bombs can be solved without guessing. It cannot be
+     * combined with FILE, --lazy or --safe-first-dig.
+     * 
+     * The --safe-first-dig argument makes the first dig of every game safe: the bombs on the square dug and around
+     * it are moved to random squares further away, so the first dig reveals a 0 (see Board.setFirstDigSafe).
+     * 
      * Note that FILE and SIZE may not be specified simultaneously.
+     * 
+     * The board given by SIZE or FILE is the default game, which players join on connecting. GAMES (10000 by
+     * default) and SQUARES (100000000 by default) bound the number of games players may create and the number
+     * of squares of all their boards, and a created game nobody has played for SECONDS seconds (600 by default)
+     * is deleted.
+     * 
+     * DIR is an optional directory where the default game is journaled (see BoardJournal), so it survives a crash
+     * of the server. If DIR already holds a journal the server restores the default game from it and ignores SIZE
+     * and FILE, otherwise it starts a journal there. Games created by players are not journaled.
      */
     public static void main(String[] args) {
-        // Command-line argument parsing is provided. Do not change this method.
-        boolean debug = false;
-        int port = 4444; // default port
-        Integer size = 10; // default size
-        File file = null;
-
+        ServerOptions options = new ServerOptions();
         Queue<String> arguments = new LinkedList<String>(Arrays.asList(args));
         try {
             while ( ! arguments.isEmpty()) {
                 String flag = arguments.remove();
                 try {
                     if (flag.equals("--debug")) {
-                        debug = true;
+                        options.setDebug(true);
                     } else if (flag.equals("--no-debug")) {
-                        debug = false;
+                        options.setDebug(false);
+                    } else if (flag.equals("--concurrent")) {
+                        options.setConcurrent(true);
+                    } else if (flag.equals("--nio")) {
+                        options.setNio(true);
                     } else if (flag.equals("--port")) {
-                        port = Integer.parseInt(arguments.remove());
-                        if (port < 0 || port > 65535) {
-                            throw new IllegalArgumentException("port " + port + " out of range");
-                        }
+                        options.setPort(Integer.parseInt(arguments.remove()));
                     } else if (flag.equals("--size")) {
-                        size = Integer.parseInt(arguments.remove());
-                        file = null;
+                        String[] dimensions = arguments.remove().split(",", -1);
+                        if (dimensions.length > 2) {
+                            throw new IllegalArgumentException("size must be SIZE or X,Y");
+                        }
+                        options.setSize(Integer.parseInt(dimensions[0]), Integer.parseInt(dimensions[dimensions.length - 1]));
+                    } else if (flag.equals("--lazy")) {
+                        options.setLazy(true);
+                    } else if (flag.equals("--no-guess")) {
+                        options.setNoGuess(true);
+                    } else if (flag.equals("--safe-first-dig")) {
+                        options.setSafeFirstDig(true);
+                    } else if (flag.equals("--seed")) {
+                        options.setSeed(Long.parseLong(arguments.remove()));
+                    } else if (flag.equals("--mines")) {
+                        options.setMines(Long.parseLong(arguments.remove()));
+                    } else if (flag.equals("--max-games")) {
+                        options.setMaxGames(Integer.parseInt(arguments.remove()));
+                    } else if (flag.equals("--max-squares")) {
+                        options.setMaxSquares(Long.parseLong(arguments.remove()));
+                    } else if (flag.equals("--idle-timeout")) {
+                        options.setIdleTimeout(Integer.parseInt(arguments.remove()));
+                    } else if (flag.equals("--data")) {
+                        options.setData(new File(arguments.remove()));
                     } else if (flag.equals("--file")) {
-                        size = null;
-                        file = new File(arguments.remove());
+                        File file = new File(arguments.remove());
                         if ( ! file.isFile()) {
                             throw new IllegalArgumentException("file not found: \"" + file + "\"");
                         }
+                        options.setFile(file);
                     } else {
                         throw new IllegalArgumentException("unknown option: \"" + flag + "\"");
                     }
@@ -264,14 +803,18 @@ public class MinesweeperServer {
                     throw new IllegalArgumentException("unable to parse number for " + flag);
                 }
             }
+            options.check();
         } catch (IllegalArgumentException iae) {
             System.err.println(iae.getMessage());
-            System.err.println("usage: MinesweeperServer [--debug] [--port PORT] [--size SIZE | --file FILE]");
+            System.err.println("usage: MinesweeperServer [--debug] [--concurrent] [--nio] [--port PORT] [--size SIZE | --size X,Y | --file FILE]"
+                    + " [--seed SEED] [--mines MINES] [--lazy | --no-guess] [--safe-first-dig] [--max-games GAMES] [--max-squares SQUARES] [--idle-timeout SECONDS] [--data DIR]");
             return;
         }
 
         try {
-            runMinesweeperServer(debug, file, size, port);
+            runMinesweeperServer(options);
+        } catch (IllegalArgumentException iae) {
+            System.err.println(iae.getMessage());
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -290,16 +833,228 @@ public class MinesweeperServer {
      */
     public static void runMinesweeperServer(boolean debug, File file, Integer size, int port) throws IOException 
     {
-    	if(file != null)
+    	ServerOptions options = new ServerOptions().setDebug(debug).setPort(port);
+    	runMinesweeperServer(file != null ? options.setFile(file) : options.setSize(size, size));
+    }
+
+    /**
+     * Start a MinesweeperServer with the given options, the way main does with the options of its arguments.
+     * Never returns unless an exception is thrown.
+     * 
+     * @param options how to start the server, see ServerOptions
+     * @throws IllegalArgumentException if options cannot be combined (see ServerOptions.check)
+     */
+    public static void runMinesweeperServer(ServerOptions options) throws IOException 
+    {
+    	options.check();
+    	boolean concurrent = options.isConcurrent();
+    	boolean noGuess = options.isNoGuess();
+    	boolean safeFirstDig = options.isSafeFirstDig();
+    	File data = options.getData();
+    	BoardPool pool = null;
+    	Board board;
+    	BoardJournal journal = null;
+    	if(data != null && BoardJournal.exists(data))
     	{
-    		board = new Board(file);
+    		journal = BoardJournal.recover(data, concurrent);
+    		board = journal.getBoard();
+    		System.err.println("restored the default game from " + data + ", replayed " + journal.getRecoveredOperations() + " operations");
     	}
     	else
     	{
-    		board = new Board(size);
+    		if(options.getFile() != null)
+    		{
+    			board = new Board(options.getFile(), concurrent);
+    		}
+    		else
+    		{
+    			int rows = options.getHeight();
+    			int columns = options.getWidth();
+    			BoardGenerator generator = options.getSeed() != null ? new BoardGenerator(options.getSeed()) : new BoardGenerator();
+    			double density = noGuess ? NO_GUESS_DENSITY : BoardGenerator.DEFAULT_DENSITY;
+    			long count = options.getMines() != null ? options.getMines() : BoardGenerator.mineCount(rows, columns, density);
+    			if(noGuess)
+    			{
+    				pool = new BoardPool(rows, columns, count, NO_GUESS_POOL, generator.getSeed(), concurrent);
+    				board = takeBoard(pool);
+    			}
+    			else if(options.isLazy())
+    			{
+    				board = generator.generateLazy(rows, columns, (double) count / ((long) rows * columns), concurrent);
+    			}
+    			else
+    			{
+    				board = generator.generate(rows, columns, count, concurrent);
+    			}
+    		}
+    		if(data != null)
+    		{
+    			journal = BoardJournal.create(data, board);
+    		}
+    	}
+    	board.setFirstDigSafe(safeFirstDig);
+    	games = new GameRegistry(options.getMaxGames(), options.getMaxSquares(), options.getIdleTimeout() * 1000L, concurrent, pool, safeFirstDig);
+    	// a restored board need not come from the pool
+    	games.pin(DEFAULT_GAME, board, pool);
+    	
+    	// evict idle games even when nobody creates new ones
+    	final GameRegistry registry = games;
+    	Timer maintenance = new Timer("minesweeper-maintenance", true);
+    	long period = Math.max(1000L, options.getIdleTimeout() * 1000L / 2);
+    	maintenance.schedule(new TimerTask() 
+    	{
+    		public void run() 
+    		{
+    			registry.evictIdle();
+    		}
+    	}, period, period);
+    	
+    	// keep the journal's log short, so restoring the default game stays fast
+    	if(journal != null)
+    	{
+    		final BoardJournal snapshots = journal;
+    		maintenance.schedule(new TimerTask() 
+    		{
+    			public void run() 
+    			{
+    				try 
+    				{
+    					snapshots.snapshotIfNeeded();
+    				} 
+    				catch (IOException e) 
+    				{
+    					e.printStackTrace();
+    				}
+    			}
+    		}, SNAPSHOT_CHECK_PERIOD, SNAPSHOT_CHECK_PERIOD);
     	}
     	
-        MinesweeperServer server = new MinesweeperServer(port, debug);
+        registerStats();
+        MinesweeperServer server = new MinesweeperServer(options.getPort(), options.isDebug(), options.isNio());
         server.serve();
     }
+
+    /**
+     * Takes the first board of a pool, waiting for the pool's threads to find one
+     */
+    private static Board takeBoard(BoardPool pool) throws IOException 
+    {
+        try 
+        {
+            return pool.take();
+        } 
+        catch (InterruptedException e) 
+        {
+            pool.close();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while generating a board that needs no guess");
+        }
+    }
+
+    /**
+     * Publishes the measurements of the server through JMX, once per process
+     */
+    private static void registerStats() 
+    {
+        try 
+        {
+            ObjectName name = new ObjectName("minesweeper:type=ServerStats");
+            MBeanServer beans = ManagementFactory.getPlatformMBeanServer();
+            if (!beans.isRegistered(name)) 
+            {
+                beans.registerMBean(stats, name);
+            }
+        } 
+        catch (JMException e) 
+        {
+            // the server works the same without them
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes the updates pushed to a client of the thread-per-connection engine, from a thread of its own started
+     * the first time there are some, so a client slow to read them blocks neither the players making the changes
+     * nor its own requests until the socket buffers are full. println on the shared PrintWriter is atomic, so
+     * updates never cut a response in two.
+     */
+    private static final class Pusher 
+    {
+        private final PrintWriter out;
+        private Session session;
+        private Thread thread;
+        private boolean woken;
+        private boolean stopped;
+
+        Pusher(PrintWriter out) 
+        {
+            this.out = out;
+        }
+
+        /**
+         * Called from any thread when the session has updates to push
+         */
+        synchronized void wake() 
+        {
+            if (stopped) 
+            {
+                return;
+            }
+            woken = true;
+            if (thread == null) 
+            {
+                thread = new Thread(new Runnable() 
+                {
+                    public void run() 
+                    {
+                        push();
+                    }
+                }, "minesweeper-push");
+                thread.setDaemon(true);
+                thread.start();
+            }
+            notifyAll();
+        }
+
+        /**
+         * Stops pushing, called once the connection is done
+         */
+        synchronized void stop() 
+        {
+            stopped = true;
+            notifyAll();
+        }
+
+        private void push() 
+        {
+            while (true) 
+            {
+                synchronized (this) 
+                {
+                    while (!woken && !stopped) 
+                    {
+                        try 
+                        {
+                            wait();
+                        } 
+                        catch (InterruptedException e) 
+                        {
+                            return;
+                        }
+                    }
+                    if (stopped) 
+                    {
+                        return;
+                    }
+                    woken = false;
+                }
+                String updates = session.drainUpdates();
+                if (updates != null) 
+                {
+                    out.println(updates);
+                    out.flush();
+                }
+            }
+        }
+    }
 }
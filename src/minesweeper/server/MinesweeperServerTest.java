@@ -0,0 +1,147 @@
+package minesweeper.server;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import org.junit.Test;
+
+import minesweeper.board.Board;
+
+public class MinesweeperServerTest
+{
+	//Answer to the help request, see MinesweeperServer.answer
+	static final String HELP = "MESSAGE     :== ( LOOK | DIG | FLAG | DEFLAG | CHORD | HELP_REQ | BYE | MODE | CREATE | JOIN | WATCH | UNWATCH | STATS | STATUS ) NEWLINE";
+
+	//A line whose end has not arrived yet must not hold back the responses to the lines before it
+	@Test
+	public void splitLineTest() throws Exception
+	{
+		Socket socket = connect(start(new ServerOptions().setDebug(true).setSize(3, 3)));
+		try
+		{
+			BufferedReader in = reader(socket);
+			OutputStream out = socket.getOutputStream();
+			out.write("help\nhel".getBytes());
+			out.flush();
+			assertEquals(HELP, in.readLine());
+			out.write("p\n".getBytes());
+			out.flush();
+			assertEquals(HELP, in.readLine());
+		}
+		finally
+		{
+			socket.close();
+		}
+	}
+
+	//Moves after the one that wins the game are refused, however the lines were pipelined
+	@Test
+	public void gameOverTest() throws Exception
+	{
+		File file = File.createTempFile("board", ".txt");
+		try
+		{
+			FileWriter writer = new FileWriter(file);
+			writer.write("0 0\n0 1\n");
+			writer.close();
+			Socket socket = connect(start(new ServerOptions().setDebug(true).setFile(file)));
+			try
+			{
+				BufferedReader in = reader(socket);
+				OutputStream out = socket.getOutputStream();
+				out.write("mode delta\ndig 0 0\ndig 1 0\ndig 0 1\nflag 1 1\n".getBytes());
+				out.flush();
+				assertEquals("mode delta", in.readLine());
+				for(int move = 0; move < 3; move++)
+				{
+					assertEquals("DELTA 1", in.readLine());
+					in.readLine();
+					assertEquals("", in.readLine());
+				}
+				assertEquals(Board.GAME_OVER, in.readLine());
+				out.write("dig 1 1\n".getBytes());
+				out.flush();
+				assertEquals(Board.GAME_OVER, in.readLine());
+			}
+			finally
+			{
+				socket.close();
+			}
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+
+	/**
+	 * Starts a server on a free port, on a daemon thread, and waits for it to accept connections
+	 * @param options of the server, whose port is replaced
+	 * @return port of the server
+	 */
+	static int start(final ServerOptions options) throws Exception
+	{
+		ServerSocket probe = new ServerSocket(0);
+		final int port = probe.getLocalPort();
+		probe.close();
+		options.setPort(port);
+		Thread thread = new Thread(new Runnable()
+		{
+			public void run()
+			{
+				try
+				{
+					MinesweeperServer.runMinesweeperServer(options);
+				}
+				catch(IOException e)
+				{
+					e.printStackTrace();
+				}
+			}
+		});
+		thread.setDaemon(true);
+		thread.start();
+		for(int attempt = 0; attempt < 100; attempt++)
+		{
+			try
+			{
+				new Socket("localhost", port).close();
+				return port;
+			}
+			catch(IOException e)
+			{
+				Thread.sleep(50);
+			}
+		}
+		throw new IOException("server did not start on port " + port);
+	}
+
+	/**
+	 * Connects to a server and reads its welcome message
+	 * @return socket of the connection, failing reads that wait for more than 2 seconds
+	 */
+	static Socket connect(int port) throws IOException
+	{
+		Socket socket = new Socket("localhost", port);
+		socket.setSoTimeout(2000);
+		return socket;
+	}
+
+	/**
+	 * @return reader of the lines a server sends on socket, past the welcome message
+	 */
+	static BufferedReader reader(Socket socket) throws IOException
+	{
+		BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+		assertEquals(true, in.readLine().startsWith("Welcome to Minesweeper."));
+		return in;
+	}
+}
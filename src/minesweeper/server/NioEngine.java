@@ -0,0 +1,451 @@
+package minesweeper.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import minesweeper.board.Board;
+
+/**
+ * Serving engine for MinesweeperServer that handles every connection from a small, fixed set of selector threads
+ * instead of one thread per connection. The accepting thread hands each new connection to one of the selector
+ * threads in turn; that thread then reads its lines, hands their bytes to the server's pipelineRequest, and writes
+ * the responses without ever blocking on a single client. The lines that arrive in one read are handled together,
+ * and their responses written at once.
+ *
+ * The protocol is exactly the one of the thread-per-connection engine: a welcome message on connect, one
+ * response (followed by a line separator) per valid line, and the connection is closed after "bye", or after
+ * a BOOM message unless the server is in debug mode.
+ *
+ * While a connection has responses that could not be written yet, no more of its input is read, so a client
+ * that does not read its responses cannot make the server buffer without bound. Updates pushed to a watching
+ * client (see Subscription) are only taken once everything before them is written, so they keep coalescing
+ * instead of queueing up behind a slow client.
+ *
+ * Moves on a journaled board are performed without waiting for them to be durable, which would block every
+ * connection of the selector thread during the fsync. Their responses, and every response after them, are held
+ * back and no more input is read until the command log calls back to say they are durable (see Board.whenDurable).
+ * @author Rishabh
+ *
+ */
+class NioEngine
+{
+	//Lines longer than this close the connection, as they cannot be part of the protocol
+	static final int MAX_LINE_LENGTH = 8192;
+
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+	private static final Charset CHARSET = Charset.defaultCharset();
+
+	private final MinesweeperServer server;
+	private final ServerSocketChannel serverChannel;
+	private final Worker[] workers;
+
+	/**
+	 * @param server handling the requests
+	 * @param serverChannel bound channel accepting connections
+	 * @param threads number of selector threads, > 0
+	 */
+	NioEngine(MinesweeperServer server, ServerSocketChannel serverChannel, int threads) throws IOException
+	{
+		this.server = server;
+		this.serverChannel = serverChannel;
+		this.workers = new Worker[threads];
+		for(int i = 0; i < threads; i++)
+			workers[i] = new Worker();
+	}
+
+	/**
+	 * Accepts connections and hands them to the selector threads. Never returns unless an exception is thrown.
+	 * @throws IOException if the server channel is broken
+	 */
+	void serve() throws IOException
+	{
+		for(int i = 0; i < workers.length; i++)
+		{
+			Thread thread = new Thread(workers[i], "minesweeper-nio-" + i);
+			thread.setDaemon(true);
+			thread.start();
+		}
+		serverChannel.configureBlocking(true);
+		for(int next = 0; ; next = (next + 1) % workers.length)
+		{
+			SocketChannel channel = serverChannel.accept();
+			channel.configureBlocking(false);
+			workers[next].add(channel);
+		}
+	}
+
+	/**
+	 * A selector thread and the connections it owns
+	 */
+	private class Worker implements Runnable
+	{
+		private final Selector selector;
+		private final Queue<SocketChannel> accepted = new ConcurrentLinkedQueue<SocketChannel>();
+		//Connections with updates to push, woken up from any thread
+		private final Queue<Connection> woken = new ConcurrentLinkedQueue<Connection>();
+		//Connections whose held back responses became durable, handed over by the flusher of the command log
+		private final Queue<Connection> durable = new ConcurrentLinkedQueue<Connection>();
+		private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(16 * 1024);
+
+		Worker() throws IOException
+		{
+			this.selector = Selector.open();
+		}
+
+		/**
+		 * Hands a newly accepted connection to this thread, called from the accepting thread
+		 */
+		void add(SocketChannel channel)
+		{
+			accepted.add(channel);
+			selector.wakeup();
+		}
+
+		/**
+		 * Hands a connection with updates to push to this thread, called from any thread
+		 */
+		void wake(Connection connection)
+		{
+			woken.add(connection);
+			selector.wakeup();
+		}
+
+		/**
+		 * Hands a connection whose held back responses are durable to this thread, called from the log's flusher
+		 */
+		void durable(Connection connection)
+		{
+			durable.add(connection);
+			selector.wakeup();
+		}
+
+		public void run()
+		{
+			while(true)
+			{
+				try
+				{
+					selector.select();
+					for(SocketChannel channel = accepted.poll(); channel != null; channel = accepted.poll())
+						open(channel);
+					for(Connection connection = durable.poll(); connection != null; connection = durable.poll())
+					{
+						try
+						{
+							connection.flushWhenDurable();
+						}
+						catch(IOException | RuntimeException e)
+						{
+							connection.close();
+						}
+					}
+					for(Connection connection = woken.poll(); connection != null; connection = woken.poll())
+					{
+						try
+						{
+							connection.push();
+						}
+						catch(IOException e)
+						{
+							connection.close();
+						}
+						catch(RuntimeException e)
+						{
+							//Failing to drain the updates of one connection must not end the others of this thread
+							e.printStackTrace();
+							connection.close();
+						}
+					}
+					Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+					while(keys.hasNext())
+					{
+						SelectionKey key = keys.next();
+						keys.remove();
+						Connection connection = (Connection) key.attachment();
+						try
+						{
+							if(key.isValid() && key.isWritable())
+								connection.flush();
+							if(key.isValid() && key.isReadable())
+								connection.read(readBuffer);
+						}
+						catch(IOException e)
+						{
+							connection.close();
+						}
+						catch(RuntimeException e)
+						{
+							//Like the thread engine, a request that fails only ends its own connection
+							e.printStackTrace();
+							connection.close();
+						}
+					}
+				}
+				catch(IOException e)
+				{
+					e.printStackTrace();
+				}
+			}
+		}
+
+		private void open(SocketChannel channel)
+		{
+			Connection connection = new Connection(channel, this);
+			try
+			{
+				connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+			}
+			catch(ClosedChannelException e)
+			{
+				return;
+			}
+			connection.send(server.welcome(connection.session));
+			try
+			{
+				connection.flush();
+			}
+			catch(IOException e)
+			{
+				connection.close();
+			}
+		}
+	}
+
+	/**
+	 * State of one client connection, only touched by the selector thread owning it
+	 */
+	private class Connection
+	{
+		private final SocketChannel channel;
+		private final Session session;
+		private SelectionKey key;
+
+		//Bytes of the line being read, without its terminator
+		private byte[] line = new byte[128];
+		private int lineLength;
+		//True if the last byte read was a '\r', so a following '\n' belongs to the same terminator
+		private boolean afterCarriageReturn;
+
+		//Responses of the lines being handled
+		private final List<String> responses = new ArrayList<String>();
+		//Responses not written yet
+		private final ArrayDeque<ByteBuffer> pending = new ArrayDeque<ByteBuffer>();
+		//True once the connection should be closed as soon as its responses are written
+		private boolean closing;
+		private boolean closed;
+		//True if updates are waiting for the pending responses to be written
+		private boolean pushWaiting;
+		//True while the pending responses wait for the moves they answer to be durable
+		private boolean holding;
+		//Run by the flusher of the command log once those moves are durable
+		private final Runnable madeDurable;
+
+		Connection(SocketChannel channel, final Worker worker)
+		{
+			this.channel = channel;
+			this.session = new Session(new Runnable()
+			{
+				public void run()
+				{
+					worker.wake(Connection.this);
+				}
+			}, true);
+			this.madeDurable = new Runnable()
+			{
+				public void run()
+				{
+					worker.durable(Connection.this);
+				}
+			};
+		}
+
+		/**
+		 * Reads what the client sent and handles every complete line
+		 */
+		void read(ByteBuffer buffer) throws IOException
+		{
+			buffer.clear();
+			int read = channel.read(buffer);
+			if(read < 0)
+			{
+				//The client is done sending, close once the responses to its last lines are written
+				closing = true;
+				flush();
+				return;
+			}
+			buffer.flip();
+			while(buffer.hasRemaining() && !closing)
+			{
+				byte b = buffer.get();
+				if(b == '\n' && afterCarriageReturn)
+				{
+					afterCarriageReturn = false;
+					continue;
+				}
+				afterCarriageReturn = b == '\r';
+				if(b == '\n' || b == '\r')
+				{
+					//Moves among the lines of one read are performed together, see MinesweeperServer.pipelineRequest
+					closing = server.pipelineRequest(line, lineLength, session, responses);
+					lineLength = 0;
+				}
+				else
+				{
+					if(lineLength == MAX_LINE_LENGTH)
+					{
+						//The moves before the line still happen, as they would have one line at a time
+						server.flushRequests(session, responses);
+						responses.clear();
+						close();
+						return;
+					}
+					if(lineLength == line.length)
+					{
+						byte[] grown = new byte[Math.min(line.length * 2, MAX_LINE_LENGTH)];
+						System.arraycopy(line, 0, grown, 0, lineLength);
+						line = grown;
+					}
+					line[lineLength++] = b;
+				}
+			}
+			//Bytes left in the buffer after a closing line are dropped, like the thread engine stops reading
+			if(!closing)
+				closing = server.flushRequests(session, responses);
+			send(responses);
+			responses.clear();
+			flushWhenDurable();
+		}
+
+		/**
+		 * Writes the pending responses once the moves they answer are durable. Until then nothing is written or read.
+		 * @throws IllegalStateException if the command log failed, so the moves may be lost
+		 */
+		void flushWhenDurable() throws IOException
+		{
+			if(closed)
+				return;
+			Board board = session.getUndurableBoard();
+			if(board != null)
+			{
+				if(!board.whenDurable(session.getUndurable(), madeDurable))
+				{
+					holding = true;
+					key.interestOps(0);
+					return;
+				}
+				//Durable already, unless the log failed, which this reports
+				board.awaitDurable(session.getUndurable());
+				session.durable();
+			}
+			holding = false;
+			flush();
+		}
+
+		/**
+		 * Queues a response followed by a line separator
+		 */
+		void send(String output)
+		{
+			pending.add(ByteBuffer.wrap((output + LINE_SEPARATOR).getBytes(CHARSET)));
+		}
+
+		/**
+		 * Queues responses, each followed by a line separator, as a single write: written one by one, the
+		 * small writes after the first would wait for the client to acknowledge it (Nagle's algorithm)
+		 */
+		void send(List<String> outputs)
+		{
+			if(outputs.size() == 1)
+				send(outputs.get(0));
+			else if(!outputs.isEmpty())
+			{
+				StringBuilder joined = new StringBuilder();
+				for(String output : outputs)
+					joined.append(output).append(LINE_SEPARATOR);
+				pending.add(ByteBuffer.wrap(joined.toString().getBytes(CHARSET)));
+			}
+		}
+
+		/**
+		 * Sends the updates of the session, once the responses before them are written
+		 */
+		void push() throws IOException
+		{
+			if(closed || closing)
+				return;
+			if(!pending.isEmpty())
+			{
+				pushWaiting = true;
+				return;
+			}
+			String updates = session.drainUpdates();
+			if(updates != null)
+			{
+				send(updates);
+				flush();
+			}
+		}
+
+		/**
+		 * Writes as much of the pending responses as the socket takes. Reading is paused while some are left.
+		 */
+		void flush() throws IOException
+		{
+			if(holding)
+				return;
+			while(!pending.isEmpty())
+			{
+				ByteBuffer head = pending.peek();
+				channel.write(head);
+				if(head.hasRemaining())
+				{
+					key.interestOps(SelectionKey.OP_WRITE);
+					return;
+				}
+				pending.poll();
+			}
+			if(pushWaiting && !closing)
+			{
+				pushWaiting = false;
+				push();
+				return;
+			}
+			if(closing)
+				close();
+			else if(!closed)
+				key.interestOps(SelectionKey.OP_READ);
+		}
+
+		/**
+		 * Closes the connection, counting the player out once
+		 */
+		void close()
+		{
+			if(closed)
+				return;
+			closed = true;
+			key.cancel();
+			try
+			{
+				channel.close();
+			}
+			catch(IOException e)
+			{
+				e.printStackTrace();
+			}
+			server.goodbye(session);
+		}
+	}
+}
@@ -0,0 +1,202 @@
+package minesweeper.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static minesweeper.server.MinesweeperServerTest.HELP;
+import static minesweeper.server.MinesweeperServerTest.connect;
+import static minesweeper.server.MinesweeperServerTest.reader;
+import static minesweeper.server.MinesweeperServerTest.start;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class NioEngineTest
+{
+	//A line split across reads is handled once its end arrives
+	@Test
+	public void splitLineTest() throws Exception
+	{
+		Socket socket = connect(start(debugServer()));
+		try
+		{
+			BufferedReader in = reader(socket);
+			send(socket, "help\nhel");
+			assertEquals(HELP, in.readLine());
+			send(socket, "p\n");
+			assertEquals(HELP, in.readLine());
+		}
+		finally
+		{
+			socket.close();
+		}
+	}
+
+	//A "\r\n" split across reads is one line terminator, not two
+	@Test
+	public void splitCarriageReturnTest() throws Exception
+	{
+		Socket socket = connect(start(debugServer()));
+		try
+		{
+			BufferedReader in = reader(socket);
+			send(socket, "mode delta\r");
+			assertEquals("mode delta", in.readLine());
+			send(socket, "\nflag 0 0\r\n");
+			assertEquals("DELTA 1", in.readLine());
+			assertEquals("0 0 F", in.readLine());
+			assertEquals("", in.readLine());
+			send(socket, "bye\n");
+			assertEquals("bye", in.readLine());
+			assertNull(in.readLine());
+		}
+		finally
+		{
+			socket.close();
+		}
+	}
+
+	//"bye" closes the connection once the responses before it are written, and the lines after it are dropped
+	@Test
+	public void byeTest() throws Exception
+	{
+		Socket socket = connect(start(debugServer()));
+		try
+		{
+			BufferedReader in = reader(socket);
+			send(socket, "flag 0 0\nbye\nhelp\n");
+			assertEquals("F - -", in.readLine());
+			assertEquals("- - -", in.readLine());
+			assertEquals("- - -", in.readLine());
+			assertEquals("", in.readLine());
+			assertEquals("bye", in.readLine());
+			assertNull(in.readLine());
+		}
+		finally
+		{
+			socket.close();
+		}
+	}
+
+	//Outside debug mode a BOOM message closes the connection once it is written, the lines after it are dropped
+	@Test
+	public void boomTest() throws Exception
+	{
+		Socket socket = connect(start(new ServerOptions().setFile(new File("src/autograder/resources/board_test.txt")).setNio(true)));
+		try
+		{
+			BufferedReader in = reader(socket);
+			send(socket, "help\ndig 0 0\nhelp\n");
+			assertEquals(HELP, in.readLine());
+			assertEquals("BOOM!", in.readLine());
+			assertEquals("", in.readLine());
+			assertNull(in.readLine());
+		}
+		finally
+		{
+			socket.close();
+		}
+	}
+
+	//A line too long for the protocol closes the connection, after performing the moves before it
+	@Test
+	public void longLineTest() throws Exception
+	{
+		int port = start(debugServer());
+		Socket socket = connect(port);
+		try
+		{
+			BufferedReader in = reader(socket);
+			char[] line = new char[NioEngine.MAX_LINE_LENGTH + 1];
+			Arrays.fill(line, 'a');
+			send(socket, "flag 1 1\n" + new String(line));
+			assertNull(in.readLine());
+		}
+		finally
+		{
+			socket.close();
+		}
+		socket = connect(port);
+		try
+		{
+			BufferedReader in = reader(socket);
+			send(socket, "look\n");
+			assertEquals("- - -", in.readLine());
+			assertEquals("- F -", in.readLine());
+		}
+		finally
+		{
+			socket.close();
+		}
+	}
+
+	//Responses to moves on a journaled board are held back until the flusher of its log says they are on disk
+	@Test
+	public void durableTest() throws Exception
+	{
+		File data = File.createTempFile("journal", "");
+		data.delete();
+		data.mkdir();
+		try
+		{
+			Socket socket = connect(start(debugServer().setData(data)));
+			try
+			{
+				BufferedReader in = reader(socket);
+				send(socket, "mode delta\nflag 0 0\nflag 1 1\n");
+				assertEquals("mode delta", in.readLine());
+				assertEquals("DELTA 1", in.readLine());
+				assertEquals("0 0 F", in.readLine());
+				assertEquals("", in.readLine());
+				assertEquals("DELTA 1", in.readLine());
+				//Both moves were in the log on disk before their responses were written
+				assertEquals(2 * 13, logLength(data));
+				assertEquals("1 1 F", in.readLine());
+				assertEquals("", in.readLine());
+			}
+			finally
+			{
+				socket.close();
+			}
+		}
+		finally
+		{
+			for(File file : data.listFiles())
+				file.delete();
+			data.delete();
+		}
+	}
+
+	private static ServerOptions debugServer()
+	{
+		return new ServerOptions().setDebug(true).setSize(3, 3).setNio(true);
+	}
+
+	private static void send(Socket socket, String text) throws IOException, InterruptedException
+	{
+		OutputStream out = socket.getOutputStream();
+		out.write(text.getBytes());
+		out.flush();
+		//Lets the server read what was sent so far on its own
+		Thread.sleep(50);
+	}
+
+	/**
+	 * @return number of bytes of the command log segments in a journal directory
+	 */
+	private static long logLength(File data)
+	{
+		long length = 0;
+		for(File file : data.listFiles())
+		{
+			if(file.getName().endsWith(".log"))
+				length += file.length();
+		}
+		return length;
+	}
+}
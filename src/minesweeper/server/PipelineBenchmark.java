@@ -0,0 +1,113 @@
+package minesweeper.server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput of bots that pipeline their commands. For each engine, a server is started in this process (see
+ * ServerLoadBenchmark) and BOTS clients each send DEPTH commands in a single write (alternating flag and deflag of
+ * their own square in DELTA mode), then read the DEPTH responses, for SECONDS seconds per depth. A depth of 1 is
+ * a bot waiting for every response before sending its next command.
+ *
+ * Usage: PipelineBenchmark [BOTS [SECONDS]]
+ * @author Rishabh
+ *
+ */
+public class PipelineBenchmark
+{
+	private static final int[] DEPTHS = {1, 4, 16, 64, 256};
+
+	public static void main(String[] args) throws Exception
+	{
+		int bots = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+		int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		System.out.println("engine\tbots\tdepth\tcommands\tseconds\tcommands_per_sec");
+		for(boolean nio : new boolean[] {false, true})
+		{
+			int port = ServerLoadBenchmark.startServer(nio);
+			for(int depth : DEPTHS)
+			{
+				long commands = drive(port, bots, depth, seconds);
+				System.out.println((nio ? "nio" : "threads") + "\t" + bots + "\t" + depth + "\t" + commands + "\t"
+						+ seconds + "\t" + commands / seconds);
+			}
+		}
+		System.exit(0);
+	}
+
+	/**
+	 * Runs every bot on its own thread until the deadline
+	 * @return number of commands answered
+	 */
+	private static long drive(final int port, int bots, final int depth, int seconds) throws InterruptedException
+	{
+		final long deadline = System.nanoTime() + seconds * 1000000000L;
+		final AtomicLong commands = new AtomicLong();
+		Thread[] threads = new Thread[bots];
+		for(int b = 0; b < bots; b++)
+		{
+			final int id = b;
+			threads[b] = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					try
+					{
+						Socket socket = new Socket("localhost", port);
+						socket.setTcpNoDelay(true);
+						BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+						OutputStream out = socket.getOutputStream();
+						in.readLine();
+						out.write("mode delta\n".getBytes());
+						in.readLine();
+						//Commands of a round, alternately flagging and deflagging the bot's own square so each changes it
+						byte[][] requests = new byte[2][];
+						for(int first = 0; first < 2; first++)
+						{
+							StringBuilder round = new StringBuilder();
+							for(int i = first; i < first + depth; i++)
+								round.append(i % 2 == 0 ? "flag " : "deflag ").append(id).append(" 0\n");
+							requests[first] = round.toString().getBytes();
+						}
+						boolean flagged = false;
+						long answered = 0;
+						while(System.nanoTime() < deadline)
+						{
+							out.write(requests[flagged ? 1 : 0]);
+							for(int i = 0; i < depth; i++)
+							{
+								String header = in.readLine();
+								int changed = Integer.parseInt(header.substring("DELTA ".length()));
+								for(int j = 0; j <= changed; j++)
+									in.readLine();
+							}
+							flagged ^= depth % 2 == 1;
+							answered += depth;
+						}
+						//Leave the square unflagged for the next depth
+						if(flagged)
+						{
+							out.write(("deflag " + id + " 0\n").getBytes());
+							in.readLine();
+						}
+						commands.addAndGet(answered);
+						socket.close();
+					}
+					catch(IOException e)
+					{
+						e.printStackTrace();
+					}
+				}
+			});
+			threads[b].start();
+		}
+		for(Thread thread : threads)
+			thread.join();
+		return commands.get();
+	}
+}
@@ -0,0 +1,191 @@
+package minesweeper.server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load test for the serving engines of MinesweeperServer. For each engine, a server is started in this process and
+ * CONNECTIONS clients connect to it. The benchmark reports how many connections the server held, then keeps one
+ * command outstanding on every connection for SECONDS seconds (alternating flag and deflag in DELTA mode, so the
+ * responses are small and the server's connection handling dominates) and reports commands per second.
+ *
+ * Usage: ServerLoadBenchmark [CONNECTIONS [SECONDS [CLIENT_THREADS]]]
+ * @author Rishabh
+ *
+ */
+public class ServerLoadBenchmark
+{
+	private static final int BOARD_SIZE = 100;
+
+	public static void main(String[] args) throws Exception
+	{
+		int connections = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		int clientThreads = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+
+		System.out.println("engine\tconnections\theld\tconnect_ms\tcommands\tseconds\tcommands_per_sec");
+		for(boolean nio : new boolean[] {false, true})
+		{
+			int port = startServer(nio);
+			List<Client> clients = new ArrayList<Client>();
+			long start = System.nanoTime();
+			for(int i = 0; i < connections; i++)
+			{
+				try
+				{
+					clients.add(new Client(port, i));
+				}
+				catch(IOException e)
+				{
+					break;
+				}
+			}
+			long connectNanos = System.nanoTime() - start;
+
+			long commands = drive(clients, seconds, clientThreads);
+			for(Client client : clients)
+				client.close();
+			System.out.println((nio ? "nio" : "threads") + "\t" + connections + "\t" + clients.size() + "\t"
+					+ connectNanos / 1000000 + "\t" + commands + "\t" + seconds + "\t" + commands / seconds);
+		}
+		System.exit(0);
+	}
+
+	/**
+	 * Starts a debug server with a random board on a free port, on a daemon thread
+	 * @return port of the server
+	 */
+	static int startServer(final boolean nio) throws Exception
+	{
+		ServerSocket probe = new ServerSocket(0);
+		final int port = probe.getLocalPort();
+		probe.close();
+		Thread thread = new Thread(new Runnable()
+		{
+			public void run()
+			{
+				try
+				{
+					MinesweeperServer.runMinesweeperServer(new ServerOptions().setDebug(true).setSize(BOARD_SIZE, BOARD_SIZE)
+							.setPort(port).setConcurrent(true).setNio(nio));
+				}
+				catch(IOException e)
+				{
+					e.printStackTrace();
+				}
+			}
+		});
+		thread.setDaemon(true);
+		thread.start();
+		for(int attempt = 0; attempt < 100; attempt++)
+		{
+			try
+			{
+				new Socket("localhost", port).close();
+				return port;
+			}
+			catch(IOException e)
+			{
+				Thread.sleep(50);
+			}
+		}
+		throw new IOException("server did not start on port " + port);
+	}
+
+	/**
+	 * Splits the clients between threads, each sending a command on all of its clients and then reading all the responses
+	 * @return number of commands answered
+	 */
+	private static long drive(List<Client> clients, int seconds, int threads) throws InterruptedException
+	{
+		final long deadline = System.nanoTime() + seconds * 1000000000L;
+		final AtomicLong commands = new AtomicLong();
+		Thread[] drivers = new Thread[threads];
+		for(int t = 0; t < threads; t++)
+		{
+			final List<Client> mine = new ArrayList<Client>();
+			for(int i = t; i < clients.size(); i += threads)
+				mine.add(clients.get(i));
+			drivers[t] = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					try
+					{
+						for(int round = 0; System.nanoTime() < deadline; round++)
+						{
+							for(Client client : mine)
+								client.send(round);
+							for(Client client : mine)
+								client.receive();
+							commands.addAndGet(mine.size());
+						}
+					}
+					catch(IOException e)
+					{
+						e.printStackTrace();
+					}
+				}
+			});
+			drivers[t].start();
+		}
+		for(Thread driver : drivers)
+			driver.join();
+		return commands.get();
+	}
+
+	/**
+	 * One connection to the server, working on its own square
+	 */
+	private static class Client
+	{
+		private final Socket socket;
+		private final BufferedReader in;
+		private final OutputStream out;
+		private final int x;
+		private final int y;
+
+		Client(int port, int id) throws IOException
+		{
+			this.socket = new Socket("localhost", port);
+			this.in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+			this.out = socket.getOutputStream();
+			this.x = id % BOARD_SIZE;
+			this.y = (id / BOARD_SIZE) % BOARD_SIZE;
+			if(in.readLine() == null)
+				throw new IOException("connection closed before welcome");
+			out.write("mode delta\n".getBytes());
+			in.readLine();
+		}
+
+		void send(int round) throws IOException
+		{
+			out.write(((round % 2 == 0 ? "flag " : "deflag ") + x + " " + y + "\n").getBytes());
+		}
+
+		/**
+		 * Reads a DELTA response: a header, one line per changed square, and the empty line ending the response
+		 */
+		void receive() throws IOException
+		{
+			String header = in.readLine();
+			if(header == null)
+				throw new IOException("connection closed");
+			int changed = Integer.parseInt(header.substring("DELTA ".length()));
+			for(int i = 0; i <= changed; i++)
+				in.readLine();
+		}
+
+		void close() throws IOException
+		{
+			socket.close();
+		}
+	}
+}
@@ -0,0 +1,318 @@
+package minesweeper.server;
+
+import java.io.File;
+
+/**
+ * How a MinesweeperServer is started: the command-line arguments of MinesweeperServer.main, parsed, or set one by
+ * one by code starting a server itself (see MinesweeperServer.runMinesweeperServer(ServerOptions)). Every option
+ * has the default main gives it when its argument is missing, so a new ServerOptions() is a server with a random
+ * 10x10 board on port 4444.
+ *
+ * Rep invariant-	file == null if and only if width != null, and width != null if and only if height != null
+ * 					width, height, maxGames, maxSquares >= 1, idleTimeout >= 0, 0 <= port <= 65535
+ * @author Rishabh
+ *
+ */
+public class ServerOptions
+{
+	//Default bounds on the games players create
+	static final int DEFAULT_MAX_GAMES = 10000;
+	static final long DEFAULT_MAX_SQUARES = 100000000L;
+	static final int DEFAULT_IDLE_TIMEOUT = 600;
+
+	private boolean debug;
+	private boolean concurrent;
+	private boolean nio;
+	private int port = 4444;
+	//Shape of the random board, null if it is loaded from file
+	private Integer width = 10;
+	private Integer height = 10;
+	private File file;
+	private int maxGames = DEFAULT_MAX_GAMES;
+	private long maxSquares = DEFAULT_MAX_SQUARES;
+	private int idleTimeout = DEFAULT_IDLE_TIMEOUT;
+	private File data;
+	private Long seed;
+	private Long mines;
+	private boolean lazy;
+	private boolean noGuess;
+	private boolean safeFirstDig;
+
+	/**
+	 * @param debug false to disconnect a client after a BOOM message, true to let it play on
+	 * @return these options
+	 */
+	public ServerOptions setDebug(boolean debug)
+	{
+		this.debug = debug;
+		return this;
+	}
+
+	/**
+	 * @param concurrent true to let operations of players on far apart rows of a board run in parallel,
+	 * 		false to run one operation at a time
+	 * @return these options
+	 */
+	public ServerOptions setConcurrent(boolean concurrent)
+	{
+		this.concurrent = concurrent;
+		return this;
+	}
+
+	/**
+	 * @param nio true to serve connections from selector threads (see NioEngine), false to start a thread per
+	 * 		connection
+	 * @return these options
+	 */
+	public ServerOptions setNio(boolean nio)
+	{
+		this.nio = nio;
+		return this;
+	}
+
+	/**
+	 * @param port the server listens on, 0 <= port <= 65535
+	 * @return these options
+	 */
+	public ServerOptions setPort(int port)
+	{
+		if(port < 0 || port > 65535)
+			throw new IllegalArgumentException("port " + port + " out of range");
+		this.port = port;
+		return this;
+	}
+
+	/**
+	 * Starts with a random board instead of one loaded from a file
+	 * @param width number of columns of the board, >= 1
+	 * @param height number of rows of the board, >= 1
+	 * @return these options
+	 */
+	public ServerOptions setSize(int width, int height)
+	{
+		if(width < 1 || height < 1)
+			throw new IllegalArgumentException("size " + width + "," + height + " out of range");
+		this.width = width;
+		this.height = height;
+		this.file = null;
+		return this;
+	}
+
+	/**
+	 * Starts with a board loaded from a file instead of a random one
+	 * @param file holding the board, according to the format of MinesweeperServer.main
+	 * @return these options
+	 */
+	public ServerOptions setFile(File file)
+	{
+		this.width = null;
+		this.height = null;
+		this.file = file;
+		return this;
+	}
+
+	/**
+	 * @param maxGames most games hosted at once, > 0
+	 * @return these options
+	 */
+	public ServerOptions setMaxGames(int maxGames)
+	{
+		if(maxGames < 1)
+			throw new IllegalArgumentException("max games " + maxGames + " out of range");
+		this.maxGames = maxGames;
+		return this;
+	}
+
+	/**
+	 * @param maxSquares most squares of all boards hosted at once, > 0. The default game counts against both
+	 * 		bounds, unless its board is lazy for the squares, but is never deleted.
+	 * @return these options
+	 */
+	public ServerOptions setMaxSquares(long maxSquares)
+	{
+		if(maxSquares < 1)
+			throw new IllegalArgumentException("max squares " + maxSquares + " out of range");
+		this.maxSquares = maxSquares;
+		return this;
+	}
+
+	/**
+	 * @param idleTimeout seconds after which a created game without players is deleted, >= 0
+	 * @return these options
+	 */
+	public ServerOptions setIdleTimeout(int idleTimeout)
+	{
+		if(idleTimeout < 0)
+			throw new IllegalArgumentException("idle timeout " + idleTimeout + " out of range");
+		this.idleTimeout = idleTimeout;
+		return this;
+	}
+
+	/**
+	 * @param data directory to journal the default game in, restoring it from there (instead of using the file or
+	 * 		size) if it already holds a journal, or null not to journal it
+	 * @return these options
+	 */
+	public ServerOptions setData(File data)
+	{
+		this.data = data;
+		return this;
+	}
+
+	/**
+	 * @param seed to generate the random board from (see BoardGenerator), or null for a random seed
+	 * @return these options
+	 */
+	public ServerOptions setSeed(Long seed)
+	{
+		this.seed = seed;
+		return this;
+	}
+
+	/**
+	 * @param mines exact number of bombs of the random board, or null for a quarter of its squares
+	 * @return these options
+	 */
+	public ServerOptions setMines(Long mines)
+	{
+		if(mines != null && mines < 0)
+			throw new IllegalArgumentException("mines " + mines + " out of range");
+		this.mines = mines;
+		return this;
+	}
+
+	/**
+	 * @param lazy true to generate the random board lazily (see BoardGenerator.generateLazy), each square holding
+	 * 		a bomb with probability mines / (width * height)
+	 * @return these options
+	 */
+	public ServerOptions setLazy(boolean lazy)
+	{
+		this.lazy = lazy;
+		return this;
+	}
+
+	/**
+	 * @param noGuess true to take the random board from a BoardPool, so it can be solved without guessing by
+	 * 		digging its middle square first, and keep the pool filling for the games created with the same shape
+	 * @return these options
+	 */
+	public ServerOptions setNoGuess(boolean noGuess)
+	{
+		this.noGuess = noGuess;
+		return this;
+	}
+
+	/**
+	 * @param safeFirstDig true to move the bombs around the first square dug of every game away (see
+	 * 		Board.setFirstDigSafe)
+	 * @return these options
+	 */
+	public ServerOptions setSafeFirstDig(boolean safeFirstDig)
+	{
+		this.safeFirstDig = safeFirstDig;
+		return this;
+	}
+
+	/**
+	 * Checks the options that cannot be combined, once they are all set
+	 * @throws IllegalArgumentException saying which options conflict
+	 */
+	void check()
+	{
+		if(mines != null && height != null && mines > (long) width * height)
+			throw new IllegalArgumentException(mines + " mines do not fit on a board of size " + width + "," + height);
+		if(height != null && !lazy && (long) width * height > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("size " + width + "," + height + " out of range without --lazy");
+		if(lazy && data != null)
+			throw new IllegalArgumentException("--lazy cannot be combined with --data");
+		if(noGuess && (lazy || file != null || safeFirstDig))
+			throw new IllegalArgumentException("--no-guess cannot be combined with --lazy, --file or --safe-first-dig");
+	}
+
+	boolean isDebug()
+	{
+		return debug;
+	}
+
+	boolean isConcurrent()
+	{
+		return concurrent;
+	}
+
+	boolean isNio()
+	{
+		return nio;
+	}
+
+	int getPort()
+	{
+		return port;
+	}
+
+	/**
+	 * @return number of columns of the random board, null if it is loaded from a file
+	 */
+	Integer getWidth()
+	{
+		return width;
+	}
+
+	/**
+	 * @return number of rows of the random board, null if it is loaded from a file
+	 */
+	Integer getHeight()
+	{
+		return height;
+	}
+
+	File getFile()
+	{
+		return file;
+	}
+
+	int getMaxGames()
+	{
+		return maxGames;
+	}
+
+	long getMaxSquares()
+	{
+		return maxSquares;
+	}
+
+	int getIdleTimeout()
+	{
+		return idleTimeout;
+	}
+
+	File getData()
+	{
+		return data;
+	}
+
+	Long getSeed()
+	{
+		return seed;
+	}
+
+	Long getMines()
+	{
+		return mines;
+	}
+
+	boolean isLazy()
+	{
+		return lazy;
+	}
+
+	boolean isNoGuess()
+	{
+		return noGuess;
+	}
+
+	boolean isSafeFirstDig()
+	{
+		return safeFirstDig;
+	}
+}
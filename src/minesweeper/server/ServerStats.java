@@ -0,0 +1,174 @@
+package minesweeper.server;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import minesweeper.board.Batch;
+import minesweeper.board.BoardMetrics;
+import minesweeper.board.Histogram;
+
+/**
+ * Measurements of a MinesweeperServer: how long each kind of command takes to handle, how large the responses
+ * are, how many players are connected, how long won games took, and the measurements of the boards (see BoardMetrics). Recording only
+ * touches striped Histograms and atomic counters, so it is always on.
+ *
+ * Moves a client pipelines are performed together (see MinesweeperServer.pipelineRequest); each of them is
+ * recorded with its share of the time of the whole batch.
+ * @author Rishabh
+ *
+ */
+final class ServerStats implements ServerStatsMXBean
+{
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+	//Name of the commands of each CommandParser type, whose latencies are recorded together
+	private static final String[] NAMES = {"invalid", "look", "dig", "flag", "deflag", "help", "bye", "mode", "mode",
+			"create", "join", "look_region", "watch", "unwatch", "watch", "stats", "chord", "status"};
+
+	private final AtomicInteger activeConnections;
+	private final AtomicLong acceptedConnections = new AtomicLong();
+	private final Histogram responseBytes = new Histogram();
+	private final Histogram completion = new Histogram();
+	//Latencies by CommandParser type, the same Histogram for types sharing a name
+	private final Histogram[] latencies = new Histogram[NAMES.length];
+	//Latencies by command name, in the order of the types
+	private final Map<String, Histogram> byName = new LinkedHashMap<String, Histogram>();
+
+	/**
+	 * @param activeConnections counter of the players connected, maintained by the server
+	 */
+	ServerStats(AtomicInteger activeConnections)
+	{
+		this.activeConnections = activeConnections;
+		for(int type = 0; type < NAMES.length; type++)
+		{
+			Histogram histogram = byName.get(NAMES[type]);
+			if(histogram == null)
+			{
+				histogram = new Histogram();
+				byName.put(NAMES[type], histogram);
+			}
+			latencies[type] = histogram;
+		}
+	}
+
+	/**
+	 * Counts a player connecting
+	 */
+	void connected()
+	{
+		acceptedConnections.incrementAndGet();
+	}
+
+	/**
+	 * Records a command handled on its own
+	 * @param type of the command, as parsed by CommandParser
+	 * @param nanos time taken to handle it
+	 * @param output response to it, null if it has none
+	 */
+	void command(int type, long nanos, String output)
+	{
+		latencies[type].record(nanos);
+		if(output != null)
+			response(output);
+	}
+
+	/**
+	 * Records the moves of a batch
+	 * @param batch whose moves were performed
+	 * @param nanos time taken to perform them all
+	 */
+	void batch(Batch batch, long nanos)
+	{
+		int moves = batch.getPerformed();
+		for(int k = 0; k < moves; k++)
+		{
+			int move = batch.getMove(k);
+			int type = move == Batch.DIG ? CommandParser.DIG : move == Batch.FLAG ? CommandParser.FLAG
+					: move == Batch.DEFLAG ? CommandParser.DEFLAG : CommandParser.CHORD;
+			latencies[type].record(nanos / moves);
+		}
+	}
+
+	/**
+	 * Records a game won
+	 * @param nanos time from its first dig to the dig that won it
+	 */
+	void completed(long nanos)
+	{
+		completion.record(nanos);
+	}
+
+	/**
+	 * Records the size of a response
+	 */
+	void response(String output)
+	{
+		responseBytes.record(output.length() + LINE_SEPARATOR.length());
+	}
+
+	public int getActiveConnections()
+	{
+		return activeConnections.get();
+	}
+
+	public long getAcceptedConnections()
+	{
+		return acceptedConnections.get();
+	}
+
+	public Histogram.Snapshot getLockWait()
+	{
+		return BoardMetrics.get().getLockWait();
+	}
+
+	public Histogram.Snapshot getLockHold()
+	{
+		return BoardMetrics.get().getLockHold();
+	}
+
+	public Histogram.Snapshot getFloodFill()
+	{
+		return BoardMetrics.get().getFloodFill();
+	}
+
+	public Histogram.Snapshot getResponseBytes()
+	{
+		return responseBytes.snapshot();
+	}
+
+	public Histogram.Snapshot getGameCompletion()
+	{
+		return completion.snapshot();
+	}
+
+	public Map<String, Histogram.Snapshot> getCommandLatency()
+	{
+		Map<String, Histogram.Snapshot> snapshots = new LinkedHashMap<String, Histogram.Snapshot>();
+		for(Map.Entry<String, Histogram> entry : byName.entrySet())
+			snapshots.put(entry.getKey(), entry.getValue().snapshot());
+		return snapshots;
+	}
+
+	/**
+	 * @return response to the "stats" command: one line per measurement, and latencies of the commands used so far
+	 */
+	public String getStats()
+	{
+		StringBuilder stats = new StringBuilder();
+		stats.append("connections active=").append(getActiveConnections()).append(" accepted=")
+				.append(getAcceptedConnections()).append('\n');
+		stats.append("lock_wait_ns ").append(getLockWait()).append('\n');
+		stats.append("lock_hold_ns ").append(getLockHold()).append('\n');
+		stats.append("flood_fill_squares ").append(getFloodFill()).append('\n');
+		stats.append("response_bytes ").append(getResponseBytes()).append('\n');
+		stats.append("game_completion_ns ").append(getGameCompletion()).append('\n');
+		for(Map.Entry<String, Histogram.Snapshot> entry : getCommandLatency().entrySet())
+		{
+			if(entry.getValue().getCount() > 0)
+				stats.append("latency_ns ").append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+		}
+		return stats.toString();
+	}
+}
@@ -0,0 +1,59 @@
+package minesweeper.server;
+
+import java.util.Map;
+
+import minesweeper.board.Histogram;
+
+/**
+ * Measurements of a MinesweeperServer, published through JMX as minesweeper:type=ServerStats. Durations are in
+ * nanoseconds. The "stats" command of the protocol answers with the same measurements as getStats().
+ * @author Rishabh
+ *
+ */
+public interface ServerStatsMXBean
+{
+	/**
+	 * @return number of players connected
+	 */
+	int getActiveConnections();
+
+	/**
+	 * @return number of players that connected since the server started
+	 */
+	long getAcceptedConnections();
+
+	/**
+	 * @return nanoseconds operations waited for the locks of the boards (see BoardMetrics)
+	 */
+	Histogram.Snapshot getLockWait();
+
+	/**
+	 * @return nanoseconds operations held the locks of the boards
+	 */
+	Histogram.Snapshot getLockHold();
+
+	/**
+	 * @return squares dug by each flood fill
+	 */
+	Histogram.Snapshot getFloodFill();
+
+	/**
+	 * @return bytes of each response, line separator included
+	 */
+	Histogram.Snapshot getResponseBytes();
+
+	/**
+	 * @return nanoseconds from the first dig of each game won to the dig that won it
+	 */
+	Histogram.Snapshot getGameCompletion();
+
+	/**
+	 * @return nanoseconds the server took to handle each kind of command, by command name
+	 */
+	Map<String, Histogram.Snapshot> getCommandLatency();
+
+	/**
+	 * @return every measurement as text, one line each
+	 */
+	String getStats();
+}
@@ -0,0 +1,215 @@
+package minesweeper.server;
+
+import minesweeper.board.Batch;
+import minesweeper.board.Board;
+import minesweeper.board.Viewport;
+
+/**
+ * State that MinesweeperServer keeps for a single client connection.
+ * A session is only ever used by the thread handling its connection, except for its subscription, which is safe
+ * to drain from any thread.
+ * @author Rishabh
+ *
+ */
+class Session
+{
+	//True if the client negotiated DELTA responses for dig, flag and deflag instead of a full LOOK
+	private boolean delta;
+	//Parser reused for every message of the connection
+	private final CommandParser parser = new CommandParser();
+	//Game the client plays, null until it is welcomed
+	private GameRegistry.Game game;
+	//Region of the board the client watches, null to see the whole board
+	private Viewport viewport;
+	//Changes pushed to the client while it watches its game, null if it does not
+	private volatile Subscription subscription;
+	//Called when the subscription has updates to push, see Subscription
+	private final Runnable wake;
+	//Moves of pipelined lines not performed yet, see MinesweeperServer.pipelineRequest
+	private final Batch batch = new Batch();
+	//True if the engine sends the responses to moves once they are durable, instead of the moves waiting for it
+	private final boolean defersDurable;
+	//Board of the last move performed whose response waits for it to be durable, and the sequence number of the
+	//move in the command log of the board, null and 0 if no response waits
+	private Board undurableBoard;
+	private long undurable;
+
+	/**
+	 * Creates the session of a client nobody pushes updates to
+	 */
+	Session()
+	{
+		this(null);
+	}
+
+	/**
+	 * @param wake called, from any thread, when updates for the client become pending; the engine serving the
+	 *             client then sends drainUpdates() when it can
+	 */
+	Session(Runnable wake)
+	{
+		this(wake, false);
+	}
+
+	/**
+	 * @param wake called, from any thread, when updates for the client become pending
+	 * @param defersDurable true if the engine serving the client waits for the moves it performs to be durable
+	 *                      before sending their responses (see undurable), so performing them need not wait
+	 */
+	Session(Runnable wake, boolean defersDurable)
+	{
+		this.wake = wake;
+		this.defersDurable = defersDurable;
+	}
+
+	/**
+	 * @return true if moves are performed without waiting for them to be durable, the engine waiting before it sends
+	 *         their responses
+	 */
+	boolean defersDurable()
+	{
+		return this.defersDurable;
+	}
+
+	/**
+	 * Records moves performed without waiting for them to be durable
+	 * @param board the moves were performed on
+	 * @param logged sequence number in the command log of the board of the last move logged, 0 if none was
+	 */
+	void performed(Board board, long logged)
+	{
+		if(logged == 0)
+			return;
+		//Only one board is journaled, so this only happens if it was replaced, whose moves may then be waited for
+		if(this.undurableBoard != null && this.undurableBoard != board)
+			this.undurableBoard.awaitDurable(this.undurable);
+		this.undurableBoard = board;
+		this.undurable = logged;
+	}
+
+	/**
+	 * @return board of the last move performed whose response waits for it to be durable, null if none waits
+	 */
+	Board getUndurableBoard()
+	{
+		return this.undurableBoard;
+	}
+
+	/**
+	 * @return sequence number of that move in the command log of its board
+	 */
+	long getUndurable()
+	{
+		return this.undurable;
+	}
+
+	/**
+	 * Records that the moves performed so far are durable
+	 */
+	void durable()
+	{
+		this.undurableBoard = null;
+		this.undurable = 0;
+	}
+
+	/**
+	 * @return true if mutating commands should be answered with the changed squares only
+	 */
+	boolean isDelta()
+	{
+		return this.delta;
+	}
+
+	/**
+	 * Switches between full LOOK responses and DELTA responses for mutating commands
+	 * @param delta true for DELTA responses
+	 */
+	void setDelta(boolean delta)
+	{
+		this.delta = delta;
+	}
+
+	/**
+	 * @return parser for the messages of this connection
+	 */
+	CommandParser getParser()
+	{
+		return this.parser;
+	}
+
+	/**
+	 * @return moves the client sent that wait to be performed together
+	 */
+	Batch getBatch()
+	{
+		return this.batch;
+	}
+
+	/**
+	 * @return game the client plays
+	 */
+	GameRegistry.Game getGame()
+	{
+		return this.game;
+	}
+
+	/**
+	 * @param game the client joined
+	 */
+	void setGame(GameRegistry.Game game)
+	{
+		this.game = game;
+	}
+
+	/**
+	 * @return region of the board responses are restricted to, null for the whole board
+	 */
+	Viewport getViewport()
+	{
+		return this.viewport;
+	}
+
+	/**
+	 * @param viewport region of the board responses are restricted to, null for the whole board
+	 */
+	void setViewport(Viewport viewport)
+	{
+		this.viewport = viewport;
+	}
+
+	/**
+	 * @return changes pushed to the client, null if it does not watch its game
+	 */
+	Subscription getSubscription()
+	{
+		return this.subscription;
+	}
+
+	/**
+	 * Replaces the subscription of the client, dropping the updates of the previous one
+	 * @param viewport region whose changes are pushed, null for the whole board
+	 * @return the new subscription
+	 */
+	Subscription subscribe(Viewport viewport)
+	{
+		this.subscription = new Subscription(viewport, wake);
+		return this.subscription;
+	}
+
+	/**
+	 * Ends the subscription of the client
+	 */
+	void unsubscribe()
+	{
+		this.subscription = null;
+	}
+
+	/**
+	 * @return push message with the updates of the subscription, or null if there are none
+	 */
+	String drainUpdates()
+	{
+		Subscription current = this.subscription;
+		return current != null ? current.drain() : null;
+	}
+}
@@ -0,0 +1,214 @@
+package minesweeper.server;
+
+import java.util.Arrays;
+
+import minesweeper.board.Board;
+import minesweeper.board.ChangeEvent;
+import minesweeper.board.Viewport;
+
+/**
+ * Board changes waiting to be pushed to one watching client (see Broadcaster).
+ *
+ * Changes of a journaled board are only pushed once the operations that made them are durable, so a client is never
+ * told about a change a crash would undo: the engine is woken up by the command log once they are (see
+ * Board.whenDurable), and drain() keeps the updates back while more recent ones are not durable yet.
+ *
+ * Changes are coalesced: a square changed several times before the client is sent its updates is sent once, with
+ * its latest value. The engine serving the client is woken up once when updates become pending, and takes them
+ * with drain() whenever it can write to the client, so a client reading slowly receives fewer, larger updates
+ * rather than making the server queue them. At most MAX_PENDING squares are kept; beyond that they are all dropped
+ * and the client is told to look again instead. The tables start small and grow with the squares pending, so a
+ * client that is rarely sent updates costs little memory.
+ *
+ * Push messages follow the grammar
+ *
+ *   PUSH :== "UPDATE" SPACE N NEWLINE (ROW SPACE COLUMN SPACE VAL NEWLINE){N} | "RESYNC" NEWLINE
+ *
+ * Rep invariant- 	count <= keys.length <= MAX_PENDING
+ * 					values.length == keys.length, table.length == 2 * keys.length, all powers of two
+ * 					table has a slot holding k + 1 for every k < count, at the position of keys[k] or after it
+ * 					overflowed implies count == 0
+ * @author Rishabh
+ *
+ */
+final class Subscription
+{
+	//Most squares kept for a client before its updates are dropped
+	static final int MAX_PENDING = 4096;
+
+	//Squares kept before the tables first grow
+	private static final int INITIAL_PENDING = 32;
+
+	//Wakes nobody up, for the subscriptions that are only drained
+	private static final Runnable NOBODY = new Runnable()
+	{
+		public void run()
+		{
+		}
+	};
+
+	private final Runnable wake;
+	//Region whose changes are pushed, null for the whole board
+	private final Viewport viewport;
+
+	//Changed squares (row << 32 | column) in the order they first changed, and their latest values
+	private long[] keys = new long[INITIAL_PENDING];
+	private char[] values = new char[INITIAL_PENDING];
+	//Open addressing table from square to its position in keys and values plus one, 0 for an empty slot
+	private int[] table = new int[2 * INITIAL_PENDING];
+	private int count;
+	private boolean overflowed;
+	//Board of the pending updates, and sequence number in its command log of the last operation making them, 0 if
+	//none was logged
+	private Board board;
+	private long logged;
+	//True once wake has been called for updates not drained yet
+	private boolean woken;
+
+	/**
+	 * @param viewport region whose changes are pushed, null for the whole board
+	 * @param wake called, from any thread, when updates become pending; null if nobody is to be woken up
+	 */
+	Subscription(Viewport viewport, Runnable wake)
+	{
+		this.viewport = viewport;
+		this.wake = wake != null ? wake : NOBODY;
+	}
+
+	/**
+	 * @return region whose changes are pushed, null for the whole board
+	 */
+	Viewport getViewport()
+	{
+		return viewport;
+	}
+
+	/**
+	 * Adds the squares of an event that lie in the viewport to the pending updates
+	 * @param board whose squares changed
+	 */
+	void offer(Board board, ChangeEvent event)
+	{
+		boolean added = false;
+		long durable;
+		synchronized(this)
+		{
+			for(int k = 0; k < event.size(); k++)
+			{
+				int row = event.getRow(k), column = event.getColumn(k);
+				if(viewport != null && !viewport.contains(row, column))
+					continue;
+				added = true;
+				if(!overflowed)
+					put(((long) row << 32) | (column & 0xFFFFFFFFL), event.getValue(k));
+			}
+			if(!added)
+				return;
+			this.board = board;
+			if(event.getLogged() != 0)
+				this.logged = event.getLogged();
+			if(woken)
+				return;
+			woken = true;
+			durable = this.logged;
+		}
+		//The engine drains once the changes are durable
+		if(board.whenDurable(durable, wake))
+			wake.run();
+	}
+
+	/**
+	 * Takes the pending updates
+	 * @return push message for them, or null if there are none
+	 */
+	synchronized String drain()
+	{
+		//Woken up again once the changes offered since the wake up are durable too
+		if(count > 0 && !board.whenDurable(logged, wake))
+			return null;
+		woken = false;
+		if(overflowed)
+		{
+			overflowed = false;
+			return "RESYNC";
+		}
+		if(count == 0)
+			return null;
+		StringBuilder message = new StringBuilder(12 + 16 * count);
+		message.append("UPDATE ").append(count).append('\n');
+		for(int k = 0; k < count; k++)
+			message.append((int) (keys[k] >> 32)).append(' ').append((int) keys[k]).append(' ').append(values[k]).append('\n');
+		clear();
+		return message.toString();
+	}
+
+	private void put(long key, char value)
+	{
+		int slot = slot(key);
+		while(table[slot] != 0)
+		{
+			if(keys[table[slot] - 1] == key)
+			{
+				values[table[slot] - 1] = value;
+				return;
+			}
+			slot = (slot + 1) & (table.length - 1);
+		}
+		if(count == MAX_PENDING)
+		{
+			clear();
+			overflowed = true;
+			return;
+		}
+		if(count == keys.length)
+		{
+			grow();
+			slot = slot(key);
+			while(table[slot] != 0)
+				slot = (slot + 1) & (table.length - 1);
+		}
+		keys[count] = key;
+		values[count] = value;
+		table[slot] = ++count;
+	}
+
+	/**
+	 * Doubles the tables and puts the pending squares back in the larger table
+	 */
+	private void grow()
+	{
+		keys = Arrays.copyOf(keys, 2 * keys.length);
+		values = Arrays.copyOf(values, 2 * values.length);
+		table = new int[2 * keys.length];
+		for(int k = 0; k < count; k++)
+		{
+			int slot = slot(keys[k]);
+			while(table[slot] != 0)
+				slot = (slot + 1) & (table.length - 1);
+			table[slot] = k + 1;
+		}
+	}
+
+	private void clear()
+	{
+		if(count > keys.length / 8)
+			Arrays.fill(table, 0);
+		else
+		{
+			//Cheaper to empty the slots in use, every slot between a key's own and the one holding it is in use too
+			for(int k = 0; k < count; k++)
+			{
+				for(int slot = slot(keys[k]); table[slot] != 0; slot = (slot + 1) & (table.length - 1))
+					table[slot] = 0;
+			}
+		}
+		count = 0;
+		logged = 0;
+	}
+
+	private int slot(long key)
+	{
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h >>> 40) & (table.length - 1);
+	}
+}
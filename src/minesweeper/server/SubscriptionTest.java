@@ -0,0 +1,161 @@
+package minesweeper.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import minesweeper.board.Batch;
+import minesweeper.board.Board;
+import minesweeper.board.BoardGenerator;
+import minesweeper.board.BoardJournal;
+import minesweeper.board.Viewport;
+
+public class SubscriptionTest
+{
+	//A square changed several times is pushed once, with its latest value, after a single wake up
+	@Test
+	public void coalesceTest()
+	{
+		Board board = new BoardGenerator(1).generate(5, 0);
+		Broadcaster broadcaster = new Broadcaster(board);
+		final AtomicInteger wakes = new AtomicInteger();
+		Subscription subscription = new Subscription(null, new Runnable()
+		{
+			public void run()
+			{
+				wakes.incrementAndGet();
+			}
+		});
+		broadcaster.add(subscription);
+		board.flag(1, 2);
+		board.deflag(1, 2);
+		board.flag(1, 2);
+		board.flag(3, 0);
+		assertEquals(1, wakes.get());
+		assertEquals("UPDATE 2\n1 2 F\n3 0 F\n", subscription.drain());
+		assertNull(subscription.drain());
+
+		board.deflag(3, 0);
+		assertEquals(2, wakes.get());
+		assertEquals("UPDATE 1\n3 0 -\n", subscription.drain());
+
+		broadcaster.remove(subscription);
+		board.flag(4, 4);
+		assertEquals(2, wakes.get());
+		assertNull(subscription.drain());
+	}
+
+	//Only the squares in the viewport are pushed
+	@Test
+	public void viewportTest()
+	{
+		Board board = new BoardGenerator(1).generate(5, 0);
+		Broadcaster broadcaster = new Broadcaster(board);
+		Subscription subscription = new Subscription(new Viewport(0, 0, 1, 1), null);
+		broadcaster.add(subscription);
+		board.flag(3, 3);
+		assertNull(subscription.drain());
+		board.flag(0, 1);
+		assertEquals("UPDATE 1\n0 1 F\n", subscription.drain());
+	}
+
+	//The tables grow with the squares pending, and keep every square
+	@Test
+	public void growTest()
+	{
+		Board board = new BoardGenerator(1).generate(60, 0);
+		Broadcaster broadcaster = new Broadcaster(board);
+		Subscription subscription = new Subscription(null, null);
+		broadcaster.add(subscription);
+		for(int row = 0; row < 60; row++)
+			board.flag(row, (row * 7) % 60);
+		board.deflag(0, 0);
+		String updates = subscription.drain();
+		assertTrue(updates.startsWith("UPDATE 60\n0 0 -\n1 7 F\n"));
+		assertTrue(updates.endsWith("\n59 53 F\n"));
+		assertNull(subscription.drain());
+	}
+
+	//Too many changes are dropped for a single RESYNC
+	@Test
+	public void overflowTest()
+	{
+		Board board = new BoardGenerator(1).generate(100, 0);
+		Broadcaster broadcaster = new Broadcaster(board);
+		Subscription subscription = new Subscription(null, null);
+		broadcaster.add(subscription);
+		board.digDelta(0, 0);
+		assertEquals("RESYNC", subscription.drain());
+		assertNull(subscription.drain());
+	}
+
+	//Changes of a journaled board are only pushed once the operation making them is durable
+	@Test
+	public void durableTest() throws IOException, InterruptedException
+	{
+		File directory = Files.createTempDirectory("journal").toFile();
+		try
+		{
+			final Board board = new BoardGenerator(1).generate(5, 0);
+			BoardJournal journal = BoardJournal.create(directory, board);
+			Broadcaster broadcaster = new Broadcaster(board);
+			final Batch batch = new Batch();
+			final CountDownLatch woken = new CountDownLatch(1);
+			final AtomicBoolean durable = new AtomicBoolean();
+			Subscription subscription = new Subscription(null, new Runnable()
+			{
+				public void run()
+				{
+					durable.set(board.whenDurable(batch.getLogged(), this));
+					woken.countDown();
+				}
+			});
+			broadcaster.add(subscription);
+			batch.flag(1, 2);
+			board.perform(batch, true, null, false, false);
+			assertTrue(woken.await(10, TimeUnit.SECONDS));
+			assertTrue(durable.get());
+			assertEquals("UPDATE 1\n1 2 F\n", subscription.drain());
+			journal.close();
+		}
+		finally
+		{
+			for(File file : directory.listFiles())
+				file.delete();
+			directory.delete();
+		}
+	}
+
+	//The player making the changes is not pushed them, the others are
+	@Test
+	public void actingTest()
+	{
+		Board board = new BoardGenerator(1).generate(5, 0);
+		Broadcaster broadcaster = new Broadcaster(board);
+		Subscription actor = new Subscription(null, null);
+		Subscription watcher = new Subscription(null, null);
+		broadcaster.add(actor);
+		broadcaster.add(watcher);
+		Broadcaster.setActing(actor);
+		try
+		{
+			board.flag(2, 2);
+		}
+		finally
+		{
+			Broadcaster.setActing(null);
+		}
+		assertNull(actor.drain());
+		assertEquals("UPDATE 1\n2 2 F\n", watcher.drain());
+	}
+}